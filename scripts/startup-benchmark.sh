@@ -0,0 +1,55 @@
+#!/bin/sh
+# Compares the wall time of one-shot CLI runs: the plain jar, the jar with an AppCDS archive and, if it was built with
+# the native profile, the native executable. Every variant compresses and decompresses a single tRNA, the typical
+# one-shot use; times are the median of RUNS runs in milliseconds.
+#
+#   mvn -P fast-start package -DskipTests        (optionally -P fast-start,native)
+#   scripts/startup-benchmark.sh [RUNS]
+set -e
+
+RUNS=${1:-10}
+cd "$(dirname "$0")/.."
+JAR=target/RNAContract-1.0-jar-with-dependencies.jar
+ARCHIVE=target/RNAContract.jsa
+NATIVE=target/rnacontract
+WORK=target/startup-benchmark
+
+if [ ! -f "$JAR" ]; then
+    echo "Please build $JAR first, e.g. with mvn -P fast-start package -DskipTests." >&2
+    exit 1
+fi
+mkdir -p "$WORK"
+printf '%s\n%s\n' \
+    GCGGAUUUAGCUCAGUUGGGAGAGCGCCAGACUGAAGAUCUGGAGGUCCUGUGUUCGAUCCACAGAAUUCGCACCA \
+    '(((((((..((((........)))).(((((.......))))).....(((((.......))))))))))))....' > "$WORK/trna.txt"
+
+# The AppCDS archive holds the classes loaded by a compression (JDK 13 or later).
+if [ ! -f "$ARCHIVE" ] || [ "$JAR" -nt "$ARCHIVE" ]; then
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" -Xlog:cds=off -Xlog:cds+dynamic=off -cp "$JAR" \
+        de.techfak.jfriemel.rnacontract.RNAContract -c -i "$WORK/trna.txt" -o "$WORK/trna.rnac" > /dev/null
+fi
+
+millis() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+# Prints the median time of RUNS compressions followed by decompressions with the given command.
+measure() {
+    i=0
+    while [ "$i" -lt "$RUNS" ]; do
+        start=$(millis)
+        "$@" -c -i "$WORK/trna.txt" -o "$WORK/trna.rnac" > /dev/null
+        "$@" -d -i "$WORK/trna.rnac" -o "$WORK/trna.out" > /dev/null
+        echo $(($(millis) - start))
+        i=$((i + 1))
+    done | sort -n | awk '{ times[NR] = $1 } END { print times[int((NR + 1) / 2)] / 2 }'
+}
+
+printf '%-24s %s\n' "Variant" "ms per run"
+printf '%-24s %s\n' "jar" "$(measure java -jar "$JAR")"
+printf '%-24s %s\n' "jar, AppCDS" "$(measure java -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR")"
+printf '%-24s %s\n' "jar, AppCDS, C1 only" \
+    "$(measure java -XX:SharedArchiveFile="$ARCHIVE" -XX:TieredStopAtLevel=1 -jar "$JAR")"
+if [ -x "$NATIVE" ]; then
+    printf '%-24s %s\n' "native" "$(measure "$NATIVE")"
+fi
@@ -0,0 +1,190 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the tree construction and (de-)compression hot paths on synthetic structures. Besides operations per
+ * second, every benchmark reports the processed RNA bases per second ("bases") and, for the bit I/O, the processed
+ * compressed bytes per second ("bytes"). Run with "-prof gc" for the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"1000", "100000"})
+    public int length;
+
+    @Param({"0.3", "0.7"})
+    public double pairingFraction;
+
+    @Param({"8", "100000"})
+    public int maxDepth;
+
+    private String sequence;
+    private String lowerCaseSequence;
+    private String structure;
+    private BitWriter compressed;
+    private BitWriter compressedAlternative;
+    private RnaCodec rangeCoder;
+    private BitWriter compressedRangeCoder;
+    private RnaCodec lanes;
+    private BitWriter compressedLanes;
+    private File file;
+
+    /**
+     * Processed RNA bases, reported as a rate next to the operations per second.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bases {
+
+        public long bases;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bases = 0;
+        }
+    }
+
+    /**
+     * Processed compressed bytes, reported as a rate next to the operations per second.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final String[] rna = StructureGenerator.generate(length, length, pairingFraction, maxDepth);
+        sequence = rna[0];
+        lowerCaseSequence = sequence.toLowerCase();
+        structure = rna[1];
+        compressed = RNAContract.compress(sequence, structure);
+        compressedAlternative = RNAContract.compressAlternative(sequence, structure);
+        rangeCoder = new RnaCodec(CodecOptions.DEFAULT.withRangeCoder(true));
+        compressedRangeCoder = rangeCoder.compress(sequence, structure).bits;
+        lanes = new RnaCodec(CodecOptions.DEFAULT.withLanes(4));
+        compressedLanes = lanes.compress(sequence, structure).bits;
+        file = File.createTempFile("benchmark", ".rnac");
+        Utils.writeBits(file.getPath(), compressed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Node<Character> buildStrictlyRankedTree(final Bases counters) {
+        counters.bases += length;
+        return RNAContract.buildStrictlyRankedTree(lowerCaseSequence, structure);
+    }
+
+    @Benchmark
+    public Node<String> buildContractedTree(final Bases counters) {
+        counters.bases += length;
+        return RNAContract.buildContractedTree(lowerCaseSequence, structure);
+    }
+
+    @Benchmark
+    public BitWriter compress(final Bases counters) {
+        counters.bases += length;
+        return RNAContract.compress(sequence, structure);
+    }
+
+    @Benchmark
+    public String[] decompress(final Bases counters) {
+        counters.bases += length;
+        return RNAContract.decompress(reader(compressed));
+    }
+
+    @Benchmark
+    public BitWriter compressAlternative(final Bases counters) {
+        counters.bases += length;
+        return RNAContract.compressAlternative(sequence, structure);
+    }
+
+    @Benchmark
+    public String[] decompressAlternative(final Bases counters) {
+        counters.bases += length;
+        return RNAContract.decompressAlternative(reader(compressedAlternative));
+    }
+
+    @Benchmark
+    public BitWriter compressRangeCoder(final Bases counters) {
+        counters.bases += length;
+        return rangeCoder.compress(sequence, structure).bits;
+    }
+
+    /**
+     * Counterpart of decompress() with the range coder instead of Huffman codes.
+     */
+    @Benchmark
+    public RnaCodec.Decompressed decompressRangeCoder(final Bases counters) {
+        counters.bases += length;
+        return rangeCoder.decompress(reader(compressedRangeCoder));
+    }
+
+    /**
+     * Counterpart of decompress() with the labels in four interleaved lanes.
+     */
+    @Benchmark
+    public RnaCodec.Decompressed decompressLanes(final Bases counters) {
+        counters.bases += length;
+        return lanes.decompress(reader(compressedLanes));
+    }
+
+    @Benchmark
+    public void writeBits(final Bytes counters) {
+        counters.bytes += (compressed.size() + 7) >>> 3;
+        Utils.writeBits(file.getPath(), compressed);
+    }
+
+    /**
+     * Maps the compressed file and reads all of its bits, as the decompression would.
+     */
+    @Benchmark
+    public int readBits(final Bytes counters) {
+        final BitReader bits = Utils.readBits(file.getPath());
+        int checksum = 0;
+        while (bits.limit() - bits.position() >= Integer.SIZE) {
+            checksum += bits.readBits(Integer.SIZE);
+        }
+        counters.bytes += bits.limit() >>> 3;
+        return checksum;
+    }
+
+    private static BitReader reader(final BitWriter bits) {
+        return new BitReader(ByteBuffer.wrap(bits.toByteArray()), bits.size());
+    }
+}
@@ -0,0 +1,53 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Random;
+
+/**
+ * Generates random RNA sequences with valid secondary structures for the benchmarks.
+ */
+public final class StructureGenerator {
+
+    private static final char[] BASES = {'A', 'C', 'G', 'U'};
+
+    private StructureGenerator() {
+
+    }
+
+    /**
+     * Generates a random RNA. Every position is paired with the given probability, as long as the nesting depth and
+     * the remaining length allow it. The pairs are canonical or G-U pairs.
+     *
+     * @param seed            Seed of the random generator.
+     * @param length          Length of the RNA.
+     * @param pairingFraction Fraction of paired positions, between 0 and 1.
+     * @param maxDepth        Maximum number of nested pairs.
+     * @return RNA. 0: Sequence in upper case. 1: Structure.
+     */
+    public static String[] generate(final long seed, final int length, final double pairingFraction,
+                                    final int maxDepth) {
+        final Random random = new Random(seed);
+        final char[] sequence = new char[length];
+        final char[] structure = new char[length];
+        /* Pair indices of the open pairs, the innermost on top. */
+        final int[] open = new int[Math.max(1, Math.min(maxDepth, length / 2))];
+        int openSize = 0;
+        for (int i = 0; i < length; i++) {
+            final int remaining = length - i;
+            final boolean paired = openSize == remaining || random.nextDouble() < pairingFraction;
+            final boolean canOpen = openSize < open.length && remaining >= openSize + 2;
+            if (paired && canOpen && (openSize == 0 || random.nextBoolean())) {
+                final int pair = random.nextInt(RnaCodec.PAIR_OPENING.length);
+                open[openSize++] = pair;
+                sequence[i] = RnaCodec.PAIR_OPENING[pair];
+                structure[i] = '(';
+            } else if (paired && openSize > 0) {
+                sequence[i] = RnaCodec.PAIR_CLOSING[open[--openSize]];
+                structure[i] = ')';
+            } else {
+                sequence[i] = BASES[random.nextInt(BASES.length)];
+                structure[i] = '.';
+            }
+        }
+        return new String[]{new String(sequence), new String(structure)};
+    }
+}
@@ -0,0 +1,254 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the records of an archive written by ArchiveWriter, either one by one or by their position in the archive.
+ * The archive is memory-mapped (see MappedFile), so opening it takes constant time regardless of its size: only the
+ * header is read, index entries and records are read when they are accessed, and records are decoded directly from
+ * the mapping.
+ */
+public class ArchiveReader implements Closeable {
+
+    private final MappedFile file;
+    private final int variant;
+    private final int lanes;
+    private final int tableId;
+    private final int blockSize;
+    private final int headerSize;
+    private final int count;
+    private final long indexOffset;
+    private int next;
+
+    /**
+     * Opens an archive file and reads its header.
+     *
+     * @param path Path of the archive file.
+     * @throws IOException If the file cannot be read or is not a complete archive.
+     */
+    public ArchiveReader(final String path) throws IOException {
+        this(MappedFile.map(path), path);
+    }
+
+    /**
+     * Reads the header of a mapped archive file.
+     *
+     * @param file Mapped archive file.
+     * @param path Path of the archive file, used in error messages.
+     * @throws IOException If the file is not a complete archive.
+     */
+    ArchiveReader(final MappedFile file, final String path) throws IOException {
+        this.file = file;
+        if (file.size() < ArchiveWriter.VERSION_1_HEADER_SIZE || !hasMagic(file)) {
+            throw new IOException(path + " is not an RNAContract archive");
+        }
+        final int version = file.byteAt(ArchiveWriter.MAGIC.length);
+        if (version < 1 || version > ArchiveWriter.VERSION) {
+            throw new IOException("Unsupported archive version " + version);
+        }
+        variant = file.byteAt(ArchiveWriter.MAGIC.length + 1);
+        lanes = Math.max(1, file.byteAt(ArchiveWriter.LANES_POSITION));
+        validate(variant, lanes);
+        headerSize = version == 1 ? ArchiveWriter.VERSION_1_HEADER_SIZE
+                : version == 2 ? ArchiveWriter.VERSION_2_HEADER_SIZE : ArchiveWriter.HEADER_SIZE;
+        if (file.size() < headerSize) {
+            throw new IOException(path + " is incomplete or corrupt");
+        }
+        tableId = version == 1 ? HuffmanMaps.DEFAULT.getId() : file.getInt(ArchiveWriter.TABLE_ID_POSITION);
+        blockSize = version < 3 ? 0 : file.getInt(ArchiveWriter.BLOCK_SIZE_POSITION);
+        count = file.getInt(ArchiveWriter.COUNT_POSITION);
+        indexOffset = file.getLong(ArchiveWriter.COUNT_POSITION + Integer.BYTES);
+        if (indexOffset < headerSize || count < 0
+                || indexOffset + (long) count * Long.BYTES > file.size()) {
+            throw new IOException(path + " is incomplete or corrupt");
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the header of an archive, as opposed to e.g. a bare compressed bit sequence
+     * written by earlier versions.
+     *
+     * @param path Path of the file.
+     * @return True, if the file is an archive; False, otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isArchive(final String path) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (file.size() < ArchiveWriter.VERSION_1_HEADER_SIZE) {
+                return false;
+            }
+            final ByteBuffer header = ByteBuffer.allocate(ArchiveWriter.MAGIC.length + 1);
+            while (header.hasRemaining()) {
+                file.read(header, header.position());
+            }
+            for (int i = 0; i < ArchiveWriter.MAGIC.length; i++) {
+                if (header.get(i) != ArchiveWriter.MAGIC[i]) {
+                    return false;
+                }
+            }
+            final int version = header.get(ArchiveWriter.MAGIC.length);
+            return version >= 1 && version <= ArchiveWriter.VERSION;
+        }
+    }
+
+    private static boolean hasMagic(final MappedFile file) {
+        for (int i = 0; i < ArchiveWriter.MAGIC.length; i++) {
+            if (file.byteAt(i) != ArchiveWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Options of the codec the records are compressed with. Archives written before the block size was stored
+     * report CodecOptions.DEFAULT_BLOCK_SIZE if their records are split into blocks, which decodes them correctly but
+     * need not be the size they were written with.
+     * @throws IOException If the records are compressed with Huffman codes other than the built-in ones.
+     */
+    public CodecOptions getOptions() throws IOException {
+        return getOptions(CodecOptions.DEFAULT);
+    }
+
+    /**
+     * Returns the options of the codec the records are compressed with (see getOptions()). The Huffman codes recorded
+     * in the header are either the built-in ones or must be those of the given options.
+     *
+     * @param requested Options whose Huffman codes are used if the archive was compressed with them.
+     * @return Options of the codec the records are compressed with.
+     * @throws IOException If the records are compressed with Huffman codes that are neither built in nor requested.
+     */
+    public CodecOptions getOptions(final CodecOptions requested) throws IOException {
+        return getOptions(variant, lanes, blockSize, tableId, requested);
+    }
+
+    /**
+     * Checks the codec fields of a header.
+     *
+     * @param variant Codec variant byte.
+     * @param lanes   Number of label lanes, at least 1.
+     * @throws IOException If the variant or the number of lanes is not supported.
+     */
+    static void validate(final int variant, final int lanes) throws IOException {
+        if ((variant & ~(ArchiveWriter.VARIANT_ALTERNATIVE | ArchiveWriter.VARIANT_RANGE_CODER
+                | ArchiveWriter.VARIANT_BLOCKS | ArchiveWriter.VARIANT_DAG | ArchiveWriter.VARIANT_REFERENCE
+                | ArchiveWriter.VARIANT_EXCEPTIONS)) != 0) {
+            throw new IOException("Unsupported codec variant " + variant);
+        }
+        if (lanes > CodecOptions.MAX_LANES || lanes > 1
+                && (variant & (ArchiveWriter.VARIANT_ALTERNATIVE | ArchiveWriter.VARIANT_RANGE_CODER
+                | ArchiveWriter.VARIANT_DAG)) != 0) {
+            throw new IOException("Unsupported number of lanes " + lanes);
+        }
+    }
+
+    /**
+     * Returns the options described by the codec fields of a header (see getOptions(CodecOptions)).
+     *
+     * @param variant   Codec variant byte, checked with validate().
+     * @param lanes     Number of label lanes, checked with validate().
+     * @param blockSize Block size; 0 if it is unknown, in which case records split into blocks get
+     *                  CodecOptions.DEFAULT_BLOCK_SIZE. Ignored if the variant has no blocks.
+     * @param tableId   Identifier of the Huffman codes.
+     * @param requested Options whose Huffman codes are used if the identifier is theirs.
+     * @return Options of the codec.
+     * @throws IOException If the Huffman codes are neither built in nor requested.
+     */
+    static CodecOptions getOptions(final int variant, final int lanes, final int blockSize, final int tableId,
+                                   final CodecOptions requested) throws IOException {
+        final HuffmanMaps huffmanMaps;
+        if (tableId == HuffmanMaps.DEFAULT.getId()) {
+            huffmanMaps = HuffmanMaps.DEFAULT;
+        } else if (tableId == requested.getHuffmanMaps().getId()) {
+            huffmanMaps = requested.getHuffmanMaps();
+        } else {
+            throw new IOException(String.format("The archive is compressed with Huffman tables %08x. "
+                    + "Load them with --tables.", tableId));
+        }
+        return CodecOptions.DEFAULT.withAlternative((variant & ArchiveWriter.VARIANT_ALTERNATIVE) != 0)
+                .withRangeCoder((variant & ArchiveWriter.VARIANT_RANGE_CODER) != 0)
+                .withDag((variant & ArchiveWriter.VARIANT_DAG) != 0).withLanes(lanes)
+                .withBlockSize((variant & ArchiveWriter.VARIANT_BLOCKS) == 0 ? 0
+                        : blockSize > 0 ? blockSize : CodecOptions.DEFAULT_BLOCK_SIZE)
+                .withReference((variant & ArchiveWriter.VARIANT_REFERENCE) != 0)
+                .withExceptions((variant & ArchiveWriter.VARIANT_EXCEPTIONS) != 0)
+                .withHuffmanMaps(huffmanMaps);
+    }
+
+    /**
+     * @return Identifier of the Huffman codes the records are compressed with (see HuffmanMaps.getId()).
+     */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return Number of records.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Reads the record at the given position.
+     *
+     * @param index Position of the record in the archive, starting at 0.
+     * @return The record.
+     * @throws IOException If the file cannot be read, the record is corrupt or there is no such record.
+     */
+    public Entry get(final int index) throws IOException {
+        if (index < 0 || index >= count) {
+            throw new IOException("No record " + index + " in archive with " + count + " records");
+        }
+        final long start = file.getLong(indexOffset + (long) index * Long.BYTES);
+        final long end = index + 1 < count ? file.getLong(indexOffset + (long) (index + 1) * Long.BYTES) : indexOffset;
+        if (start < headerSize || end > indexOffset || start + 2 + Long.BYTES > end) {
+            throw new IOException("Corrupt index entry " + index);
+        }
+        final String name = file.getUTF(start);
+        final long lengthPosition = start + 2 + file.getUnsignedShort(start);
+        final long bitLength = file.getLong(lengthPosition);
+        final long bitsStart = lengthPosition + Long.BYTES;
+        if (bitLength < 0 || bitsStart + ((bitLength + 7) >>> 3) != end) {
+            throw new IOException("Corrupt record " + index);
+        }
+        return new Entry(name, file.bitReader(bitsStart, bitLength));
+    }
+
+    /**
+     * Reads the record following the one returned by the previous call, starting with the first record.
+     *
+     * @return Next record; null, if there are no more records.
+     * @throws IOException If the file cannot be read or the record is corrupt.
+     */
+    public Entry next() throws IOException {
+        return next < size() ? get(next++) : null;
+    }
+
+    /**
+     * Does nothing: the mapping cannot be released explicitly and is freed once the reader and all BitReaders of its
+     * records are garbage collected.
+     */
+    @Override
+    public void close() {
+
+    }
+
+    /**
+     * A compressed record: its name and its bits.
+     */
+    public static class Entry {
+        public final String name;
+        public final BitReader bits;
+
+        public Entry(final String name, final BitReader bits) {
+            this.name = name;
+            this.bits = bits;
+        }
+    }
+}
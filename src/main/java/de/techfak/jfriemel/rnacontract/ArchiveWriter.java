@@ -0,0 +1,230 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes compressed RNA records into a single indexed archive file.
+ * <p>
+ * Layout (all numbers big-endian):
+ * <ul>
+ * <li>Header of HEADER_SIZE bytes: the magic bytes "RNAC", the format version (1 byte), the codec variant (1 byte, bit 0:
+ * alternative method, bit 1: range coder, bit 2: records split into blocks, bit 3: DAG method, bit 4: records after the
+ * first coded against it with ReferenceCodec, bit 5: exception stream in front of every record), the number of
+ * label lanes (1 byte, see CodecOptions.getLanes(); 0 in archives written before lanes existed), a reserved zero byte,
+ * the number of records (int), the offset of the index (long), the identifier of the Huffman codes (int, see
+ * HuffmanMaps.getId()) and the block size (int, see CodecOptions.getBlockSize()). Version 1 archives lack the
+ * identifier and use the built-in codes; version 1 and 2 archives lack the block size.</li>
+ * <li>The records, each consisting of its name (modified UTF-8 as written by DataOutputStream.writeUTF()), its length
+ * in bits (long) and its bits, padded with zeros to full bytes.</li>
+ * <li>The index: the file offset of every record (long).</li>
+ * </ul>
+ * The record count and the index offset are written when the archive is closed; an archive that has not been closed
+ * properly has an index offset of 0. If writing fails, abort() deletes the incomplete file instead, so a failed run
+ * never leaves an archive behind that looks complete.
+ */
+public class ArchiveWriter implements Closeable {
+
+    static final byte[] MAGIC = {'R', 'N', 'A', 'C'};
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 28;
+    static final int VERSION_1_HEADER_SIZE = 20;
+    static final int VERSION_2_HEADER_SIZE = 24;
+
+    static final int LANES_POSITION = 6;
+    /* Position of the record count in the header, followed by the index offset. */
+    static final int COUNT_POSITION = 8;
+    static final int TABLE_ID_POSITION = 20;
+    static final int BLOCK_SIZE_POSITION = 24;
+
+    /* Flags of the codec variant byte. */
+    static final int VARIANT_ALTERNATIVE = 1;
+    static final int VARIANT_RANGE_CODER = 2;
+    static final int VARIANT_BLOCKS = 4;
+    static final int VARIANT_DAG = 8;
+    static final int VARIANT_REFERENCE = 16;
+    static final int VARIANT_EXCEPTIONS = 32;
+
+    private final String path;
+    private final FileOutputStream file;
+    private final DataOutputStream outputStream;
+    private final ByteArrayOutputStream nameBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream nameStream = new DataOutputStream(nameBuffer);
+
+    private long position = HEADER_SIZE;
+    /* Position of the bit length of a record started with beginRecord(), -1 if there is none. */
+    private long pendingLengthPosition = -1;
+    private long pendingBytes;
+    private long[] offsets = new long[16];
+    private int count;
+    private boolean aborted;
+
+    /**
+     * Creates an archive file and writes its header.
+     *
+     * @param path    Path of the archive file.
+     * @param options Options of the codec the records are compressed with.
+     * @throws IOException If the file cannot be written.
+     */
+    public ArchiveWriter(final String path, final CodecOptions options) throws IOException {
+        this.path = path;
+        file = new FileOutputStream(path);
+        outputStream = new DataOutputStream(new BufferedOutputStream(file));
+        outputStream.write(MAGIC);
+        outputStream.writeByte(VERSION);
+        outputStream.writeByte(variant(options));
+        outputStream.writeByte(options.getLanes());
+        outputStream.writeByte(0);
+        outputStream.writeInt(0);
+        outputStream.writeLong(0);
+        outputStream.writeInt(options.getHuffmanMaps().getId());
+        outputStream.writeInt(options.getBlockSize());
+    }
+
+    /**
+     * @param options Options of a codec.
+     * @return Codec variant byte of the header for the options.
+     */
+    static int variant(final CodecOptions options) {
+        return (options.isAlternative() ? VARIANT_ALTERNATIVE : 0) | (options.isRangeCoder() ? VARIANT_RANGE_CODER : 0)
+                | (options.getBlockSize() > 0 ? VARIANT_BLOCKS : 0) | (options.isDag() ? VARIANT_DAG : 0)
+                | (options.isReference() ? VARIANT_REFERENCE : 0) | (options.isExceptions() ? VARIANT_EXCEPTIONS : 0);
+    }
+
+    /**
+     * Appends a compressed record.
+     *
+     * @param name Name of the record.
+     * @param bits Compressed record.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(final String name, final BitWriter bits) throws IOException {
+        writeRecordHeader(name, bits.size());
+        bits.writeTo(outputStream);
+        position += (bits.size() + 7) >>> 3;
+    }
+
+    /**
+     * Starts a record whose length is not known in advance, e.g. one compressed by StreamingCompressor. Its bits are
+     * written to the returned stream, padded to full bytes, and the record is completed with endRecord().
+     *
+     * @param name Name of the record.
+     * @return Stream for the bits of the record; closing it has no effect.
+     * @throws IOException If the file cannot be written.
+     */
+    public OutputStream beginRecord(final String name) throws IOException {
+        writeRecordHeader(name, 0);
+        pendingLengthPosition = position - Long.BYTES;
+        pendingBytes = 0;
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(final int b) throws IOException {
+                outputStream.write(b);
+                pendingBytes++;
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                outputStream.write(b, off, len);
+                pendingBytes += len;
+            }
+
+            @Override
+            public void close() {
+
+            }
+        };
+    }
+
+    /**
+     * Completes a record started with beginRecord() by writing its length into the record header.
+     *
+     * @param bitLength Number of valid bits written to the record's stream.
+     * @throws IOException If the file cannot be written or the length does not match the written bytes.
+     */
+    public void endRecord(final long bitLength) throws IOException {
+        if (pendingLengthPosition < 0 || (bitLength + 7) >>> 3 != pendingBytes) {
+            throw new IOException("Record length does not match the written bytes");
+        }
+        position += pendingBytes;
+        outputStream.flush();
+        final ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+        length.putLong(bitLength).flip();
+        patch(length, pendingLengthPosition);
+        pendingLengthPosition = -1;
+    }
+
+    private void writeRecordHeader(final String name, final long bitLength) throws IOException {
+        if (pendingLengthPosition >= 0) {
+            throw new IllegalStateException("Previous record has not been completed");
+        }
+        if (count == Integer.MAX_VALUE) {
+            throw new IOException("Too many records");
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count << 1);
+        }
+        offsets[count++] = position;
+        nameBuffer.reset();
+        nameStream.writeUTF(name);
+        nameBuffer.writeTo(outputStream);
+        outputStream.writeLong(bitLength);
+        position += nameBuffer.size() + Long.BYTES;
+    }
+
+    private void patch(final ByteBuffer bytes, final long filePosition) throws IOException {
+        long patchPosition = filePosition;
+        while (bytes.hasRemaining()) {
+            patchPosition += file.getChannel().write(bytes, patchPosition);
+        }
+    }
+
+    /**
+     * Discards the archive after a failure: the file is closed without its index and deleted, and close() has no
+     * effect afterwards. Errors while discarding are ignored, since the caller is already handling the failure.
+     */
+    public void abort() {
+        if (aborted) {
+            return;
+        }
+        aborted = true;
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            /* The file is deleted anyway. */
+        }
+        new File(path).delete();
+    }
+
+    /**
+     * Writes the index and completes the header, unless the archive has been aborted.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            return;
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                outputStream.writeLong(offsets[i]);
+            }
+            outputStream.flush();
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES);
+            header.putInt(count).putLong(position).flip();
+            patch(header, COUNT_POSITION);
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Character sequence of ASCII bytes in a ByteBuffer, e.g. a line of a memory-mapped input file or of a pooled buffer.
+ * Nothing is copied: charAt() reads the byte at its absolute position, so the position of the buffer is never changed
+ * and a sequence can be read by several threads at once, and subSequence() shares the buffer. Only toString() copies
+ * the bytes. Sequences and structures are pure ASCII, so one byte is one character; the case of the bases is folded by
+ * the tree builder (see RnaCodec.buildCompactTree()).
+ */
+public class AsciiSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param buffer Buffer containing the bytes.
+     * @param offset Absolute position of the first byte in the buffer.
+     * @param length Number of bytes.
+     * @throws IndexOutOfBoundsException If the bytes are not within the limit of the buffer.
+     */
+    public AsciiSequence(final ByteBuffer buffer, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > buffer.limit() - length) {
+            throw new IndexOutOfBoundsException("Range " + offset + " to " + ((long) offset + length) + ", limit "
+                    + buffer.limit());
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Splits the first lines off a buffer, from its position to its limit. Lines end with "\n", "\r\n" or "\r", like
+     * those of BufferedReader.readLine().
+     *
+     * @param buffer Buffer of ASCII text.
+     * @param count  Number of lines.
+     * @return The first lines, without their line terminators; empty for lines missing at the end of the buffer.
+     */
+    public static AsciiSequence[] lines(final ByteBuffer buffer, final int count) {
+        final AsciiSequence[] lines = new AsciiSequence[count];
+        int start = buffer.position();
+        for (int line = 0; line < count; line++) {
+            int end = start;
+            while (end < buffer.limit() && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+                end++;
+            }
+            lines[line] = new AsciiSequence(buffer, start, end - start);
+            if (end < buffer.limit() && buffer.get(end++) == '\r' && end < buffer.limit() && buffer.get(end) == '\n') {
+                end++;
+            }
+            start = end;
+        }
+        return lines;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + ", length " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public AsciiSequence subSequence(final int start, final int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("Range " + start + " to " + end + ", length " + length);
+        }
+        return new AsciiSequence(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
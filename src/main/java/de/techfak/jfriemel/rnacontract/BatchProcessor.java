@@ -0,0 +1,231 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * (De-)compresses many RNA records in parallel. Records are read sequentially and handed to a fork-join pool; results
+ * are written in input order. At most RECORDS_PER_THREAD records per thread are in flight, so memory does not grow with
+ * the number of records. With reference coding (see CodecOptions.isReference()), the first record is the reference of
+ * all others, so it is decompressed before the others are handed to the pool.
+ */
+public class BatchProcessor {
+
+    /** Suffix of the file next to an archive that escaped invalid records are written to. */
+    public static final String INVALID_SUFFIX = ".invalid.txt";
+
+    private static final int RECORDS_PER_THREAD = 256;
+
+    private BatchProcessor() {
+
+    }
+
+    /**
+     * Compresses all records of a multi-record file or a directory (see RecordReader) into one archive. Invalid records
+     * are rejected.
+     *
+     * @param codec   Codec used for all records, shared by the worker threads.
+     * @param input   Path of the multi-record file or directory.
+     * @param output  Path of the archive to be written.
+     * @param threads Number of worker threads.
+     * @return Statistics of all compressed records.
+     * @throws IOException If a file cannot be read or written, or a record is invalid or cannot be compressed.
+     */
+    public static CodecStatistics compress(final RnaCodec codec, final String input, final String output,
+                                           final int threads) throws IOException {
+        return compress(codec, RnaValidator.DEFAULT, input, output, threads);
+    }
+
+    /**
+     * Compresses all records of a multi-record file or a directory (see RecordReader) into one archive. Every record is
+     * validated before it is handed to the pool. With the ESCAPE policy, invalid records are written to the file
+     * output + INVALID_SUFFIX instead, each preceded by a comment with its first error, so the file can be read again
+     * once the records are fixed; the file is only created if there are invalid records. If a record is rejected or
+     * cannot be compressed, the incomplete archive is deleted (see ArchiveWriter.abort()).
+     *
+     * @param codec     Codec used for all records, shared by the worker threads.
+     * @param validator Validator of the records.
+     * @param input     Path of the multi-record file or directory.
+     * @param output    Path of the archive to be written.
+     * @param threads   Number of worker threads.
+     * @return Statistics of all compressed records.
+     * @throws IOException If a file cannot be read or written, or a record is invalid and not escaped or cannot be
+     *                     compressed.
+     */
+    public static CodecStatistics compress(final RnaCodec codec, final RnaValidator validator, final String input,
+                                           final String output, final int threads) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final Deque<String> names = new ArrayDeque<>();
+        final Deque<Future<RnaCodec.Compressed>> results = new ArrayDeque<>();
+        CodecStatistics statistics = CodecStatistics.EMPTY;
+        ReferenceCodec referenceCodec = null;
+        final File invalidFile = new File(output + INVALID_SUFFIX);
+        Writer invalid = null;
+        Files.deleteIfExists(invalidFile.toPath());
+        try (RecordReader reader = new RecordReader(input);
+             ArchiveWriter writer = new ArchiveWriter(output, codec.getOptions())) {
+            try {
+                RNARecord record;
+                while ((record = reader.next()) != null) {
+                    final CharSequence sequence;
+                    try {
+                        sequence = validator.validate(record.sequence, record.structure, record.sequenceLine,
+                                record.structureLine);
+                    } catch (RnaValidator.InvalidRnaException e) {
+                        if (validator.getPolicy() != RnaValidator.Policy.ESCAPE) {
+                            throw new IOException("Invalid record" + (record.name.isEmpty() ? "" : " " + record.name)
+                                    + ": " + e.getMessage(), e);
+                        }
+                        if (invalid == null) {
+                            invalid = new BufferedWriter(new FileWriter(invalidFile));
+                        }
+                        invalid.write("# " + e.getMessage() + '\n');
+                        writeRecord(invalid, record.name, record.sequence, record.structure);
+                        continue;
+                    }
+                    if (results.size() == threads * RECORDS_PER_THREAD) {
+                        statistics = statistics.plus(writeRecord(writer, names.poll(), results.poll()));
+                    }
+                    final String structure = record.structure;
+                    names.add(record.name);
+                    if (referenceCodec != null) {
+                        final ReferenceCodec recordCodec = referenceCodec;
+                        results.add(pool.submit(() -> recordCodec.compress(sequence, structure)));
+                        continue;
+                    }
+                    results.add(pool.submit(() -> codec.compress(sequence, structure)));
+                    if (codec.getOptions().isReference()) {
+                        referenceCodec = new ReferenceCodec(codec, sequence, structure);
+                    }
+                }
+                while (!results.isEmpty()) {
+                    statistics = statistics.plus(writeRecord(writer, names.poll(), results.poll()));
+                }
+            } catch (IOException | RuntimeException e) {
+                /* A partial archive must not look like the result of a successful run. */
+                writer.abort();
+                throw e;
+            }
+        } finally {
+            pool.shutdownNow();
+            if (invalid != null) {
+                invalid.close();
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Decompresses all records of an archive into a multi-record file.
+     *
+     * @param codec   Codec whose Huffman codes are used if the archive was compressed with them.
+     * @param input   Path of the archive.
+     * @param output  Path of the multi-record file to be written.
+     * @param threads Number of worker threads.
+     * @return Statistics of all decompressed records.
+     * @throws IOException If a file cannot be read or written, or a record cannot be decompressed.
+     */
+    public static CodecStatistics decompress(final RnaCodec codec, final String input, final String output,
+                                             final int threads) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final Deque<String> names = new ArrayDeque<>();
+        final Deque<Future<RnaCodec.Decompressed>> results = new ArrayDeque<>();
+        CodecStatistics statistics = CodecStatistics.EMPTY;
+        ReferenceCodec referenceCodec = null;
+        try (ArchiveReader reader = new ArchiveReader(input);
+             Writer writer = new BufferedWriter(new FileWriter(output))) {
+            final RnaCodec archiveCodec = new RnaCodec(reader.getOptions(codec.getOptions()));
+            ArchiveReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                if (results.size() == threads * RECORDS_PER_THREAD) {
+                    statistics = statistics.plus(writeRecord(writer, names.poll(), results.poll()));
+                }
+                final BitReader bits = entry.bits;
+                names.add(entry.name);
+                if (referenceCodec != null) {
+                    final ReferenceCodec recordCodec = referenceCodec;
+                    results.add(pool.submit(() -> recordCodec.decompress(bits)));
+                } else if (archiveCodec.getOptions().isReference()) {
+                    final RnaCodec.Decompressed rna = archiveCodec.decompress(bits);
+                    referenceCodec = new ReferenceCodec(archiveCodec, rna.sequence, rna.structure);
+                    results.add(CompletableFuture.completedFuture(rna));
+                } else {
+                    results.add(pool.submit(() -> archiveCodec.decompress(bits)));
+                }
+            }
+            while (!results.isEmpty()) {
+                statistics = statistics.plus(writeRecord(writer, names.poll(), results.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return statistics;
+    }
+
+    /**
+     * Waits for a compressed record and appends it to the archive.
+     *
+     * @param writer Archive writer.
+     * @param name   Name of the record.
+     * @param result Pending compression of the record.
+     * @return Statistics of the record.
+     * @throws IOException If the record cannot be compressed or written.
+     */
+    private static CodecStatistics writeRecord(final ArchiveWriter writer, final String name,
+                                               final Future<RnaCodec.Compressed> result) throws IOException {
+        final RnaCodec.Compressed compressed = await(name, result);
+        writer.write(name, compressed.bits);
+        return compressed.statistics;
+    }
+
+    /**
+     * Waits for a decompressed record and writes it in the multi-record format read by RecordReader.
+     *
+     * @param writer Output writer.
+     * @param name   Name of the record, omitted if empty.
+     * @param result Pending decompression of the record.
+     * @return Statistics of the record.
+     * @throws IOException If the record cannot be decompressed or the output cannot be written.
+     */
+    private static CodecStatistics writeRecord(final Writer writer, final String name,
+                                               final Future<RnaCodec.Decompressed> result) throws IOException {
+        final RnaCodec.Decompressed rna = await(name, result);
+        writeRecord(writer, name, rna.sequence, rna.structure);
+        return rna.statistics;
+    }
+
+    private static void writeRecord(final Writer writer, final String name, final String sequence,
+                                    final String structure) throws IOException {
+        if (!name.isEmpty()) {
+            writer.write('>');
+            writer.write(name);
+            writer.write('\n');
+        }
+        writer.write(sequence);
+        writer.write('\n');
+        writer.write(structure);
+        writer.write('\n');
+    }
+
+    private static <T> T await(final String name, final Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing record " + name);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot process record " + name, e.getCause());
+        }
+    }
+}
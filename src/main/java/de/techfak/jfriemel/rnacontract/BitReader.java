@@ -0,0 +1,170 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sequential reader for bits packed into bytes, most significant bit first.
+ * Counterpart of BitWriter.
+ */
+public class BitReader {
+
+    private final ByteBuffer buffer;
+    private final long limit;
+    private long position;
+
+    /**
+     * Creates a reader over all bits of a byte array (including any padding bits of the last byte).
+     *
+     * @param bytes Packed bits.
+     */
+    public BitReader(final byte[] bytes) {
+        this(ByteBuffer.wrap(bytes), 8L * bytes.length);
+    }
+
+    /**
+     * Creates a reader over the first 'limit' bits of a byte buffer, starting at the buffer's index 0.
+     *
+     * @param buffer Packed bits.
+     * @param limit  Number of valid bits.
+     */
+    public BitReader(final ByteBuffer buffer, final long limit) {
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    /**
+     * Creates a reader without a buffer, for subclasses that override byteAt().
+     *
+     * @param limit Number of valid bits.
+     */
+    protected BitReader(final long limit) {
+        this(null, limit);
+    }
+
+    /**
+     * Reads a single bit.
+     *
+     * @return True for 1, false for 0.
+     */
+    public boolean readBit() {
+        if (position >= limit) {
+            throw new IndexOutOfBoundsException("Bit index " + position + ", limit " + limit);
+        }
+        final boolean bit = ((byteAt(position >>> 3) >>> (7 - (position & 7))) & 1) != 0;
+        position++;
+        return bit;
+    }
+
+    /**
+     * Reads 'length' bits as an unsigned number, most significant bit first.
+     *
+     * @param length Number of bits (0 to 32).
+     * @return Read bits, right-aligned.
+     */
+    public int readBits(final int length) {
+        if (position + length > limit) {
+            throw new IndexOutOfBoundsException("Bit index " + (position + length) + ", limit " + limit);
+        }
+        final int bits = peekBits(length);
+        position += length;
+        return bits;
+    }
+
+    /**
+     * Returns the next 'length' bits without consuming them. Bits beyond the limit are read as zeros.
+     *
+     * @param length Number of bits (0 to 32).
+     * @return Next bits, right-aligned.
+     */
+    public int peekBits(final int length) {
+        long window = 0;
+        long byteIndex = position >>> 3;
+        final int offset = (int) (position & 7);
+        final int bytesNeeded = (offset + length + 7) >>> 3;
+        for (int i = 0; i < bytesNeeded; i++) {
+            window = (window << 8) | byteAt(byteIndex + i);
+        }
+        final int shift = (bytesNeeded << 3) - offset - length;
+        window >>>= shift;
+        final long bits = length == 0 ? 0 : window & ((1L << length) - 1);
+        final long valid = limit - position;
+        if (valid < length) {
+            return valid <= 0 ? 0 : (int) (bits & ~((1L << (length - valid)) - 1));
+        }
+        return (int) bits;
+    }
+
+    /**
+     * Skips bits that have already been inspected with peekBits().
+     *
+     * @param length Number of bits to skip.
+     */
+    public void skipBits(final long length) {
+        if (position + length > limit) {
+            throw new IndexOutOfBoundsException("Bit index " + (position + length) + ", limit " + limit);
+        }
+        position += length;
+    }
+
+    /**
+     * @return Index of the next bit to be read.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return Number of valid bits.
+     */
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * @return True, if there are unread bits left; False, otherwise.
+     */
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Creates an independent reader over a range of the bits of this reader, e.g. to decode several parts of a record
+     * at the same time. Bit indices of the new reader are those of this reader.
+     *
+     * @param start Index of the first bit; the new reader is positioned there.
+     * @param end   Index after the last bit; the limit of the new reader.
+     * @return Reader for the bits.
+     */
+    public BitReader slice(final long start, final long end) {
+        if (start < 0 || start > end || end > limit) {
+            throw new IndexOutOfBoundsException("Bit range " + start + " to " + end + ", limit " + limit);
+        }
+        final BitReader slice;
+        if (buffer != null && getClass() == BitReader.class) {
+            slice = new BitReader(buffer, end);
+        } else {
+            final BitReader parent = this;
+            slice = new BitReader(end) {
+                @Override
+                protected int byteAt(final long index) {
+                    return parent.byteAt(index);
+                }
+            };
+        }
+        slice.position = start;
+        return slice;
+    }
+
+    /**
+     * Returns the byte at the given index as an unsigned value. Bytes beyond the end of the buffer are read as zeros.
+     *
+     * @param index Byte index.
+     * @return Unsigned byte value.
+     */
+    protected int byteAt(final long index) {
+        if (index >= buffer.limit()) {
+            return 0;
+        }
+        return buffer.get((int) index) & 0xFF;
+    }
+}
@@ -0,0 +1,163 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable bit buffer that packs bits into a long array, most significant bit first.
+ * Replaces the List&lt;Boolean&gt; bit sequences, which need one boxed reference per bit.
+ */
+public class BitWriter {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] words;
+    private long size;
+
+    public BitWriter() {
+        words = new long[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Creates a bit buffer with room for at least the given number of bits.
+     *
+     * @param initialBits Initial capacity in bits.
+     */
+    public BitWriter(final long initialBits) {
+        words = new long[Math.max(1, (int) ((initialBits + 63) >>> 6))];
+    }
+
+    /**
+     * Appends a single bit.
+     *
+     * @param bit True for 1, false for 0.
+     */
+    public void writeBit(final boolean bit) {
+        final int index = (int) (size >>> 6);
+        if (index == words.length) {
+            grow(index + 1);
+        }
+        if (bit) {
+            words[index] |= 1L << (63 - (size & 63));
+        }
+        size++;
+    }
+
+    /**
+     * Appends the lowest 'length' bits of 'value', most significant bit first.
+     *
+     * @param value  Bits to be appended (right-aligned).
+     * @param length Number of bits (0 to 64).
+     */
+    public void writeBits(final long value, final int length) {
+        if (length == 0) {
+            return;
+        }
+        final int index = (int) (size >>> 6);
+        if (index + 1 >= words.length) {
+            grow(index + 2);
+        }
+        final long bits = length == 64 ? value : value & ((1L << length) - 1);
+        final int free = 64 - (int) (size & 63);
+        if (length <= free) {
+            words[index] |= bits << (free - length);
+        } else {
+            words[index] |= bits >>> (length - free);
+            words[index + 1] |= bits << (64 - (length - free));
+        }
+        size += length;
+    }
+
+    /**
+     * Appends all bits of another bit buffer.
+     *
+     * @param other Bit buffer to be appended.
+     */
+    public void append(final BitWriter other) {
+        final int fullWords = (int) (other.size >>> 6);
+        for (int i = 0; i < fullWords; i++) {
+            writeBits(other.words[i], 64);
+        }
+        final int rest = (int) (other.size & 63);
+        if (rest > 0) {
+            writeBits(other.words[fullWords] >>> (64 - rest), rest);
+        }
+    }
+
+    /**
+     * Returns the bit at the given index.
+     *
+     * @param index Bit index.
+     * @return True for 1, false for 0.
+     */
+    public boolean getBit(final long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Bit index " + index + ", size " + size);
+        }
+        return (words[(int) (index >>> 6)] & (1L << (63 - (index & 63)))) != 0;
+    }
+
+    /**
+     * @return Number of bits written so far.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Packs the bits into bytes. The last byte is padded with zeros.
+     *
+     * @return Byte array with ceil(size / 8) bytes.
+     */
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[(int) ((size + 7) >>> 3)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the bits as bytes to an output stream. The last byte is padded with zeros.
+     *
+     * @param outputStream Output stream.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(toByteArray());
+    }
+
+    /**
+     * Writes all complete bytes to an output stream and keeps only the remaining bits (fewer than 8), so that bits can
+     * be streamed out while they are written.
+     *
+     * @param outputStream Output stream.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void flushBytes(final OutputStream outputStream) throws IOException {
+        final int completeBytes = (int) (size >>> 3);
+        final int rest = (int) (size & 7);
+        final byte[] bytes = toByteArray();
+        outputStream.write(bytes, 0, completeBytes);
+        Arrays.fill(words, 0, (int) ((size + 63) >>> 6), 0L);
+        size = 0;
+        if (rest > 0) {
+            writeBits((bytes[completeBytes] & 0xFF) >>> (8 - rest), rest);
+        }
+    }
+
+    /**
+     * Creates a reader over a copy of the bits written so far.
+     *
+     * @return Bit reader limited to exactly size() bits.
+     */
+    public BitReader toReader() {
+        return new BitReader(ByteBuffer.wrap(toByteArray()), size);
+    }
+
+    private void grow(final int minWords) {
+        words = Arrays.copyOf(words, Math.max(minWords, words.length << 1));
+    }
+}
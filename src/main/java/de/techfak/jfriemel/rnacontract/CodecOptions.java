@@ -0,0 +1,181 @@
+package de.techfak.jfriemel.rnacontract;
+
+/**
+ * Immutable settings of an RnaCodec. Changing a setting returns a modified copy, so options can be shared freely
+ * between threads.
+ */
+public final class CodecOptions {
+
+    public static final CodecOptions DEFAULT = new CodecOptions(false, false, false, 1, 0, false, false,
+            HuffmanMaps.DEFAULT);
+
+    /** Block size of records split into blocks, suited to chromosome-scale structures. */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /** Largest number of label lanes. */
+    public static final int MAX_LANES = 64;
+
+    private final boolean alternative;
+    private final boolean rangeCoder;
+    private final boolean dag;
+    private final int lanes;
+    private final int blockSize;
+    private final boolean reference;
+    private final boolean exceptions;
+    private final HuffmanMaps huffmanMaps;
+
+    private CodecOptions(final boolean alternative, final boolean rangeCoder, final boolean dag, final int lanes,
+                         final int blockSize, final boolean reference, final boolean exceptions,
+                         final HuffmanMaps huffmanMaps) {
+        this.alternative = alternative;
+        this.rangeCoder = rangeCoder;
+        this.dag = dag;
+        this.lanes = lanes;
+        this.blockSize = blockSize;
+        this.reference = reference;
+        this.exceptions = exceptions;
+        this.huffmanMaps = huffmanMaps;
+    }
+
+    /**
+     * @return True, if the alternative method with marker bits in the preorder sequence is used; False, if the tree
+     * structure is compressed separately from the labels.
+     */
+    public boolean isAlternative() {
+        return alternative;
+    }
+
+    /**
+     * @return True, if labels and tree bits are coded with the adaptive range coder (see RangeCodec); False, if the
+     * labels are coded with the Huffman codes.
+     */
+    public boolean isRangeCoder() {
+        return rangeCoder;
+    }
+
+    /**
+     * @return True, if repeated subtrees are stored once and referenced afterwards (see DagCodec); False, otherwise.
+     */
+    public boolean isDag() {
+        return dag;
+    }
+
+    /**
+     * @return Number of interleaved streams the labels are split into (see RnaCodec); 1 for a single stream.
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * @return Minimum number of bases of the blocks a record is split into (see RnaCodec); 0 if records are not split.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return True, if every record of an archive but the first is coded against the first one (see ReferenceCodec);
+     * False, if all records are compressed on their own.
+     */
+    public boolean isReference() {
+        return reference;
+    }
+
+    /**
+     * @return True, if bases other than A, C, G and U and non-canonical pairs are stored in an exception stream in
+     * front of every record (see ExceptionStream); False, if records must only contain canonical data.
+     */
+    public boolean isExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * @return Huffman codes of the labels.
+     */
+    public HuffmanMaps getHuffmanMaps() {
+        return huffmanMaps;
+    }
+
+    /**
+     * @param alternative True for the alternative method; False for the standard one.
+     * @return Copy of these options with the given method.
+     */
+    public CodecOptions withAlternative(final boolean alternative) {
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param rangeCoder True for the adaptive range coder; False for the Huffman codes.
+     * @return Copy of these options with the given entropy coder.
+     */
+    public CodecOptions withRangeCoder(final boolean rangeCoder) {
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param dag True for the DAG method, which requires Huffman codes and excludes the alternative method.
+     * @return Copy of these options with or without the DAG method.
+     */
+    public CodecOptions withDag(final boolean dag) {
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param lanes Number of interleaved label streams, from 1 to MAX_LANES. More than one lane requires the standard
+     *              method with Huffman codes.
+     * @return Copy of these options with the given number of label streams.
+     */
+    public CodecOptions withLanes(final int lanes) {
+        if (lanes < 1 || lanes > MAX_LANES) {
+            throw new IllegalArgumentException("The number of lanes must be between 1 and " + MAX_LANES);
+        }
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param blockSize Minimum number of bases per block, or 0 to compress every record as a whole. Decompression only
+     *                  distinguishes 0 from any other value.
+     * @return Copy of these options with the given block size.
+     */
+    public CodecOptions withBlockSize(final int blockSize) {
+        if (blockSize < 0) {
+            throw new IllegalArgumentException("The block size must not be negative");
+        }
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param reference True to code the records of an archive against its first record. Single records are always
+     *                  compressed on their own.
+     * @return Copy of these options with or without reference coding.
+     */
+    public CodecOptions withReference(final boolean reference) {
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param exceptions True to store unsupported bases and non-canonical pairs in an exception stream, at the cost
+     *                   of at least one bit per record.
+     * @return Copy of these options with or without the exception stream.
+     */
+    public CodecOptions withExceptions(final boolean exceptions) {
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+
+    /**
+     * @param huffmanMaps Huffman codes of the labels, e.g. trained with HuffmanTrainer.
+     * @return Copy of these options with the given codes.
+     */
+    public CodecOptions withHuffmanMaps(final HuffmanMaps huffmanMaps) {
+        return new CodecOptions(alternative, rangeCoder, dag, lanes, blockSize, reference, exceptions,
+                huffmanMaps);
+    }
+}
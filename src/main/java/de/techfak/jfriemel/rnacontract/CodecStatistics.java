@@ -0,0 +1,58 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.List;
+
+/**
+ * Node counts of the contracted trees of one or more (de-)compressed records.
+ */
+public final class CodecStatistics {
+
+    public static final CodecStatistics EMPTY = new CodecStatistics(0, 0, 0, 0);
+
+    public final int records;
+    public final long nodes;
+    public final long unaryNodes;
+    public final long binaryNodes;
+
+    public CodecStatistics(final int records, final long nodes, final long unaryNodes, final long binaryNodes) {
+        this.records = records;
+        this.nodes = nodes;
+        this.unaryNodes = unaryNodes;
+        this.binaryNodes = binaryNodes;
+    }
+
+    /**
+     * @param tree Compact contracted tree of a single record.
+     * @return Statistics of the tree.
+     */
+    public static CodecStatistics of(final ContractedTree tree) {
+        return new CodecStatistics(1, tree.size(), tree.countNodes(1), tree.countNodes(2));
+    }
+
+    /**
+     * @param root Root of the contracted tree of a single record.
+     * @return Statistics of the tree.
+     */
+    public static CodecStatistics of(final Node<String> root) {
+        long unaryNodes = 0;
+        long binaryNodes = 0;
+        final List<Node<String>> nodes = root.getPreorderNodes();
+        for (final Node<String> node : nodes) {
+            if (node.children.size() == 1) {
+                unaryNodes++;
+            } else if (node.children.size() == 2) {
+                binaryNodes++;
+            }
+        }
+        return new CodecStatistics(1, nodes.size(), unaryNodes, binaryNodes);
+    }
+
+    /**
+     * @param other Statistics of further records.
+     * @return Combined statistics.
+     */
+    public CodecStatistics plus(final CodecStatistics other) {
+        return new CodecStatistics(records + other.records, nodes + other.nodes, unaryNodes + other.unaryNodes,
+                binaryNodes + other.binaryNodes);
+    }
+}
@@ -8,7 +8,7 @@ public class CommandLineArgs {
     boolean compress;
     @Parameter(names = {"--decompress", "-d"}, description = "Decompress the input file")
     boolean decompress;
-    @Parameter(names = {"--input", "-i"}, description = "Input file path", arity = 1, required = true)
+    @Parameter(names = {"--input", "-i"}, description = "Input file path (required unless --server is used)", arity = 1)
     String input;
     @Parameter(names = {"--output", "-o"}, description = "Output file path", arity = 1)
     String output;
@@ -20,5 +20,37 @@ public class CommandLineArgs {
     boolean xml;
     @Parameter(names = {"--alt", "-a"}, description = "Use alternative (de-)compression algorithm; not properly documented")
     boolean alternative;
+    @Parameter(names = {"--range-coder", "-rc"}, description = "Compress with the adaptive range coder instead of Huffman codes")
+    boolean rangeCoder;
+    @Parameter(names = {"--dag", "-dag"}, description = "Store repeated subtrees once and reference them afterwards (not with -a or -rc)")
+    boolean dag;
+    @Parameter(names = {"--lanes", "-l"}, description = "Split the labels into this many interleaved streams for faster decompression (standard method with Huffman codes only)", arity = 1)
+    int lanes = 1;
+    @Parameter(names = {"--blocks", "-bl"}, description = "Split records into blocks of at least this many bases, (de-)compressed in parallel; 0 to compress records as a whole", arity = 1)
+    int blockSize;
+    @Parameter(names = {"--batch", "-b"}, description = "Process all records of a multi-record file or directory into one archive, or decompress such an archive")
+    boolean batch;
+    @Parameter(names = {"--reference", "-ref"}, description = "Code every record of a batch after the first one as an edit script against the first one, e.g. the consensus of an RNA family (with -b)")
+    boolean reference;
+    @Parameter(names = {"--threads", "-t"}, description = "Number of worker threads in batch mode", arity = 1)
+    int threads = Runtime.getRuntime().availableProcessors();
+    @Parameter(names = {"--record", "-r"}, description = "Decompress only the record at this position of an archive, starting at 0", arity = 1)
+    Integer record;
+    @Parameter(names = {"--benchmark", "-bm"}, description = "Measure compression ratio and speed of all codecs on all .txt files of a directory and write a CSV or JSON report")
+    boolean benchmark;
+    @Parameter(names = {"--repetitions", "-n"}, description = "Number of repetitions per file in benchmark mode; the fastest is reported", arity = 1)
+    int repetitions = 5;
+    @Parameter(names = {"--train", "-tr"}, description = "Train Huffman tables on all records of a multi-record file or directory and save them as a table file")
+    boolean train;
+    @Parameter(names = {"--tables", "-ht"}, description = "Huffman table file (created with --train) to (de-)compress with", arity = 1)
+    String tables;
+    @Parameter(names = {"--server", "-sv"}, description = "Run a compression service on the loopback interface that keeps the codec warm, until the process is stopped")
+    boolean server;
+    @Parameter(names = {"--port", "-p"}, description = "Port of the compression service: the one to listen on with --server, or the one to send -c, -d and -x requests to", arity = 1)
+    Integer port;
+    @Parameter(names = {"--invalid", "-iv"}, description = "Handling of invalid records: REJECT stops at the line and column of the first error, MAP_T_TO_U reads T as U, ESCAPE writes invalid records of a batch to <archive>.invalid.txt and compresses the others", arity = 1)
+    RnaValidator.Policy invalid = RnaValidator.Policy.REJECT;
+    @Parameter(names = {"--exceptions", "-ex"}, description = "Store bases other than A, C, G and U (e.g. N, T or modified nucleotides) and non-canonical pairs losslessly in an exception stream instead of rejecting them")
+    boolean exceptions;
 
 }
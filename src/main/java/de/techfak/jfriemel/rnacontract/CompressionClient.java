@@ -0,0 +1,159 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Client of a CompressionServer on the same machine. A client holds one connection, and its requests are answered in
+ * order, so a client must not be used by several threads at once; open one client per thread instead.
+ */
+public class CompressionClient implements Closeable {
+
+    private final CodecOptions requested;
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    /**
+     * Record compressed by the server, together with the options of the server's codec.
+     */
+    public static final class Compressed {
+
+        public final CodecOptions options;
+        public final BitWriter bits;
+        public final CodecStatistics statistics;
+
+        Compressed(final CodecOptions options, final BitWriter bits, final CodecStatistics statistics) {
+            this.options = options;
+            this.bits = bits;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Contracted tree of a record in XML, created by the server.
+     */
+    public static final class Xml {
+
+        public final String xml;
+        public final CodecStatistics statistics;
+
+        Xml(final String xml, final CodecStatistics statistics) {
+            this.xml = xml;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Connects to a server on the loopback interface.
+     *
+     * @param port      Port of the server.
+     * @param requested Options whose Huffman codes are used if the server compresses with them.
+     * @throws IOException If the server cannot be reached.
+     */
+    public CompressionClient(final int port, final CodecOptions requested) throws IOException {
+        this.requested = requested;
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Compresses an RNA record with the codec of the server.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @return Bit sequence, statistics and the options of the server's codec.
+     * @throws IOException If the connection fails or the server cannot compress the record.
+     */
+    public Compressed compress(final String sequence, final String structure) throws IOException {
+        output.writeByte(CompressionServer.COMPRESS);
+        CompressionServer.writeString(sequence, output);
+        CompressionServer.writeString(structure, output);
+        awaitAnswer();
+        final int variant = input.readUnsignedByte();
+        final int lanes = Math.max(1, input.readUnsignedByte());
+        final int tableId = input.readInt();
+        final int blockSize = input.readInt();
+        ArchiveReader.validate(variant, lanes);
+        final CodecOptions options = ArchiveReader.getOptions(variant, lanes, blockSize, tableId, requested);
+        final CodecStatistics statistics = CompressionServer.readStatistics(input);
+        return new Compressed(options, copy(CompressionServer.readBits(input)), statistics);
+    }
+
+    /**
+     * Decompresses an RNA record on the server.
+     *
+     * @param options    Options of the codec the record is compressed with, e.g. of its archive.
+     * @param compressed Compressed record; its bits from the current position to the limit are sent.
+     * @return Decompressed RNA and statistics.
+     * @throws IOException If the connection fails or the server cannot decompress the record.
+     */
+    public RnaCodec.Decompressed decompress(final CodecOptions options, final BitReader compressed)
+            throws IOException {
+        output.writeByte(CompressionServer.DECOMPRESS);
+        CompressionServer.writeCodec(options, output);
+        CompressionServer.writeBits(copy(compressed), output);
+        awaitAnswer();
+        final CodecStatistics statistics = CompressionServer.readStatistics(input);
+        final String sequence = CompressionServer.readString(input);
+        final String structure = CompressionServer.readString(input);
+        return new RnaCodec.Decompressed(new String[]{sequence, structure}, statistics);
+    }
+
+    /**
+     * Creates the XML of the contracted tree of an RNA record on the server.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @return XML and statistics of the contracted tree.
+     * @throws IOException If the connection fails or the server cannot create the tree.
+     */
+    public Xml createXML(final String sequence, final String structure) throws IOException {
+        output.writeByte(CompressionServer.XML);
+        CompressionServer.writeString(sequence, output);
+        CompressionServer.writeString(structure, output);
+        awaitAnswer();
+        final CodecStatistics statistics = CompressionServer.readStatistics(input);
+        return new Xml(CompressionServer.readString(input), statistics);
+    }
+
+    /**
+     * @param bits Bits to be copied; the reader is advanced to its limit.
+     * @return Copy of the bits from the position of the reader to its limit.
+     */
+    private static BitWriter copy(final BitReader bits) {
+        final BitWriter copy = new BitWriter(bits.limit() - bits.position());
+        while (bits.limit() - bits.position() >= Integer.SIZE) {
+            copy.writeBits(bits.readBits(Integer.SIZE) & 0xFFFFFFFFL, Integer.SIZE);
+        }
+        final int rest = (int) (bits.limit() - bits.position());
+        copy.writeBits(bits.readBits(rest), rest);
+        return copy;
+    }
+
+    /**
+     * Sends the pending request and reads the status of its answer.
+     *
+     * @throws IOException If the connection fails or the server reports an error.
+     */
+    private void awaitAnswer() throws IOException {
+        output.flush();
+        final int status = input.readUnsignedByte();
+        if (status != CompressionServer.OK) {
+            throw new IOException("Server error: " + CompressionServer.readString(input));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,297 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running service that (de-)compresses RNA records for clients on the same machine (see CompressionClient), so
+ * the JVM start-up, the Huffman codes and the JIT-compiled codec are paid for once instead of per record. The server
+ * listens on the loopback interface only; every connection is served by its own thread and may send any number of
+ * requests, which are answered in order.
+ * <p>
+ * Protocol (all numbers big-endian, strings as their length in bytes (int) followed by their UTF-8 bytes, codec as its
+ * archive variant byte, its number of lanes (byte), the identifier of its Huffman codes (int) and its block size (int),
+ * statistics as the fields of CodecStatistics (int and three longs), bits as their length in bits (long) followed by
+ * the bits, padded with zeros to full bytes):
+ * <ul>
+ * <li>Compress: 'C', sequence, structure. Answered with the codec of the server, statistics and bits.</li>
+ * <li>Decompress: 'D', codec, bits. Answered with statistics, sequence and structure.</li>
+ * <li>XML: 'X', sequence, structure. Answered with statistics and the XML of the contracted tree.</li>
+ * </ul>
+ * Every answer starts with a status byte: OK, or ERROR followed by a message instead of the result. A failed request
+ * does not close the connection unless the request itself cannot be read.
+ */
+public class CompressionServer implements Closeable {
+
+    /** Port the server listens on unless another one is given. */
+    public static final int DEFAULT_PORT = 7227;
+
+    static final int COMPRESS = 'C';
+    static final int DECOMPRESS = 'D';
+    static final int XML = 'X';
+    static final int OK = 0;
+    static final int ERROR = 1;
+
+    private final RnaCodec codec;
+    /* Validator of compression requests, accepting what the exception stream of the codec can store. */
+    private final RnaValidator validator;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "rnacontract-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /* Codecs of decompression requests by variant, lanes and table identifier, kept for later requests. */
+    private final Map<Long, RnaCodec> codecs = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the server socket on the loopback interface. Requests are accepted once run() is called.
+     *
+     * @param codec Codec of compression requests, whose Huffman codes are also used to decompress records compressed
+     *              with them.
+     * @param port  Port to listen on, or 0 for any free port.
+     * @throws IOException If the socket cannot be opened.
+     */
+    public CompressionServer(final RnaCodec codec, final int port) throws IOException {
+        this.codec = codec;
+        this.validator = new RnaValidator(RnaValidator.Policy.REJECT, codec.getOptions().isExceptions());
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return Port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     *
+     * @throws IOException If a connection cannot be accepted for another reason than closing the server.
+     */
+    public void run() throws IOException {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            executor.execute(() -> serve(socket));
+        }
+    }
+
+    /**
+     * Stops accepting connections. Open connections are served until their clients close them.
+     *
+     * @throws IOException If the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        serverSocket.close();
+    }
+
+    /**
+     * Answers the requests of one connection until the client closes it or sends an unreadable request.
+     *
+     * @param socket Connection to a client.
+     */
+    private void serve(final Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            connection.setTcpNoDelay(true);
+            int operation;
+            while ((operation = input.read()) >= 0) {
+                answer(operation, input, output);
+                output.flush();
+            }
+        } catch (IOException e) {
+            /* The client disconnected or sent an unreadable request; there is nobody to report it to. */
+        }
+    }
+
+    /**
+     * Reads the rest of a request and writes its answer.
+     *
+     * @param operation First byte of the request.
+     * @param input     Stream of the request.
+     * @param output    Stream of the answer.
+     * @throws IOException If the request cannot be read or the answer cannot be written.
+     */
+    private void answer(final int operation, final DataInputStream input, final DataOutputStream output)
+            throws IOException {
+        if (operation == COMPRESS) {
+            final AsciiSequence sequence = readAscii(input);
+            final AsciiSequence structure = readAscii(input);
+            final RnaCodec.Compressed compressed;
+            try {
+                compressed = codec.compress(validator.validate(sequence, structure), structure);
+            } catch (RuntimeException e) {
+                writeError(e, output);
+                return;
+            }
+            output.writeByte(OK);
+            writeCodec(codec.getOptions(), output);
+            writeStatistics(compressed.statistics, output);
+            writeBits(compressed.bits, output);
+        } else if (operation == XML) {
+            final String sequence = readString(input);
+            final String structure = readString(input);
+            final Node<String> tree;
+            final String xml;
+            try {
+                RnaValidator.DEFAULT.validate(sequence, structure);
+                tree = RNAContract.buildContractedTree(sequence.toLowerCase(), structure);
+                xml = Utils.generateXML(tree);
+            } catch (RuntimeException e) {
+                writeError(e, output);
+                return;
+            }
+            output.writeByte(OK);
+            writeStatistics(CodecStatistics.of(tree), output);
+            writeString(xml, output);
+        } else if (operation == DECOMPRESS) {
+            final int variant = input.readUnsignedByte();
+            final int lanes = Math.max(1, input.readUnsignedByte());
+            final int tableId = input.readInt();
+            final int blockSize = input.readInt();
+            final BitReader bits = readBits(input);
+            final RnaCodec.Decompressed rna;
+            try {
+                rna = codecFor(variant, lanes, blockSize, tableId).decompress(bits);
+            } catch (IOException | RuntimeException e) {
+                writeError(e, output);
+                return;
+            }
+            output.writeByte(OK);
+            writeStatistics(rna.statistics, output);
+            writeString(rna.sequence, output);
+            writeString(rna.structure, output);
+        } else {
+            throw new IOException("Unknown request " + operation);
+        }
+    }
+
+    /**
+     * @return Codec described by the codec fields of a request.
+     * @throws IOException If the codec is not supported or uses unknown Huffman codes.
+     */
+    private RnaCodec codecFor(final int variant, final int lanes, final int blockSize, final int tableId)
+            throws IOException {
+        /* Decoding does not depend on the block size, so codecs that only differ in it are shared. */
+        final long key = (long) tableId << 16 | lanes << 8 | variant;
+        final RnaCodec cached = codecs.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ArchiveReader.validate(variant, lanes);
+        final RnaCodec created = new RnaCodec(ArchiveReader.getOptions(variant, lanes, blockSize, tableId,
+                codec.getOptions()));
+        codecs.putIfAbsent(key, created);
+        return created;
+    }
+
+    private static void writeError(final Exception e, final DataOutputStream output) throws IOException {
+        output.writeByte(ERROR);
+        writeString(e.getMessage() == null ? e.toString() : e.getMessage(), output);
+    }
+
+    static void writeCodec(final CodecOptions options, final DataOutputStream output) throws IOException {
+        output.writeByte(ArchiveWriter.variant(options));
+        output.writeByte(options.getLanes());
+        output.writeInt(options.getHuffmanMaps().getId());
+        output.writeInt(options.getBlockSize());
+    }
+
+    static void writeStatistics(final CodecStatistics statistics, final DataOutputStream output) throws IOException {
+        output.writeInt(statistics.records);
+        output.writeLong(statistics.nodes);
+        output.writeLong(statistics.unaryNodes);
+        output.writeLong(statistics.binaryNodes);
+    }
+
+    static CodecStatistics readStatistics(final DataInputStream input) throws IOException {
+        return new CodecStatistics(input.readInt(), input.readLong(), input.readLong(), input.readLong());
+    }
+
+    static void writeString(final String value, final DataOutputStream output) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(final DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        return new String(readBytes(input, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a string like readString(), but as a view of its bytes instead of decoding it, for sequences and
+     * structures, which are pure ASCII.
+     */
+    static AsciiSequence readAscii(final DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        return new AsciiSequence(ByteBuffer.wrap(readBytes(input, length)), 0, length);
+    }
+
+    static void writeBits(final BitWriter bits, final DataOutputStream output) throws IOException {
+        output.writeLong(bits.size());
+        bits.writeTo(output);
+    }
+
+    static BitReader readBits(final DataInputStream input) throws IOException {
+        final long length = input.readLong();
+        if (length < 0 || (length + 7) >>> 3 > Integer.MAX_VALUE) {
+            throw new IOException("Invalid bit length " + length);
+        }
+        return new BitReader(ByteBuffer.wrap(readBytes(input, (int) ((length + 7) >>> 3))), length);
+    }
+
+    /**
+     * Reads a number of bytes, growing the buffer as they arrive, so a corrupt length cannot allocate more memory than
+     * the peer actually sends.
+     */
+    private static byte[] readBytes(final DataInputStream input, final int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, 1 << 16)];
+        int size = 0;
+        while (size < length) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * size));
+            }
+            final int read = input.read(bytes, size, bytes.length - size);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            size += read;
+        }
+        return bytes;
+    }
+}
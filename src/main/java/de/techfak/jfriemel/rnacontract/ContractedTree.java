@@ -0,0 +1,291 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact representation of a contracted unary-binary tree. Nodes are identified by their index and stored in
+ * preorder, index 0 being the root. Every node is described by its parent, up to two children and a label, which is a
+ * range of one shared byte array. Leaves have no children and an empty label; they correspond to the 'e' nodes of the
+ * Node-based tree.
+ */
+public class ContractedTree {
+
+    public static final int NONE = -1;
+
+    /* Parent of nodes that have been merged into another node and are dropped by compact(). */
+    private static final int REMOVED = -2;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] parent;
+    private int[] firstChild;
+    private int[] secondChild;
+    private int[] labelStart;
+    private int[] labelLength;
+    private int size;
+
+    private byte[] labels;
+    private int labelsSize;
+
+    public ContractedTree() {
+        this(DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty tree with preallocated space.
+     *
+     * @param nodeCapacity  Expected number of nodes.
+     * @param labelCapacity Expected total length of all labels.
+     */
+    public ContractedTree(final int nodeCapacity, final int labelCapacity) {
+        final int capacity = Math.max(1, nodeCapacity);
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        secondChild = new int[capacity];
+        labelStart = new int[capacity];
+        labelLength = new int[capacity];
+        labels = new byte[Math.max(1, labelCapacity)];
+    }
+
+    /**
+     * Creates an empty tree whose labels are ranges of an existing array, e.g. of symbols indexed by sequence position.
+     * Labels are then set with setLabel() instead of appendLabel().
+     *
+     * @param nodeCapacity Expected number of nodes.
+     * @param labels       Shared label array.
+     */
+    public ContractedTree(final int nodeCapacity, final byte[] labels) {
+        this(nodeCapacity, 1);
+        this.labels = labels;
+        this.labelsSize = labels.length;
+    }
+
+    /**
+     * Adds a new node. If a parent is given, the node becomes its first child, or its second child if the first one
+     * already exists. The new node's label starts at the end of the shared label array.
+     *
+     * @param parentNode Index of the parent node or NONE for the root.
+     * @return Index of the new node.
+     */
+    public int addNode(final int parentNode) {
+        if (size == parent.length) {
+            final int capacity = size << 1;
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            secondChild = Arrays.copyOf(secondChild, capacity);
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+        }
+        final int node = size++;
+        parent[node] = parentNode;
+        firstChild[node] = NONE;
+        secondChild[node] = NONE;
+        labelStart[node] = labelsSize;
+        labelLength[node] = 0;
+        if (parentNode != NONE) {
+            if (firstChild[parentNode] == NONE) {
+                firstChild[parentNode] = node;
+            } else {
+                secondChild[parentNode] = node;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Appends a symbol to the label of a node. Labels are stored consecutively, so a label has to be complete before
+     * the label of another node is started.
+     *
+     * @param node   Index of the node.
+     * @param symbol Label symbol.
+     */
+    public void appendLabel(final int node, final char symbol) {
+        if (labelLength[node] == 0) {
+            labelStart[node] = labelsSize;
+        }
+        if (labelsSize == labels.length) {
+            labels = Arrays.copyOf(labels, labelsSize << 1);
+        }
+        labels[labelsSize++] = (byte) symbol;
+        labelLength[node]++;
+    }
+
+    /**
+     * Replaces the shared label array, e.g. by labels that were decoded elsewhere. The labels of the nodes are then set
+     * with setLabel().
+     *
+     * @param labels New shared label array.
+     */
+    public void setLabels(final byte[] labels) {
+        this.labels = labels;
+        this.labelsSize = labels.length;
+    }
+
+    /**
+     * Sets the label of a node to a range of the shared label array.
+     *
+     * @param node   Index of the node.
+     * @param start  Start index in the shared label array.
+     * @param length Length of the label.
+     */
+    public void setLabel(final int node, final int start, final int length) {
+        labelStart[node] = start;
+        labelLength[node] = length;
+    }
+
+    /**
+     * Contracts a binary node with its first child, which has to be a binary node with a leaf as second child and a
+     * label directly following the node's label in the shared label array. The node takes over the child's label and
+     * first child; the child and its leaf are marked as removed until compact() is called.
+     *
+     * @param node Index of the node.
+     */
+    public void mergeFirstChild(final int node) {
+        final int child = firstChild[node];
+        labelLength[node] += labelLength[child];
+        firstChild[node] = firstChild[child];
+        parent[firstChild[child]] = node;
+        parent[secondChild[child]] = REMOVED;
+        parent[child] = REMOVED;
+    }
+
+    /**
+     * Drops all nodes removed by mergeFirstChild() and renumbers the remaining nodes, keeping them in preorder.
+     */
+    public void compact() {
+        final int[] newIndex = new int[size];
+        int newSize = 0;
+        for (int node = 0; node < size; node++) {
+            newIndex[node] = parent[node] == REMOVED ? NONE : newSize++;
+        }
+        for (int node = 0; node < size; node++) {
+            final int index = newIndex[node];
+            if (index == NONE) {
+                continue;
+            }
+            parent[index] = parent[node] == NONE ? NONE : newIndex[parent[node]];
+            firstChild[index] = firstChild[node] == NONE ? NONE : newIndex[firstChild[node]];
+            secondChild[index] = secondChild[node] == NONE ? NONE : newIndex[secondChild[node]];
+            labelStart[index] = labelStart[node];
+            labelLength[index] = labelLength[node];
+        }
+        size = newSize;
+    }
+
+    /**
+     * Releases unused preallocated space.
+     */
+    public void trimToSize() {
+        final int capacity = Math.max(1, size);
+        if (capacity < parent.length) {
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            secondChild = Arrays.copyOf(secondChild, capacity);
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+        }
+        if (labelsSize < labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(1, labelsSize));
+        }
+    }
+
+    /**
+     * @return Number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getParent(final int node) {
+        return parent[node];
+    }
+
+    public int getFirstChild(final int node) {
+        return firstChild[node];
+    }
+
+    public int getSecondChild(final int node) {
+        return secondChild[node];
+    }
+
+    /**
+     * @param node Index of the node.
+     * @return Number of children: 0 for leaves, 1 for unary and 2 for binary nodes.
+     */
+    public int getChildCount(final int node) {
+        if (firstChild[node] == NONE) {
+            return 0;
+        }
+        return secondChild[node] == NONE ? 1 : 2;
+    }
+
+    public int getLabelStart(final int node) {
+        return labelStart[node];
+    }
+
+    public int getLabelLength(final int node) {
+        return labelLength[node];
+    }
+
+    /**
+     * @param node  Index of the node.
+     * @param index Index within the node's label.
+     * @return Label symbol.
+     */
+    public char getLabelSymbol(final int node, final int index) {
+        return (char) labels[labelStart[node] + index];
+    }
+
+    /**
+     * @param node Index of the node.
+     * @return Label of the node as a String.
+     */
+    public String getLabel(final int node) {
+        return new String(labels, labelStart[node], labelLength[node], StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Counts the nodes with a given number of children.
+     *
+     * @param childCount 0, 1 or 2.
+     * @return Number of such nodes.
+     */
+    public int countNodes(final int childCount) {
+        int count = 0;
+        for (int node = 0; node < size; node++) {
+            if (getChildCount(node) == childCount) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Converts the tree to the Node-based representation. Leaves get the key "e", except for a root without
+     * children, which gets the key "f" as in buildContractedTree().
+     *
+     * @return Root of the Node-based tree.
+     */
+    public Node<String> toNode() {
+        if (size == 0) {
+            return new Node<>("f");
+        }
+        final Node<String>[] nodes = newNodeArray(size);
+        for (int node = 0; node < size; node++) {
+            nodes[node] = new Node<>(firstChild[node] == NONE ? "e" : getLabel(node));
+            if (parent[node] != NONE) {
+                nodes[parent[node]].addChild(nodes[node]);
+            }
+        }
+        if (size == 1) {
+            nodes[0].key = "f";
+        }
+        return nodes[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node<String>[] newNodeArray(final int length) {
+        return (Node<String>[]) new Node<?>[length];
+    }
+}
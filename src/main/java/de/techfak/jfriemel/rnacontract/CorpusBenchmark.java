@@ -0,0 +1,253 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures compression ratio and speed of all codecs on every .txt RNA file of a corpus directory. Files are processed
+ * in path order and every time is the best of a fixed number of repetitions, so reports of the same corpus can be
+ * compared between versions. Every record is checked to decompress to its input.
+ */
+public class CorpusBenchmark {
+
+    /** Name of the aggregate rows in a report. */
+    public static final String TOTAL = "TOTAL";
+
+    private static final String[] CSV_COLUMNS = {"file", "codec", "inputBytes", "bases", "outputBits",
+            "bitsPerBase", "nodes", "unaryNodes", "binaryNodes", "encodeMBps", "decodeMBps"};
+
+    private final RnaCodec[] codecs;
+    private final int repetitions;
+
+    /**
+     * @param repetitions Number of times every file is compressed and decompressed; the fastest run is reported.
+     */
+    public CorpusBenchmark(final int repetitions) {
+        this(repetitions, CodecOptions.DEFAULT);
+    }
+
+    /**
+     * @param repetitions Number of times every file is compressed and decompressed; the fastest run is reported.
+     * @param options     Options of the codecs, e.g. with trained Huffman codes. Both methods are measured, each
+     *                    with Huffman codes and with the range coder, followed by the DAG method.
+     */
+    public CorpusBenchmark(final int repetitions, final CodecOptions options) {
+        if (repetitions < 1) {
+            throw new IllegalArgumentException("At least one repetition is required");
+        }
+        this.repetitions = repetitions;
+        this.codecs = new RnaCodec[]{new RnaCodec(options.withAlternative(false).withRangeCoder(false)),
+                new RnaCodec(options.withAlternative(true).withRangeCoder(false)),
+                new RnaCodec(options.withAlternative(false).withRangeCoder(true)),
+                new RnaCodec(options.withAlternative(true).withRangeCoder(true)),
+                new RnaCodec(options.withAlternative(false).withRangeCoder(false).withDag(true))};
+    }
+
+    /**
+     * Measurements of one codec on one file, or the aggregate of one codec on the whole corpus.
+     */
+    public static final class Result {
+
+        public final String file;
+        public final String codec;
+        public final long inputBytes;
+        public final long bases;
+        public final long outputBits;
+        public final CodecStatistics statistics;
+        public final long encodeNanos;
+        public final long decodeNanos;
+
+        Result(final String file, final String codec, final long inputBytes, final long bases, final long outputBits,
+               final CodecStatistics statistics, final long encodeNanos, final long decodeNanos) {
+            this.file = file;
+            this.codec = codec;
+            this.inputBytes = inputBytes;
+            this.bases = bases;
+            this.outputBits = outputBits;
+            this.statistics = statistics;
+            this.encodeNanos = encodeNanos;
+            this.decodeNanos = decodeNanos;
+        }
+
+        /**
+         * @return Compressed bits per nucleotide of the sequence, including the structure.
+         */
+        public double bitsPerBase() {
+            return bases == 0 ? 0 : (double) outputBits / bases;
+        }
+
+        /**
+         * @return Compression speed in MB of input per second.
+         */
+        public double encodeMBps() {
+            return megabytesPerSecond(encodeNanos);
+        }
+
+        /**
+         * @return Decompression speed in MB of input per second.
+         */
+        public double decodeMBps() {
+            return megabytesPerSecond(decodeNanos);
+        }
+
+        private double megabytesPerSecond(final long nanos) {
+            return nanos == 0 ? 0 : inputBytes * 1e3 / nanos;
+        }
+
+        Result plus(final Result other) {
+            return new Result(file, codec, inputBytes + other.inputBytes, bases + other.bases,
+                    outputBits + other.outputBits, statistics.plus(other.statistics),
+                    encodeNanos + other.encodeNanos, decodeNanos + other.decodeNanos);
+        }
+    }
+
+    /**
+     * Runs the benchmark on all .txt files of a directory and its subdirectories.
+     *
+     * @param directory Path of the corpus directory.
+     * @return Results per file and codec, followed by one TOTAL row per codec.
+     */
+    public List<Result> run(final String directory) {
+        final List<String> paths = Utils.getDirectoryList(directory, ".txt");
+        Collections.sort(paths);
+        final List<Result> results = new ArrayList<>();
+        final Result[] totals = new Result[codecs.length];
+        for (final String path : paths) {
+            final String name = Paths.get(directory).relativize(Paths.get(path)).toString();
+            final String[] rna = Utils.readFile(path);
+            final long inputBytes = new File(path).length();
+            for (int i = 0; i < codecs.length; i++) {
+                final Result result = measure(codecs[i], name, rna, inputBytes);
+                results.add(result);
+                totals[i] = totals[i] == null
+                        ? new Result(TOTAL, result.codec, 0, 0, 0, CodecStatistics.EMPTY, 0, 0).plus(result)
+                        : totals[i].plus(result);
+            }
+        }
+        for (final Result total : totals) {
+            if (total != null) {
+                results.add(total);
+            }
+        }
+        return results;
+    }
+
+    private Result measure(final RnaCodec codec, final String name, final String[] rna, final long inputBytes) {
+        RnaCodec.Compressed compressed = null;
+        long encodeNanos = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            final long start = System.nanoTime();
+            compressed = codec.compress(rna[0], rna[1]);
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+        }
+        final byte[] bytes = compressed.bits.toByteArray();
+        RnaCodec.Decompressed decompressed = null;
+        long decodeNanos = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            final BitReader reader = new BitReader(ByteBuffer.wrap(bytes), compressed.bits.size());
+            final long start = System.nanoTime();
+            decompressed = codec.decompress(reader);
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+        if (!decompressed.sequence.equalsIgnoreCase(rna[0]) || !decompressed.structure.equals(rna[1])) {
+            throw new IllegalStateException("Decompressed RNA differs from " + name);
+        }
+        return new Result(name, codecName(codec), inputBytes, rna[0].length(), compressed.bits.size(),
+                compressed.statistics, encodeNanos, decodeNanos);
+    }
+
+    private static String codecName(final RnaCodec codec) {
+        if (codec.getOptions().isDag()) {
+            return "dag";
+        }
+        return (codec.getOptions().isAlternative() ? "alternative" : "standard")
+                + (codec.getOptions().isRangeCoder() ? "-range" : "");
+    }
+
+    /**
+     * Writes results as CSV with a header line.
+     *
+     * @param results Results of run().
+     * @param writer  Writer the CSV is written to.
+     * @throws IOException If the writer fails.
+     */
+    public static void writeCsv(final List<Result> results, final Writer writer) throws IOException {
+        writer.write(String.join(",", CSV_COLUMNS));
+        writer.write('\n');
+        for (final Result result : results) {
+            final String file = result.file.indexOf(',') >= 0 || result.file.indexOf('"') >= 0
+                    ? '"' + result.file.replace("\"", "\"\"") + '"' : result.file;
+            writer.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.4f,%d,%d,%d,%.2f,%.2f%n", file,
+                    result.codec, result.inputBytes, result.bases, result.outputBits, result.bitsPerBase(),
+                    result.statistics.nodes, result.statistics.unaryNodes, result.statistics.binaryNodes,
+                    result.encodeMBps(), result.decodeMBps()));
+        }
+    }
+
+    /**
+     * Writes results as a JSON object with the Java version, the number of repetitions, the identifier of the Huffman
+     * codes, the per-file results and the totals per codec.
+     *
+     * @param results     Results of run().
+     * @param repetitions Number of repetitions the results were measured with.
+     * @param tableId     Identifier of the Huffman codes the results were measured with (see HuffmanMaps.getId()).
+     * @param writer      Writer the JSON is written to.
+     * @throws IOException If the writer fails.
+     */
+    public static void writeJson(final List<Result> results, final int repetitions, final int tableId,
+                                 final Writer writer) throws IOException {
+        writer.write("{\n  \"javaVersion\": " + jsonString(System.getProperty("java.version")) + ",\n");
+        writer.write("  \"repetitions\": " + repetitions + ",\n");
+        writer.write(String.format("  \"huffmanTables\": \"%08x\",%n", tableId));
+        final List<Result> files = new ArrayList<>();
+        final List<Result> totals = new ArrayList<>();
+        for (final Result result : results) {
+            (TOTAL.equals(result.file) ? totals : files).add(result);
+        }
+        writeJsonArray("files", files, true, writer);
+        writer.write(",\n");
+        writeJsonArray("total", totals, false, writer);
+        writer.write("\n}\n");
+    }
+
+    private static void writeJsonArray(final String name, final List<Result> results, final boolean withFile,
+                                       final Writer writer) throws IOException {
+        writer.write("  \"" + name + "\": [");
+        for (int i = 0; i < results.size(); i++) {
+            final Result result = results.get(i);
+            writer.write(i == 0 ? "\n    {" : ",\n    {");
+            if (withFile) {
+                writer.write("\"file\": " + jsonString(result.file) + ", ");
+            }
+            writer.write(String.format(Locale.ROOT, "\"codec\": \"%s\", \"inputBytes\": %d, \"bases\": %d, "
+                            + "\"outputBits\": %d, \"bitsPerBase\": %.4f, \"nodes\": %d, \"unaryNodes\": %d, "
+                            + "\"binaryNodes\": %d, \"encodeMBps\": %.2f, \"decodeMBps\": %.2f}",
+                    result.codec, result.inputBytes, result.bases, result.outputBits, result.bitsPerBase(),
+                    result.statistics.nodes, result.statistics.unaryNodes, result.statistics.binaryNodes,
+                    result.encodeMBps(), result.decodeMBps()));
+        }
+        writer.write(results.isEmpty() ? "]" : "\n  ]");
+    }
+
+    private static String jsonString(final String value) {
+        final StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,295 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DAG method of RnaCodec: identical subtrees of the contracted tree, such as repeated hairpins or stem-loop motifs, are
+ * stored once and referenced afterwards. Subtrees are hash-consed bottom-up, so two subtrees are identical if their
+ * node types, labels and children are. The tree is then written in preorder like the alternative method, but every
+ * non-leaf node starts with a reference bit:
+ * <ul>
+ * <li>0: a new node follows, written as its type bit, its label with the Huffman codes and one bit per child telling
+ * whether the child is a non-leaf node. Every new node is numbered in the order it is written.</li>
+ * <li>1: the subtree is a copy of the subtree of an earlier new node, whose number follows in just as many bits as
+ * are needed for the new nodes written so far.</li>
+ * </ul>
+ * A repeated subtree is only referenced if the reference is shorter than writing it again. The decoder decodes a
+ * shared subtree once and copies its nodes for every reference; the copies share the label symbols of the original.
+ */
+class DagCodec {
+
+    private DagCodec() {
+
+    }
+
+    /**
+     * Compresses a tree with back-references to repeated subtrees.
+     *
+     * @param codec  Codec whose Huffman codes are used for the labels.
+     * @param tree   Compact contracted tree.
+     * @param result Bit sequence the compressed tree is appended to.
+     */
+    static void compress(final RnaCodec codec, final ContractedTree tree, final BitWriter result) {
+        final int size = tree.size();
+        final Map<Subtree, Integer> classIds = new HashMap<>();
+        final int[] classes = classify(tree, classIds, true);
+        /* Number of bits of writing the subtree of every node anew. */
+        final long[] costs = new long[size];
+        for (int node = size - 1; node >= 0; node--) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 0) {
+                continue;
+            }
+            final int first = tree.getFirstChild(node);
+            costs[node] = 2 + childCount + codec.labelBits(tree, node, childCount == 1) + costs[first]
+                    + (childCount == 2 ? costs[tree.getSecondChild(node)] : 0);
+        }
+
+        /* Number of the first new node of every class, -1 while the class has not been written. */
+        final int[] written = new int[classIds.size() + 1];
+        Arrays.fill(written, -1);
+        int newNodes = 0;
+        int[] stack = new int[16];
+        int stackSize = 0;
+        if (size > 0 && tree.getChildCount(0) > 0) {
+            stack[stackSize++] = 0;
+        }
+        while (stackSize > 0) {
+            final int node = stack[--stackSize];
+            final int width = referenceWidth(newNodes);
+            final int reference = written[classes[node]];
+            if (reference >= 0 && 1 + width < costs[node]) {
+                result.writeBit(true);
+                result.writeBits(reference, width);
+                continue;
+            }
+            result.writeBit(false);
+            if (reference < 0) {
+                written[classes[node]] = newNodes;
+            }
+            newNodes++;
+            final int childCount = tree.getChildCount(node);
+            final int first = tree.getFirstChild(node);
+            result.writeBit(childCount == 2);
+            codec.compressNode(tree, node, childCount == 1, result);
+            result.writeBit(tree.getChildCount(first) != 0);
+            if (stackSize + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            if (childCount == 2) {
+                final int second = tree.getSecondChild(node);
+                result.writeBit(tree.getChildCount(second) != 0);
+                if (tree.getChildCount(second) != 0) {
+                    stack[stackSize++] = second;
+                }
+            }
+            if (tree.getChildCount(first) != 0) {
+                stack[stackSize++] = first;
+            }
+        }
+    }
+
+    /**
+     * Counterpart of compress(), structured like the decompression of the alternative method.
+     *
+     * @param codec      Codec whose Huffman codes are used for the labels.
+     * @param compressed Bit sequence of a single compressed tree.
+     * @return Labeled compact contracted tree, with every reference expanded; a single leaf for an empty bit sequence.
+     * @throws IllegalStateException If a reference does not point to a complete earlier subtree.
+     */
+    static ContractedTree decompress(final RnaCodec codec, final BitReader compressed) {
+        final ContractedTree tree = new ContractedTree();
+        /* Tree index of every new node, by number. */
+        int[] newNodes = new int[16];
+        int newNodeCount = 0;
+        /* Entries are parent << 1 of a pending non-leaf second child, or parent << 1 | 1 of a pending leaf. */
+        int[] pending = new int[16];
+        int pendingSize = 0;
+        int parent = ContractedTree.NONE;
+        while (compressed.hasRemaining()) {
+            if (compressed.readBit()) {
+                if (newNodeCount == 0) {
+                    throw new IllegalStateException("Invalid subtree reference at bit " + compressed.position());
+                }
+                final int reference = compressed.readBits(referenceWidth(newNodeCount));
+                if (reference >= newNodeCount) {
+                    throw new IllegalStateException("Invalid subtree reference at bit " + compressed.position());
+                }
+                copySubtree(tree, newNodes[reference], parent);
+            } else {
+                final int node = tree.addNode(parent);
+                if (newNodeCount == newNodes.length) {
+                    newNodes = Arrays.copyOf(newNodes, newNodeCount << 1);
+                }
+                newNodes[newNodeCount++] = node;
+                final boolean unary = !compressed.readBit();
+                codec.decompressNode(compressed, unary, tree, node);
+                if (unary) {
+                    if (compressed.readBit()) {
+                        parent = node;
+                        continue;
+                    }
+                    tree.addNode(node);
+                } else {
+                    final boolean left = compressed.readBit();
+                    final boolean right = compressed.readBit();
+                    if (left) {
+                        if (pendingSize == pending.length) {
+                            pending = Arrays.copyOf(pending, pendingSize << 1);
+                        }
+                        pending[pendingSize++] = node << 1 | (right ? 0 : 1);
+                        parent = node;
+                        continue;
+                    }
+                    tree.addNode(node);
+                    if (right) {
+                        parent = node;
+                        continue;
+                    }
+                    tree.addNode(node);
+                }
+            }
+            parent = ContractedTree.NONE;
+            while (pendingSize > 0) {
+                final int entry = pending[--pendingSize];
+                if ((entry & 1) == 0) {
+                    parent = entry >>> 1;
+                    break;
+                }
+                tree.addNode(entry >>> 1);
+            }
+            if (parent == ContractedTree.NONE) {
+                break;
+            }
+        }
+        if (tree.size() == 0) {
+            tree.addNode(ContractedTree.NONE);
+        }
+        return tree;
+    }
+
+    /**
+     * Appends a copy of a complete subtree in preorder. The copied nodes share the labels of the original nodes.
+     *
+     * @param tree   Tree containing the subtree.
+     * @param source Root of the subtree.
+     * @param parent Parent of the copy, or NONE for the root.
+     */
+    private static void copySubtree(final ContractedTree tree, final int source, final int parent) {
+        final int end = tree.size();
+        /* Pairs of a node of the subtree and the parent of its copy. */
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = source;
+        stack[stackSize++] = parent;
+        while (stackSize > 0) {
+            final int copyParent = stack[--stackSize];
+            final int node = stack[--stackSize];
+            if (node >= end) {
+                throw new IllegalStateException("Subtree reference to an incomplete subtree");
+            }
+            final int copy = tree.addNode(copyParent);
+            tree.setLabel(copy, tree.getLabelStart(node), tree.getLabelLength(node));
+            if (stackSize + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 2) {
+                stack[stackSize++] = tree.getSecondChild(node);
+                stack[stackSize++] = copy;
+            }
+            if (childCount > 0) {
+                stack[stackSize++] = tree.getFirstChild(node);
+                stack[stackSize++] = copy;
+            }
+        }
+    }
+
+    /**
+     * Numbers the classes of identical subtrees bottom-up. Classes are numbered from 1 in the order they are added to
+     * the map, so the classes of two trees are comparable if they are numbered with the same map.
+     *
+     * @param tree     Compact contracted tree.
+     * @param classIds Classes by subtree key, e.g. of another tree.
+     * @param add      True, if subtrees without a class get a new one; False, if the map is only read, e.g. because
+     *                 other threads read it as well.
+     * @return Class of every node: 0 for leaves, -1 for subtrees without a class if 'add' is false.
+     */
+    static int[] classify(final ContractedTree tree, final Map<Subtree, Integer> classIds, final boolean add) {
+        final int[] classes = new int[tree.size()];
+        for (int node = tree.size() - 1; node >= 0; node--) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 0) {
+                continue;
+            }
+            final int first = classes[tree.getFirstChild(node)];
+            final int second = childCount == 2 ? classes[tree.getSecondChild(node)] : -1;
+            if (first < 0 || childCount == 2 && second < 0) {
+                classes[node] = -1;
+                continue;
+            }
+            final Subtree subtree = new Subtree(tree, node, first, second);
+            final Integer id = add ? classIds.putIfAbsent(subtree, classIds.size() + 1) : classIds.get(subtree);
+            classes[node] = id != null ? id : add ? classIds.size() : -1;
+        }
+        return classes;
+    }
+
+    /**
+     * @param newNodes Number of new nodes written so far.
+     * @return Number of bits of a reference to one of them.
+     */
+    private static int referenceWidth(final int newNodes) {
+        return newNodes <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(newNodes - 1);
+    }
+
+    /**
+     * Key of a class of identical subtrees: the label of the root and the classes of its children.
+     */
+    static final class Subtree {
+
+        private final ContractedTree tree;
+        private final int node;
+        private final int first;
+        private final int second;
+        private final int hash;
+
+        Subtree(final ContractedTree tree, final int node, final int first, final int second) {
+            this.tree = tree;
+            this.node = node;
+            this.first = first;
+            this.second = second;
+            int hash = 31 * first + second;
+            for (int i = 0; i < tree.getLabelLength(node); i++) {
+                hash = 31 * hash + tree.getLabelSymbol(node, i);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Subtree)) {
+                return false;
+            }
+            final Subtree subtree = (Subtree) other;
+            final int length = tree.getLabelLength(node);
+            if (hash != subtree.hash || first != subtree.first || second != subtree.second
+                    || length != subtree.tree.getLabelLength(subtree.node)) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (tree.getLabelSymbol(node, i) != subtree.tree.getLabelSymbol(subtree.node, i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
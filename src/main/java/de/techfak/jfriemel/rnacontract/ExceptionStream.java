@@ -0,0 +1,254 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Arrays;
+
+/**
+ * Side channel for the symbols the contracted tree cannot represent: bases other than A, C, G and U, e.g. N, T or
+ * modified nucleotides, and bases of non-canonical pairs. Before a record is compressed, split() replaces them by
+ * canonical placeholders and collects the original symbols with their positions; after decompression, restore()
+ * writes them back, so the round trip is exact. The placeholders are chosen as follows:
+ * <ul>
+ * <li>An unpaired unsupported base becomes A.</li>
+ * <li>In a non-canonical pair, the base that is not canonical on its own or, if both are, the closing base is replaced
+ * by the partner of the other one (A-U, C-G). A pair of two unsupported bases becomes G-C.</li>
+ * </ul>
+ * The stream is written in front of the record: the number of exceptions plus 1, then for every exception the
+ * distance to the previous one (to -1 for the first) and its symbol in 8 bits. Counts and distances are Elias gamma
+ * codes, so a canonical record costs a single bit. Bases A, C, G and U keep being case-folded like without the stream.
+ */
+final class ExceptionStream {
+
+    private static final int SYMBOL_BITS = 8;
+    private static final long[] NONE = new long[0];
+
+    /* The four canonical bases, so that the partner of "acgu".charAt(i) is the base at 3 - i. */
+    private static final String BASES = "acgu";
+
+    /**
+     * Canonical copy of a record and its exceptions.
+     */
+    static final class Split {
+
+        /** Sequence with every exception replaced by its placeholder; the input itself if there are none. */
+        final CharSequence sequence;
+        /* Position (high bits) and symbol (low 8 bits) of every exception, sorted by position. */
+        private final long[] exceptions;
+
+        private Split(final CharSequence sequence, final long[] exceptions) {
+            this.sequence = sequence;
+            this.exceptions = exceptions;
+        }
+
+        /**
+         * @return Number of exceptions.
+         */
+        int size() {
+            return exceptions.length;
+        }
+
+        /**
+         * Writes the exceptions.
+         *
+         * @param result Bit sequence the stream is appended to.
+         */
+        void write(final BitWriter result) {
+            writeGamma(exceptions.length + 1L, result);
+            long previous = -1;
+            for (final long exception : exceptions) {
+                final long position = exception >>> SYMBOL_BITS;
+                writeGamma(position - previous, result);
+                result.writeBits(exception, SYMBOL_BITS);
+                previous = position;
+            }
+        }
+    }
+
+    private ExceptionStream() {
+
+    }
+
+    /**
+     * Replaces the unsupported symbols of a record by canonical placeholders. A canonical record is read once and not
+     * copied.
+     *
+     * @param sequence  RNA sequence in any case.
+     * @param structure RNA secondary structure.
+     * @return Canonical sequence and exceptions.
+     * @throws IllegalArgumentException If a base is not an 8-bit character.
+     */
+    static Split split(final CharSequence sequence, final CharSequence structure) {
+        final int length = Math.min(sequence.length(), structure.length());
+        char[] canonical = null;
+        long[] exceptions = NONE;
+        int count = 0;
+        int[] openPairs = new int[16];
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            final char base = sequence.charAt(i);
+            final char bracket = structure.charAt(i);
+            if (bracket == '(') {
+                if (depth == openPairs.length) {
+                    openPairs = Arrays.copyOf(openPairs, depth << 1);
+                }
+                openPairs[depth++] = i;
+                continue;
+            }
+            final int index = index(base);
+            if (bracket == ')' && depth > 0) {
+                final int opening = openPairs[--depth];
+                final char openingBase = sequence.charAt(opening);
+                final int openingIndex = index(openingBase);
+                if (openingIndex >= 0 && index >= 0 && (openingIndex + index == 3 || openingIndex + index == 5)) {
+                    continue;
+                }
+                if (canonical == null) {
+                    canonical = toArray(sequence);
+                }
+                if (count + 2 > exceptions.length) {
+                    exceptions = Arrays.copyOf(exceptions, Math.max(16, exceptions.length << 1));
+                }
+                if (openingIndex >= 0) {
+                    canonical[i] = BASES.charAt(3 - openingIndex);
+                    exceptions[count++] = exception(i, base);
+                } else if (index >= 0) {
+                    canonical[opening] = BASES.charAt(3 - index);
+                    exceptions[count++] = exception(opening, openingBase);
+                } else {
+                    canonical[opening] = 'g';
+                    canonical[i] = 'c';
+                    exceptions[count++] = exception(opening, openingBase);
+                    exceptions[count++] = exception(i, base);
+                }
+            } else if (index < 0) {
+                if (canonical == null) {
+                    canonical = toArray(sequence);
+                }
+                if (count == exceptions.length) {
+                    exceptions = Arrays.copyOf(exceptions, Math.max(16, exceptions.length << 1));
+                }
+                canonical[i] = 'a';
+                exceptions[count++] = exception(i, base);
+            }
+        }
+        if (canonical == null) {
+            return new Split(sequence, NONE);
+        }
+        exceptions = Arrays.copyOf(exceptions, count);
+        /* Opening bases are only replaced when their pair is closed, so the positions are not yet in order. */
+        Arrays.sort(exceptions);
+        return new Split(new String(canonical), exceptions);
+    }
+
+    /**
+     * Counterpart of Split.write().
+     *
+     * @param compressed Compressed bit sequence, positioned at the exception stream.
+     * @return Position (high bits) and symbol (low 8 bits) of every exception, sorted by position.
+     * @throws IllegalStateException If the stream is invalid.
+     */
+    static long[] read(final BitReader compressed) {
+        final long count = readGamma(compressed) - 1;
+        if (count == 0) {
+            return NONE;
+        }
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Invalid number of exceptions " + count);
+        }
+        final long[] exceptions = new long[(int) count];
+        long position = -1;
+        for (int i = 0; i < exceptions.length; i++) {
+            position += readGamma(compressed);
+            if (position > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Invalid exception position at bit " + compressed.position());
+            }
+            exceptions[i] = position << SYMBOL_BITS | compressed.readBits(SYMBOL_BITS);
+        }
+        return exceptions;
+    }
+
+    /**
+     * Writes exceptions read with read() into a decompressed sequence.
+     *
+     * @param sequence   Decompressed canonical sequence.
+     * @param exceptions Exceptions of the record.
+     * @return The sequence with the original symbols; the given one if there are no exceptions.
+     * @throws IllegalStateException If an exception lies outside of the sequence.
+     */
+    static String restore(final String sequence, final long[] exceptions) {
+        if (exceptions.length == 0) {
+            return sequence;
+        }
+        final char[] restored = sequence.toCharArray();
+        for (final long exception : exceptions) {
+            final long position = exception >>> SYMBOL_BITS;
+            if (position >= restored.length) {
+                throw new IllegalStateException("Exception at position " + position + " of a sequence of "
+                        + restored.length + " bases");
+            }
+            restored[(int) position] = (char) (exception & 0xFF);
+        }
+        return new String(restored);
+    }
+
+    /**
+     * @param base Base in any case.
+     * @return Index of the base in BASES; -1 if it is not canonical.
+     */
+    private static int index(final char base) {
+        switch (base) {
+            case 'a':
+            case 'A':
+                return 0;
+            case 'c':
+            case 'C':
+                return 1;
+            case 'g':
+            case 'G':
+                return 2;
+            case 'u':
+            case 'U':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    private static long exception(final int position, final char symbol) {
+        if (symbol > 0xFF) {
+            throw new IllegalArgumentException(String.format("Unsupported base U+%04X at position %d", (int) symbol,
+                    position + 1));
+        }
+        /* A, C, G and U of non-canonical pairs are folded to upper case like all other canonical bases. */
+        return (long) position << SYMBOL_BITS | (index(symbol) >= 0 ? Character.toUpperCase(symbol) : symbol);
+    }
+
+    private static char[] toArray(final CharSequence sequence) {
+        final char[] array = new char[sequence.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = sequence.charAt(i);
+        }
+        return array;
+    }
+
+    /**
+     * Writes an Elias gamma code: the number of bits of the value minus 1 as zeros, followed by the value.
+     *
+     * @param value  Positive number.
+     * @param result Bit sequence the code is appended to.
+     */
+    private static void writeGamma(final long value, final BitWriter result) {
+        final int bits = Long.SIZE - Long.numberOfLeadingZeros(value);
+        result.writeBits(0, bits - 1);
+        result.writeBits(value, bits);
+    }
+
+    private static long readGamma(final BitReader compressed) {
+        int zeros = 0;
+        while (!compressed.readBit()) {
+            if (++zeros > Integer.SIZE) {
+                throw new IllegalStateException("Invalid exception stream at bit " + compressed.position());
+            }
+        }
+        return 1L << zeros | compressed.readBits(zeros) & 0xFFFFFFFFL;
+    }
+}
@@ -1,8 +1,13 @@
 package de.techfak.jfriemel.rnacontract;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 /* p : A-U   q : U-A
  * r : C-G   s : G-C
@@ -10,6 +15,30 @@ import java.util.stream.Collectors;
  */
 public class HuffmanMaps {
 
+    /**
+     * Symbols of unary and binary node labels. The index of a symbol is used as context index of the symbol that
+     * follows it. ';' separates node labels and is therefore the context of the first symbol of a label.
+     */
+    public static final char[] UNARY_SYMBOLS = {'a', 'c', 'g', 'u', ';'};
+    public static final char[] BINARY_SYMBOLS = {'p', 'q', 'r', 's', 'x', 'y', ';'};
+
+    public static final int UNARY_SEPARATOR = UNARY_SYMBOLS.length - 1;
+    public static final int BINARY_SEPARATOR = BINARY_SYMBOLS.length - 1;
+
+    /* Symbol indices by character, -1 for characters outside of the alphabet. */
+    private static final byte[] UNARY_INDEX = buildIndex(UNARY_SYMBOLS);
+    private static final byte[] BINARY_INDEX = buildIndex(BINARY_SYMBOLS);
+
+    /* Magic bytes and version of a table file written by save(). */
+    private static final byte[] FILE_MAGIC = {'R', 'N', 'A', 'H'};
+    private static final int FILE_VERSION = 1;
+
+    /* Longest code that fits into the code tables next to its 8-bit length. */
+    private static final int MAX_CODE_LENGTH = 24;
+
+    /** The built-in codes, fitted to the data of the thesis. */
+    public static final HuffmanMaps DEFAULT = new HuffmanMaps();
+
     public Map<String, List<Boolean>> unaryC;
     public Map<String, List<Boolean>> binaryC;
 
@@ -27,11 +56,182 @@ public class HuffmanMaps {
     public Map<List<Boolean>, Character> binaryD_y;
     public Map<List<Boolean>, Character> binaryD_sc;
 
+    /* Encoding tables: [previous symbol index][symbol index] -> (code << 8) | code length. */
+    private int[][] unaryCodes;
+    private int[][] binaryCodes;
+
+    /* Decoding tables: [context][next peekLength bits] -> (symbol index << 8) | code length. */
+    private int[][] unaryTable;
+    private int[][] binaryTable;
+    private int unaryPeekLength;
+    private int binaryPeekLength;
+    private int id;
+
     public HuffmanMaps() {
         initializeUnaryC();
         initializeBinaryC();
+        initialize();
+    }
+
+    private HuffmanMaps(final Map<String, List<Boolean>> unaryC, final Map<String, List<Boolean>> binaryC) {
+        this.unaryC = unaryC;
+        this.binaryC = binaryC;
+        initialize();
+    }
+
+    private void initialize() {
         initializeUnaryD();
         initializeBinaryD();
+        unaryPeekLength = maxCodeLength(unaryC);
+        binaryPeekLength = maxCodeLength(binaryC);
+        unaryCodes = buildEncodingTable(unaryC, UNARY_SYMBOLS);
+        binaryCodes = buildEncodingTable(binaryC, BINARY_SYMBOLS);
+        unaryTable = buildDecodingTables(unaryC, UNARY_SYMBOLS, unaryPeekLength);
+        binaryTable = buildDecodingTables(binaryC, BINARY_SYMBOLS, binaryPeekLength);
+        final CRC32 crc = new CRC32();
+        for (final int[][] codes : new int[][][]{unaryCodes, binaryCodes}) {
+            for (final int[] row : codes) {
+                for (final int code : row) {
+                    for (int shift = 24; shift >= 0; shift -= 8) {
+                        crc.update(code >>> shift);
+                    }
+                }
+            }
+        }
+        id = (int) crc.getValue();
+    }
+
+    /**
+     * Creates canonical Huffman codes from their lengths. Within a context, codes are assigned in order of their
+     * length and then of their symbol index. Every symbol must have a code in every context, except for the separator
+     * after the separator (labels are never empty).
+     *
+     * @param unaryLengths  Code lengths of the unary symbols, indexed [previous][current] like getUnaryCodes().
+     * @param binaryLengths Code lengths of the binary symbols, indexed [previous][current] like getBinaryCodes().
+     * @return Huffman codes.
+     * @throws IllegalArgumentException If the lengths do not describe complete prefix codes.
+     */
+    public static HuffmanMaps fromCodeLengths(final int[][] unaryLengths, final int[][] binaryLengths) {
+        return new HuffmanMaps(canonicalCodes(unaryLengths, UNARY_SYMBOLS),
+                canonicalCodes(binaryLengths, BINARY_SYMBOLS));
+    }
+
+    private static Map<String, List<Boolean>> canonicalCodes(final int[][] lengths, final char[] symbols) {
+        final int separator = symbols.length - 1;
+        if (lengths.length != symbols.length) {
+            throw new IllegalArgumentException("Expected " + symbols.length + " contexts");
+        }
+        final Map<String, List<Boolean>> codes = new HashMap<>();
+        for (int context = 0; context < symbols.length; context++) {
+            if (lengths[context].length != symbols.length) {
+                throw new IllegalArgumentException("Expected " + symbols.length + " code lengths per context");
+            }
+            long kraft = 0;
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                final int length = lengths[context][symbol];
+                final boolean required = context != separator || symbol != separator;
+                if (length < 0 || length > MAX_CODE_LENGTH || (length == 0) == required) {
+                    throw new IllegalArgumentException("Invalid code length " + length + " of '" + symbols[context]
+                            + symbols[symbol] + "'");
+                }
+                if (length > 0) {
+                    kraft += 1L << (MAX_CODE_LENGTH - length);
+                }
+            }
+            if (kraft != 1L << MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Code lengths of context '" + symbols[context]
+                        + "' do not form a complete prefix code");
+            }
+            int code = 0;
+            int previousLength = 0;
+            for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+                for (int symbol = 0; symbol < symbols.length; symbol++) {
+                    if (lengths[context][symbol] != length) {
+                        continue;
+                    }
+                    code <<= length - previousLength;
+                    previousLength = length;
+                    final List<Boolean> bits = new ArrayList<>(length);
+                    for (int bit = length - 1; bit >= 0; bit--) {
+                        bits.add(((code >>> bit) & 1) == 1);
+                    }
+                    codes.put(key(symbols[context], symbols[symbol]), bits);
+                    code++;
+                }
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Loads codes saved with save().
+     *
+     * @param path Path of the table file.
+     * @return Huffman codes.
+     * @throws IOException If the file cannot be read or is not a valid table file.
+     */
+    public static HuffmanMaps load(final String path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(path))) {
+            final byte[] magic = new byte[FILE_MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, FILE_MAGIC)) {
+                throw new IOException(path + " is not a Huffman table file");
+            }
+            final int version = input.readUnsignedByte();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported table file version " + version);
+            }
+            final int[][] unaryLengths = readLengths(input, UNARY_SYMBOLS.length);
+            final int[][] binaryLengths = readLengths(input, BINARY_SYMBOLS.length);
+            if (input.read() >= 0) {
+                throw new IOException(path + " is longer than a table file");
+            }
+            return fromCodeLengths(unaryLengths, binaryLengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + " contains invalid codes: " + e.getMessage(), e);
+        }
+    }
+
+    private static int[][] readLengths(final DataInputStream input, final int symbols) throws IOException {
+        final int[][] lengths = new int[symbols][symbols];
+        for (final int[] row : lengths) {
+            for (int i = 0; i < symbols; i++) {
+                row[i] = input.readUnsignedByte();
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * Saves the code lengths to a table file: the magic bytes "RNAH", the file version (1 byte) and one byte per code
+     * length, first of the unary, then of the binary codes, each indexed [previous][current]. Only canonical codes
+     * (see fromCodeLengths()) are restored exactly by load().
+     *
+     * @param path Path of the table file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(final String path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(path))) {
+            output.write(FILE_MAGIC);
+            output.writeByte(FILE_VERSION);
+            for (final int[][] codes : new int[][][]{unaryCodes, binaryCodes}) {
+                for (final int[] row : codes) {
+                    for (final int code : row) {
+                        output.writeByte(code & 0xFF);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an identifier of the codes, a CRC-32 of the code tables. It is recorded in archive headers, so that an
+     * archive is only decompressed with the codes it was compressed with.
+     *
+     * @return Identifier of the codes.
+     */
+    public int getId() {
+        return id;
     }
 
     public Map<String, List<Boolean>> getUnaryC() {
@@ -42,6 +242,74 @@ public class HuffmanMaps {
         return binaryC;
     }
 
+    /**
+     * Returns the code table for unary labels. An entry is found by the indices of the previous and the current
+     * symbol, and contains the code in its upper bits and the code length in the lowest 8 bits. Entries of symbol
+     * pairs without a code are 0.
+     *
+     * @return Code table for unary labels.
+     */
+    public int[][] getUnaryCodes() {
+        return unaryCodes;
+    }
+
+    /**
+     * Returns the code table for binary labels. See getUnaryCodes().
+     *
+     * @return Code table for binary labels.
+     */
+    public int[][] getBinaryCodes() {
+        return binaryCodes;
+    }
+
+    /**
+     * Returns the index of a unary symbol.
+     *
+     * @param symbol 'a', 'c', 'g', 'u' or ';'.
+     * @return Index in UNARY_SYMBOLS; -1, if the character is not a unary symbol.
+     */
+    public static int unaryIndex(final char symbol) {
+        return symbol < UNARY_INDEX.length ? UNARY_INDEX[symbol] : -1;
+    }
+
+    /**
+     * Returns the index of a binary symbol.
+     *
+     * @param symbol 'p', 'q', 'r', 's', 'x', 'y' or ';'.
+     * @return Index in BINARY_SYMBOLS; -1, if the character is not a binary symbol.
+     */
+    public static int binaryIndex(final char symbol) {
+        return symbol < BINARY_INDEX.length ? BINARY_INDEX[symbol] : -1;
+    }
+
+    /**
+     * Returns the decoding tables for unary labels. An entry is found by the context (index of the previous symbol) and
+     * the next getUnaryPeekLength() bits, and contains the decoded symbol index in its upper bits and the length of
+     * its code in the lowest 8 bits.
+     *
+     * @return Decoding tables for unary labels.
+     */
+    public int[][] getUnaryTable() {
+        return unaryTable;
+    }
+
+    /**
+     * Returns the decoding tables for binary labels. See getUnaryTable().
+     *
+     * @return Decoding tables for binary labels.
+     */
+    public int[][] getBinaryTable() {
+        return binaryTable;
+    }
+
+    public int getUnaryPeekLength() {
+        return unaryPeekLength;
+    }
+
+    public int getBinaryPeekLength() {
+        return binaryPeekLength;
+    }
+
     public Map<List<Boolean>, Character> getUnaryD(final char previous) {
         switch (previous) {
             case 'a':
@@ -167,54 +435,118 @@ public class HuffmanMaps {
     }
 
     private void initializeUnaryD() {
-        unaryD_a = new HashMap<>();
-        unaryD_a = unaryC.entrySet().stream().filter(map -> map.getKey().startsWith("a"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
-
-        unaryD_c = new HashMap<>();
-        unaryD_c = unaryC.entrySet().stream().filter(map -> map.getKey().startsWith("c"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
-
-        unaryD_g = new HashMap<>();
-        unaryD_g = unaryC.entrySet().stream().filter(map -> map.getKey().startsWith("g"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
-
-        unaryD_u = new HashMap<>();
-        unaryD_u = unaryC.entrySet().stream().filter(map -> map.getKey().startsWith("u"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
-
-        unaryD_sc = new HashMap<>();
-        unaryD_sc = unaryC.entrySet().stream().filter(map -> map.getKey().startsWith(";"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+        unaryD_a = decodingMap(unaryC, 'a');
+        unaryD_c = decodingMap(unaryC, 'c');
+        unaryD_g = decodingMap(unaryC, 'g');
+        unaryD_u = decodingMap(unaryC, 'u');
+        unaryD_sc = decodingMap(unaryC, ';');
     }
 
     private void initializeBinaryD() {
-        binaryD_p = new HashMap<>();
-        binaryD_p = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith("p"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+        binaryD_p = decodingMap(binaryC, 'p');
+        binaryD_q = decodingMap(binaryC, 'q');
+        binaryD_r = decodingMap(binaryC, 'r');
+        binaryD_s = decodingMap(binaryC, 's');
+        binaryD_x = decodingMap(binaryC, 'x');
+        binaryD_y = decodingMap(binaryC, 'y');
+        binaryD_sc = decodingMap(binaryC, ';');
+    }
+
+    /**
+     * Inverts the codes of one context. Plain loops instead of streams keep the initialisation of DEFAULT free of
+     * lambda bootstrapping, which would dominate the start-up of a single compression.
+     *
+     * @param codes    Huffman codes, keyed by previous and current symbol.
+     * @param previous Context symbol.
+     * @return Symbols of the context by their codes.
+     */
+    private static Map<List<Boolean>, Character> decodingMap(final Map<String, List<Boolean>> codes,
+                                                             final char previous) {
+        final Map<List<Boolean>, Character> map = new HashMap<>();
+        for (final Entry<String, List<Boolean>> entry : codes.entrySet()) {
+            if (entry.getKey().charAt(0) == previous) {
+                map.put(entry.getValue(), entry.getKey().charAt(1));
+            }
+        }
+        return map;
+    }
 
-        binaryD_q = new HashMap<>();
-        binaryD_q = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith("q"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+    /**
+     * @param previous Previous symbol.
+     * @param symbol   Current symbol.
+     * @return Key of the symbol pair in the code maps, built without string concatenation, which is bootstrapped on
+     * first use.
+     */
+    private static String key(final char previous, final char symbol) {
+        return new String(new char[]{previous, symbol});
+    }
 
-        binaryD_r = new HashMap<>();
-        binaryD_r = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith("r"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+    private static byte[] buildIndex(final char[] symbols) {
+        final byte[] index = new byte[128];
+        Arrays.fill(index, (byte) -1);
+        for (int i = 0; i < symbols.length; i++) {
+            index[symbols[i]] = (byte) i;
+        }
+        return index;
+    }
 
-        binaryD_s = new HashMap<>();
-        binaryD_s = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith("s"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+    private static int[][] buildEncodingTable(final Map<String, List<Boolean>> codes, final char[] symbols) {
+        final int[][] table = new int[symbols.length][symbols.length];
+        for (int previous = 0; previous < symbols.length; previous++) {
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                final List<Boolean> code = codes.get(key(symbols[previous], symbols[symbol]));
+                if (code != null) {
+                    table[previous][symbol] = (toInt(code) << 8) | code.size();
+                }
+            }
+        }
+        return table;
+    }
 
-        binaryD_x = new HashMap<>();
-        binaryD_x = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith("x"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+    private static int toInt(final List<Boolean> code) {
+        int value = 0;
+        for (final Boolean bit : code) {
+            value = (value << 1) | (bit ? 1 : 0);
+        }
+        return value;
+    }
 
-        binaryD_y = new HashMap<>();
-        binaryD_y = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith("y"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+    private static int maxCodeLength(final Map<String, List<Boolean>> codes) {
+        int maxLength = 0;
+        for (final List<Boolean> code : codes.values()) {
+            maxLength = Math.max(maxLength, code.size());
+        }
+        return maxLength;
+    }
 
-        binaryD_sc = new HashMap<>();
-        binaryD_sc = binaryC.entrySet().stream().filter(map -> map.getKey().startsWith(";"))
-                .collect(Collectors.toMap(Entry::getValue, e -> e.getKey().charAt(1)));
+    /**
+     * Builds one decoding table per context. Every code of length l occupies the 2^(peekLength - l) table entries
+     * that start with it, so a single lookup with the next peekLength bits resolves symbol and code length.
+     *
+     * @param codes      Huffman codes, keyed by previous and current symbol.
+     * @param symbols    Symbol alphabet, the separator ';' being the last symbol.
+     * @param peekLength Length of the longest code.
+     * @return Decoding tables, indexed by context. Entries not covered by any code are -1.
+     */
+    private static int[][] buildDecodingTables(final Map<String, List<Boolean>> codes, final char[] symbols,
+                                               final int peekLength) {
+        final int[][] tables = new int[symbols.length][1 << peekLength];
+        for (final int[] table : tables) {
+            Arrays.fill(table, -1);
+        }
+        for (int context = 0; context < symbols.length; context++) {
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                final List<Boolean> code = codes.get(key(symbols[context], symbols[symbol]));
+                if (code == null) {
+                    continue;
+                }
+                final int prefix = toInt(code);
+                final int free = peekLength - code.size();
+                for (int suffix = 0; suffix < (1 << free); suffix++) {
+                    tables[context][(prefix << free) | suffix] = (symbol << 8) | code.size();
+                }
+            }
+        }
+        return tables;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,153 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.IOException;
+
+/**
+ * Fits the Huffman codes of the labels to a corpus. Counts how often every symbol follows every other symbol in the
+ * labels of the contracted trees, exactly as RnaCodec.compressLabels() encodes them, and builds optimal canonical
+ * codes per context from the counts. Every count is increased by one, so symbol pairs missing in the corpus remain
+ * encodable.
+ */
+public class HuffmanTrainer {
+
+    private final long[][] unaryCounts = new long[HuffmanMaps.UNARY_SYMBOLS.length][HuffmanMaps.UNARY_SYMBOLS.length];
+    private final long[][] binaryCounts =
+            new long[HuffmanMaps.BINARY_SYMBOLS.length][HuffmanMaps.BINARY_SYMBOLS.length];
+    private CodecStatistics statistics = CodecStatistics.EMPTY;
+
+    /**
+     * Counts the symbol pairs of all records of a multi-record file or a directory (see RecordReader).
+     *
+     * @param path Path of the multi-record file or directory.
+     * @throws IOException If a file cannot be read.
+     */
+    public void addAll(final String path) throws IOException {
+        try (RecordReader reader = new RecordReader(path)) {
+            RNARecord record;
+            while ((record = reader.next()) != null) {
+                add(record.sequence, record.structure);
+            }
+        }
+    }
+
+    /**
+     * Counts the symbol pairs of a record.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     */
+    public void add(final CharSequence sequence, final CharSequence structure) {
+        final ContractedTree tree = RnaCodec.buildCompactTree(sequence, structure);
+        for (int node = 0; node < tree.size(); node++) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 1) {
+                countLabel(tree, node, true);
+            } else if (childCount == 2) {
+                countLabel(tree, node, false);
+            }
+        }
+        statistics = statistics.plus(CodecStatistics.of(tree));
+    }
+
+    private void countLabel(final ContractedTree tree, final int node, final boolean unary) {
+        final long[][] counts = unary ? unaryCounts : binaryCounts;
+        final int separator = unary ? HuffmanMaps.UNARY_SEPARATOR : HuffmanMaps.BINARY_SEPARATOR;
+        int previous = separator;
+        for (int i = 0; i < tree.getLabelLength(node); i++) {
+            final char symbol = tree.getLabelSymbol(node, i);
+            final int current = unary ? HuffmanMaps.unaryIndex(symbol) : HuffmanMaps.binaryIndex(symbol);
+            if (current < 0 || current == separator) {
+                throw new IllegalArgumentException("Unsupported symbol '" + symbol + "'");
+            }
+            counts[previous][current]++;
+            previous = current;
+        }
+        counts[previous][separator]++;
+    }
+
+    /**
+     * @return Statistics of the records counted so far.
+     */
+    public CodecStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Builds canonical Huffman codes from the counted symbol pairs.
+     *
+     * @return Trained codes.
+     */
+    public HuffmanMaps build() {
+        return HuffmanMaps.fromCodeLengths(codeLengths(unaryCounts), codeLengths(binaryCounts));
+    }
+
+    private static int[][] codeLengths(final long[][] counts) {
+        final int separator = counts.length - 1;
+        final int[][] lengths = new int[counts.length][];
+        for (int context = 0; context < counts.length; context++) {
+            final long[] weights = new long[counts.length];
+            for (int symbol = 0; symbol < counts.length; symbol++) {
+                /* The separator never follows the separator, labels are never empty. */
+                weights[symbol] = context == separator && symbol == separator ? -1 : counts[context][symbol] + 1;
+            }
+            lengths[context] = huffmanLengths(weights);
+        }
+        return lengths;
+    }
+
+    /**
+     * Computes the code lengths of a Huffman code by repeatedly merging the two lightest subtrees. Ties are broken by
+     * the lower index, so equal counts always give the same code.
+     *
+     * @param weights Weight of every symbol; negative for symbols without a code.
+     * @return Code length of every symbol; 0 for symbols without a code.
+     */
+    private static int[] huffmanLengths(final long[] weights) {
+        final int symbols = weights.length;
+        final long[] nodeWeights = new long[2 * symbols];
+        final int[] parents = new int[2 * symbols];
+        final boolean[] active = new boolean[2 * symbols];
+        int nodes = 0;
+        final int[] leaves = new int[symbols];
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            leaves[symbol] = -1;
+            if (weights[symbol] >= 0) {
+                leaves[symbol] = nodes;
+                nodeWeights[nodes] = weights[symbol];
+                active[nodes++] = true;
+            }
+        }
+        for (int remaining = nodes; remaining > 1; remaining--) {
+            final int first = lightest(nodeWeights, active, nodes);
+            active[first] = false;
+            final int second = lightest(nodeWeights, active, nodes);
+            active[second] = false;
+            parents[first] = nodes;
+            parents[second] = nodes;
+            nodeWeights[nodes] = nodeWeights[first] + nodeWeights[second];
+            active[nodes++] = true;
+        }
+        final int[] lengths = new int[symbols];
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            if (leaves[symbol] < 0) {
+                continue;
+            }
+            int length = 0;
+            for (int node = leaves[symbol]; node != nodes - 1; node = parents[node]) {
+                length++;
+            }
+            lengths[symbol] = Math.max(1, length);
+        }
+        return lengths;
+    }
+
+    private static int lightest(final long[] weights, final boolean[] active, final int nodes) {
+        int lightest = -1;
+        for (int node = 0; node < nodes; node++) {
+            if (active[node] && (lightest < 0 || weights[node] < weights[lightest])) {
+                lightest = node;
+            }
+        }
+        return lightest;
+    }
+}
@@ -0,0 +1,168 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a whole file. A single MappedByteBuffer is limited to 2 GiB, so larger files are mapped
+ * as consecutive chunks of 2^chunkBits bytes. Mapping takes constant time and nothing is copied into the heap; the
+ * operating system pages the data in when it is read. The mapping stays valid until it is garbage collected.
+ */
+public class MappedFile {
+
+    private static final int DEFAULT_CHUNK_BITS = 30;
+
+    private final MappedByteBuffer[] chunks;
+    private final int chunkBits;
+    private final long chunkMask;
+    private final long size;
+
+    private MappedFile(final MappedByteBuffer[] chunks, final int chunkBits, final long size) {
+        this.chunks = chunks;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        this.size = size;
+    }
+
+    /**
+     * Maps a whole file into memory in chunks of 1 GiB.
+     *
+     * @param path Path of the file.
+     * @return Mapping of the file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static MappedFile map(final String path) throws IOException {
+        return map(path, DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * Maps a whole file into memory.
+     *
+     * @param path      Path of the file.
+     * @param chunkBits Binary logarithm of the chunk size, at most 30.
+     * @return Mapping of the file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    static MappedFile map(final String path, final int chunkBits) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long chunkSize = 1L << chunkBits;
+            final MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) >>> chunkBits)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long start = (long) i << chunkBits;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+            }
+            return new MappedFile(chunks, chunkBits, size);
+        }
+    }
+
+    /**
+     * @return Size of the file in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @param index Position in the file.
+     * @return Unsigned byte at the position; 0 beyond the end of the file.
+     */
+    public int byteAt(final long index) {
+        if (index >= size) {
+            return 0;
+        }
+        return chunks[(int) (index >>> chunkBits)].get((int) (index & chunkMask)) & 0xFF;
+    }
+
+    /**
+     * @param index Position in the file.
+     * @return Big-endian unsigned short starting at the position.
+     */
+    public int getUnsignedShort(final long index) {
+        return (int) getNumber(index, 2);
+    }
+
+    /**
+     * @param index Position in the file.
+     * @return Big-endian int starting at the position.
+     */
+    public int getInt(final long index) {
+        return (int) getNumber(index, Integer.BYTES);
+    }
+
+    /**
+     * @param index Position in the file.
+     * @return Big-endian long starting at the position.
+     */
+    public long getLong(final long index) {
+        return getNumber(index, Long.BYTES);
+    }
+
+    private long getNumber(final long index, final int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | byteAt(index + i);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a string written by DataOutputStream.writeUTF().
+     *
+     * @param index Position of the string's length prefix in the file.
+     * @return The string.
+     * @throws IOException If the string is malformed.
+     */
+    public String getUTF(final long index) throws IOException {
+        final int length = getUnsignedShort(index);
+        final byte[] bytes = new byte[2 + length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) byteAt(index + i);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+
+    /**
+     * Creates a reader for bits stored in the file. The reader decodes directly from the mapping.
+     *
+     * @param index Position of the first byte of the bits in the file.
+     * @param limit Number of valid bits.
+     * @return Reader for the bits.
+     */
+    public BitReader bitReader(final long index, final long limit) {
+        return new MappedBitReader(this, index, limit);
+    }
+
+    private static class MappedBitReader extends BitReader {
+
+        private final MappedFile file;
+        private final long start;
+
+        MappedBitReader(final MappedFile file, final long start, final long limit) {
+            super(limit);
+            this.file = file;
+            this.start = start;
+        }
+
+        @Override
+        protected int byteAt(final long index) {
+            return file.byteAt(start + index);
+        }
+
+        @Override
+        public BitReader slice(final long sliceStart, final long sliceEnd) {
+            if (sliceStart < 0 || sliceStart > sliceEnd || sliceEnd > limit()) {
+                throw new IndexOutOfBoundsException("Bit range " + sliceStart + " to " + sliceEnd + ", limit "
+                        + limit());
+            }
+            final BitReader slice = new MappedBitReader(file, start, sliceEnd);
+            slice.skipBits(sliceStart);
+            return slice;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package de.techfak.jfriemel.rnacontract;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 public class Node<T> {
     T key;
@@ -36,16 +40,13 @@ public class Node<T> {
     }
 
     /**
-     * Helper method that recursively traverses the tree and builds the child list.
+     * Helper method that traverses the tree and builds the child list.
      *
      * @param children List of children.
      * @param root     Root node for the traversal.
      */
     private void generateAllSubChildren(final List<Node<T>> children, final Node<T> root) {
-        children.add(root);
-        for (final Node<T> child : root.children) {
-            generateAllSubChildren(children, child);
-        }
+        generatePreorderNodes(children, root);
     }
 
     /**
@@ -60,15 +61,18 @@ public class Node<T> {
     }
 
     /**
-     * Helper method that recursively traverses the tree and builds the preorder list.
+     * Walks the tree in preorder with an explicit stack and builds the preorder list.
      *
      * @param traversal Preorder list.
      * @param root      Root node for the traversal.
      */
     private void generatePreorder(final List<T> traversal, final Node<T> root) {
-        traversal.add(root.key);
-        for (final Node<T> child : root.children) {
-            generatePreorder(traversal, child);
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Node<T> node = stack.pop();
+            traversal.add(node.key);
+            pushChildren(stack, node);
         }
     }
 
@@ -84,15 +88,18 @@ public class Node<T> {
     }
 
     /**
-     * Helper method that recursively traverses the tree and builds the preorder list.
+     * Walks the tree in preorder with an explicit stack and builds the preorder list.
      *
      * @param traversal Preorder list.
      * @param root      Root node for the traversal.
      */
     private void generatePreorderNodes(final List<Node<T>> traversal, final Node<T> root) {
-        traversal.add(root);
-        for (final Node<T> child : root.children) {
-            generatePreorderNodes(traversal, child);
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Node<T> node = stack.pop();
+            traversal.add(node);
+            pushChildren(stack, node);
         }
     }
 
@@ -108,21 +115,37 @@ public class Node<T> {
     }
 
     /**
-     * Helper method that recursively traverses the tree and builds the preorder leaf list.
+     * Walks the tree in preorder with an explicit stack and builds the preorder leaf list.
      *
      * @param traversal Preorder leaf list.
      * @param root      Root node for the traversal.
      */
     private void generatePreorderLeaves(final List<Node<T>> traversal, final Node<T> root) {
-        if (root.children.size() == 0) {
-            traversal.add(root);
-        } else {
-            for (final Node<T> child : root.children) {
-                generatePreorderLeaves(traversal, child);
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Node<T> node = stack.pop();
+            if (node.children.size() == 0) {
+                traversal.add(node);
+            } else {
+                pushChildren(stack, node);
             }
         }
     }
 
+    /**
+     * Pushes the children of a node onto a traversal stack in reverse order, so they are popped from left to right.
+     *
+     * @param stack Traversal stack.
+     * @param node  Node whose children are pushed.
+     */
+    private static <S> void pushChildren(final Deque<Node<S>> stack, final Node<S> node) {
+        final ListIterator<Node<S>> iterator = node.children.listIterator(node.children.size());
+        while (iterator.hasPrevious()) {
+            stack.push(iterator.previous());
+        }
+    }
+
     /**
      * Creates a balanced parentheses representation of the tree structure.
      *
@@ -130,7 +153,7 @@ public class Node<T> {
      */
     public String getBalancedBrackets() {
         StringBuilder buffer = new StringBuilder();
-        bracketRecursion(buffer, this, true);
+        appendBrackets(buffer, this, true);
         return buffer.toString();
     }
 
@@ -141,7 +164,7 @@ public class Node<T> {
      */
     public String getImbalancedBrackets() {
         StringBuilder buffer = new StringBuilder();
-        bracketRecursion(buffer, this, false);
+        appendBrackets(buffer, this, false);
         return buffer.toString();
     }
 
@@ -155,18 +178,34 @@ public class Node<T> {
     }
 
     /**
-     * Recursively builds the balanced parentheses representation starting with a root node.
+     * Appends the parentheses representation of the tree below a root node, walking it in preorder with an explicit
+     * stack.
      *
-     * @param buffer Builder for the tree representation.
-     * @param root   Root node.
+     * @param buffer   Builder for the tree representation.
+     * @param root     Root node.
+     * @param balanced True, if the closing brackets of binary nodes are written; False, otherwise.
      */
-    private void bracketRecursion(final StringBuilder buffer, final Node<T> root, final boolean balanced) {
-        buffer.append('(');
-        for (final Node<T> child : root.children) {
-            bracketRecursion(buffer, child, balanced);
-        }
-        if (balanced || root.children.size() != 2) {
-            buffer.append(')');
+    private void appendBrackets(final StringBuilder buffer, final Node<T> root, final boolean balanced) {
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        /* closing.get(i): the i-th stack element (from the bottom) only closes its node. */
+        final BitSet closing = new BitSet();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Node<T> node = stack.pop();
+            if (closing.get(stack.size())) {
+                buffer.append(')');
+                continue;
+            }
+            buffer.append('(');
+            if (balanced || node.children.size() != 2) {
+                closing.set(stack.size());
+                stack.push(node);
+            }
+            final ListIterator<Node<T>> iterator = node.children.listIterator(node.children.size());
+            while (iterator.hasPrevious()) {
+                closing.clear(stack.size());
+                stack.push(iterator.previous());
+            }
         }
     }
 
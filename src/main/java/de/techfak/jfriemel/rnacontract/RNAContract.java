@@ -2,25 +2,18 @@ package de.techfak.jfriemel.rnacontract;
 
 import com.beust.jcommander.JCommander;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.util.*;
 
 public class RNAContract {
 
-    private static final HuffmanMaps HUFFMAN_MAPS = new HuffmanMaps();
-
-    private static final Map<Character, char[]> VARIABLE_MAP = new HashMap<>();
-
-    private static long runtime;
-
-    private static boolean xml;
-    private static boolean debug;
-    private static boolean alternative;
-
-    private static int numberOfNodes = 0;
-    private static int numberOfUnaryNodes = 0;
-    private static int numberOfBinaryNodes = 0;
+    private static final RnaCodec CODEC = new RnaCodec();
+    private static final RnaCodec ALTERNATIVE_CODEC = new RnaCodec(CodecOptions.DEFAULT.withAlternative(true));
 
     public static void main(String[] args) {
 
@@ -29,14 +22,109 @@ public class RNAContract {
         CommandLineArgs cmdLineArgs = new CommandLineArgs();
         JCommander.newBuilder().addObject(cmdLineArgs).build().parse(args);
 
-        boolean statistics = cmdLineArgs.statistics;
-        xml = cmdLineArgs.xml;
-        debug = cmdLineArgs.debug;
-        alternative = cmdLineArgs.alternative;
+        final boolean alternative = cmdLineArgs.alternative;
+        final boolean debug = cmdLineArgs.debug;
+        CodecOptions options = CodecOptions.DEFAULT.withAlternative(alternative)
+                .withRangeCoder(cmdLineArgs.rangeCoder);
+        if (cmdLineArgs.dag) {
+            if (alternative || cmdLineArgs.rangeCoder) {
+                System.out.println("Please use -dag without -a and -rc.");
+                System.exit(0);
+                return;
+            }
+            options = options.withDag(true);
+        }
+        if (cmdLineArgs.lanes != 1) {
+            if (alternative || cmdLineArgs.rangeCoder || cmdLineArgs.dag || cmdLineArgs.lanes < 1
+                    || cmdLineArgs.lanes > CodecOptions.MAX_LANES) {
+                System.out.println("Please use -l with 1 to " + CodecOptions.MAX_LANES
+                        + " lanes and without -a, -rc and -dag.");
+                System.exit(0);
+                return;
+            }
+            options = options.withLanes(cmdLineArgs.lanes);
+        }
+        if (cmdLineArgs.blockSize != 0) {
+            if (cmdLineArgs.blockSize < 0) {
+                System.out.println("Please use -bl with a positive number of bases.");
+                System.exit(0);
+                return;
+            }
+            options = options.withBlockSize(cmdLineArgs.blockSize);
+        }
+        if (cmdLineArgs.threads < 1) {
+            System.out.println("Please use -t with at least 1 thread.");
+            System.exit(0);
+            return;
+        }
+        if (cmdLineArgs.reference) {
+            if (!cmdLineArgs.batch) {
+                System.out.println("Please use -ref with -b.");
+                System.exit(0);
+                return;
+            }
+            options = options.withReference(true);
+        }
+        if (cmdLineArgs.exceptions) {
+            options = options.withExceptions(true);
+        }
+        if (cmdLineArgs.tables != null) {
+            options = options.withHuffmanMaps(loadTables(cmdLineArgs.tables));
+        }
+        final RnaCodec codec = new RnaCodec(options);
+        final RnaValidator validator = new RnaValidator(cmdLineArgs.invalid, cmdLineArgs.exceptions);
+        if (cmdLineArgs.server) {
+            runServer(codec, cmdLineArgs.port == null ? CompressionServer.DEFAULT_PORT : cmdLineArgs.port);
+            return;
+        }
+        if (cmdLineArgs.input == null) {
+            System.out.println("Please specify an input path with -i.");
+            System.exit(0);
+            return;
+        }
 
         String input = cmdLineArgs.input;
         String output = cmdLineArgs.output;
-        if (cmdLineArgs.compress) {
+        long runtime = System.currentTimeMillis();
+        final CodecStatistics statistics;
+        if (cmdLineArgs.benchmark) {
+            if (output == null) {
+                output = new File(input).getAbsolutePath() + "-benchmark.csv";
+            }
+            statistics = benchmarkCorpus(options, input, output, cmdLineArgs.repetitions);
+            System.out.println("Benchmark successful. Report of " + statistics.records + " files at " + output);
+        } else if (cmdLineArgs.train) {
+            if (output == null) {
+                if (new File(input).isDirectory()) {
+                    output = new File(input).getAbsolutePath() + ".rnah";
+                } else {
+                    output = Utils.swapFileEndings(input, 3, "rnah");
+                }
+            }
+            statistics = trainTables(input, output);
+            System.out.println("Training successful. Huffman tables of " + statistics.records + " records at "
+                    + output);
+        } else if (cmdLineArgs.batch && cmdLineArgs.compress) {
+            if (output == null) {
+                if (new File(input).isDirectory()) {
+                    output = new File(input).getAbsolutePath() + ".rnac";
+                } else {
+                    output = Utils.swapFileEndings(input, 3, "rnac");
+                }
+            }
+            statistics = compressBatch(codec, validator, input, output, cmdLineArgs.threads);
+            System.out.println("Compression successful. Compressed " + statistics.records + " records into " + output);
+            if (new File(output + BatchProcessor.INVALID_SUFFIX).exists()) {
+                System.out.println("Invalid records written to " + output + BatchProcessor.INVALID_SUFFIX);
+            }
+        } else if (cmdLineArgs.batch && cmdLineArgs.decompress && cmdLineArgs.record == null) {
+            if (output == null) {
+                output = Utils.swapFileEndings(input, 4, "txt");
+            }
+            statistics = decompressBatch(codec, input, output, cmdLineArgs.threads);
+            System.out.println("Decompression successful. Decompressed " + statistics.records + " records into "
+                    + output);
+        } else if (cmdLineArgs.compress) {
             if (output == null) {
                 if (alternative) {
                     output = Utils.swapFileEndings(input, 3, "rnac2");
@@ -44,7 +132,8 @@ public class RNAContract {
                     output = Utils.swapFileEndings(input, 3, "rnac");
                 }
             }
-            compressFile(input, output);
+            statistics = cmdLineArgs.port != null ? compressRemote(cmdLineArgs.port, options, input, output)
+                    : compressFile(codec, validator, input, output, debug);
             System.out.println("Compression successful. Compressed file at " + output);
         } else if (cmdLineArgs.decompress) {
             if (output == null) {
@@ -54,290 +143,506 @@ public class RNAContract {
                     output = Utils.swapFileEndings(input, 4, "txt");
                 }
             }
-            decompressFile(input, output);
+            final int record = cmdLineArgs.record == null ? -1 : cmdLineArgs.record;
+            statistics = cmdLineArgs.port != null ? decompressRemote(cmdLineArgs.port, options, input, output, record)
+                    : decompressFile(codec, input, output, record, debug);
             System.out.println("Decompression successful. Decompressed file at " + output);
-        } else if (xml) {
+        } else if (cmdLineArgs.xml) {
             if (output == null) {
                 output = Utils.swapFileEndings(input, 3, "xml");
             }
-            createXMLFile(input, output);
+            statistics = cmdLineArgs.port != null ? createXMLRemote(cmdLineArgs.port, options, input, output)
+                    : createXMLFile(new RnaValidator(cmdLineArgs.invalid), input, output, debug);
             System.out.println("XML generation successful. XML file at " + output);
         } else {
             System.out.println("Please use -c for compression and -d for decompression.");
             System.exit(0);
+            return;
         }
+        runtime = System.currentTimeMillis() - runtime;
 
-        if (statistics) {
-            printStatistics(input, output);
+        if (cmdLineArgs.statistics) {
+            printStatistics(input, output, runtime, statistics, cmdLineArgs.xml);
         }
 
     }
 
     /**
-     * Compresses a .txt RNA file. Saves the compressed file to the given output path.
+     * Compresses a .txt RNA file. Saves the compressed file as an archive with a single record to the given output
+     * path. The alternative method with Huffman codes streams the input unless debug output is requested.
      *
+     * @param codec  Codec used for compression.
      * @param input  Path of the .txt file.
      * @param output Path of the .rnac file to be written.
+     * @param debug  True, if the compressed bits are printed to the console; False, otherwise.
+     * @return Statistics of the compressed record.
      */
-    public static void compressFile(final String input, final String output) {
-        runtime = System.currentTimeMillis();
-        final String[] rna = Utils.readFile(input);
-        final List<Boolean> bits;
-        if (alternative) {
-            bits = compressAlternative(rna[0], rna[1]);
-        } else {
-            bits = compress(rna[0], rna[1]);
+    public static CodecStatistics compressFile(final RnaCodec codec, final String input, final String output,
+                                               final boolean debug) {
+        return compressFile(codec, RnaValidator.DEFAULT, input, output, debug);
+    }
+
+    /**
+     * Validates a .txt RNA file and compresses it (see compressFile(RnaCodec, String, String, boolean)). Files too
+     * large to be mapped at once are streamed without validation; the streaming compressor rejects invalid records
+     * itself, without their line and column.
+     *
+     * @param codec     Codec used for compression.
+     * @param validator Validator of the record.
+     * @param input     Path of the .txt file.
+     * @param output    Path of the .rnac file to be written.
+     * @param debug     True, if the compressed bits are printed to the console; False, otherwise.
+     * @return Statistics of the compressed record.
+     * @throws RnaValidator.InvalidRnaException If the record is invalid.
+     */
+    public static CodecStatistics compressFile(final RnaCodec codec, final RnaValidator validator, final String input,
+                                               final String output, final boolean debug) {
+        final boolean streaming = StreamingCompressor.supports(codec.getOptions()) && !debug;
+        if (streaming && new File(input).length() > Integer.MAX_VALUE) {
+            return compressFileStreaming(codec, input, output);
+        }
+        final AsciiSequence[] rna = Utils.readAsciiFile(input);
+        final CharSequence sequence = validator.validate(rna[0], rna[1]);
+        if (streaming && sequence == rna[0]) {
+            return compressFileStreaming(codec, input, output);
         }
+        final RnaCodec.Compressed compressed = codec.compress(sequence, rna[1]);
         if (debug) {
-            Utils.printBits(bits);
+            Utils.printBits(compressed.bits);
         }
-        Utils.writeBits(output, bits);
-        runtime = System.currentTimeMillis() - runtime;
+        try (ArchiveWriter writer = new ArchiveWriter(output, codec.getOptions())) {
+            try {
+                writer.write("", compressed.bits);
+            } catch (IOException e) {
+                writer.abort();
+                throw e;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return compressed.statistics;
+    }
+
+    /**
+     * Compresses a .txt RNA file with the alternative method while reading it (see StreamingCompressor), so neither
+     * the RNA nor its tree have to fit into memory.
+     *
+     * @param codec  Codec with the alternative method.
+     * @param input  Path of the .txt file.
+     * @param output Path of the .rnac2 file to be written.
+     * @return Statistics of the compressed record.
+     */
+    private static CodecStatistics compressFileStreaming(final RnaCodec codec, final String input,
+                                                         final String output) {
+        StreamingCompressor.Result result = null;
+        try (ArchiveWriter writer = new ArchiveWriter(output, codec.getOptions())) {
+            try {
+                result = new StreamingCompressor(codec).compressFile(input, writer.beginRecord(""));
+                writer.endRecord(result.bits);
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return result.statistics;
     }
 
     /**
-     * Decompresses a .rnac file. Saves the decompressed RNA data to the given output path.
+     * Decompresses a record of a .rnac file. Saves the decompressed RNA data to the given output path.
+     * Archives are decompressed with the codec they were written with; Huffman codes other than the built-in ones must
+     * be those of the given codec. Files without an archive header are read as a
+     * bare bit sequence, as written by earlier versions, and decompressed with the given codec. Records of the
+     * alternative method are written to the output while they are decoded (see StreamingDecompressor). Records coded
+     * against the first record of their archive are decoded after it (see ReferenceCodec).
+     *
+     * @param codec  Codec used for files without an archive header, and whose Huffman codes are used for archives
+     *               compressed with them.
      * @param input  Path of the .rnac file.
      * @param output Path of the .txt file to be written.
+     * @param record Position of the record in the archive, or -1 for an archive with a single record.
+     * @param debug  True, if the decompressed RNA is printed to the console; False, otherwise.
+     * @return Statistics of the decompressed record.
      */
-    public static void decompressFile(final String input, final String output) {
-        runtime = System.currentTimeMillis();
-        final List<Boolean> bits = Utils.readBits(input);
-        final String[] rna;
-        if (alternative) {
-            rna = decompressAlternative(bits);
-        } else {
-            rna = decompress(bits);
+    public static CodecStatistics decompressFile(final RnaCodec codec, final String input, final String output,
+                                                 final int record, final boolean debug) {
+        RnaCodec.Decompressed rna = null;
+        try {
+            if (ArchiveReader.isArchive(input)) {
+                try (ArchiveReader reader = new ArchiveReader(input)) {
+                    if (record < 0 && reader.size() != 1) {
+                        throw new IOException(input + " contains " + reader.size()
+                                + " records. Use -b to decompress all of them or -r to select one.");
+                    }
+                    final RnaCodec archiveCodec = new RnaCodec(reader.getOptions(codec.getOptions()));
+                    final int index = Math.max(0, record);
+                    if (archiveCodec.getOptions().isReference() && index > 0) {
+                        final RnaCodec.Decompressed reference = archiveCodec.decompress(reader.get(0).bits);
+                        rna = new ReferenceCodec(archiveCodec, reference.sequence, reference.structure)
+                                .decompress(reader.get(index).bits);
+                    } else if (StreamingDecompressor.supports(archiveCodec.getOptions()) && !debug) {
+                        return decompressFileStreaming(archiveCodec, reader.get(index).bits,
+                                reader.get(index).bits, output);
+                    } else {
+                        rna = archiveCodec.decompress(reader.get(index).bits);
+                    }
+                }
+            } else if (StreamingDecompressor.supports(codec.getOptions()) && !debug) {
+                return decompressFileStreaming(codec, Utils.readBits(input), Utils.readBits(input), output);
+            } else {
+                rna = codec.decompress(Utils.readBits(input));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
-        final String text = rna[0] + '\n' + rna[1];
+        final String text = rna.sequence + '\n' + rna.structure;
         if (debug) {
             System.out.println(text);
         }
         Utils.writeFile(output, text);
-        runtime = System.currentTimeMillis() - runtime;
+        return rna.statistics;
     }
 
     /**
-     * Creates an XML file representing the contracted tree of a .txt RNA file.
+     * Decompresses a record of the alternative method without building its tree or holding the RNA in memory. The
+     * record is read twice from the mapped file, once for each line of the output.
      *
-     * @param input  Path of the .txt file.
-     * @param output Path of the .xml file to be written.
+     * @param codec         Codec with the alternative method.
+     * @param sequencePass  Compressed record.
+     * @param structurePass The same compressed record, read a second time.
+     * @param output        Path of the .txt file to be written.
+     * @return Statistics of the decompressed record.
+     * @throws IOException If the file cannot be written.
      */
-    private static void createXMLFile(final String input, final String output) {
-        runtime = System.currentTimeMillis();
-        final String[] rna = Utils.readFile(input);
-        final String xml = createXML(rna[0], rna[1]);
-        if (debug) {
-            System.out.println(xml);
+    private static CodecStatistics decompressFileStreaming(final RnaCodec codec, final BitReader sequencePass,
+                                                           final BitReader structurePass, final String output)
+            throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(output))) {
+            return new StreamingDecompressor(codec).decompressLines(sequencePass, structurePass, writer);
         }
-        Utils.writeFile(output, xml);
-        runtime = System.currentTimeMillis() - runtime;
     }
 
     /**
-     * Prints some very basic statistics to the console.
+     * Compresses all records of a multi-record file or of all .txt files in a directory into one archive.
      *
-     * @param input  Input path of the (de-)compressed file.
-     * @param output Output path of the (de-)compressed file.
+     * @param codec   Codec used for compression.
+     * @param input   Path of the multi-record file or directory.
+     * @param output  Path of the archive to be written.
+     * @param threads Number of worker threads.
+     * @return Statistics of all compressed records.
      */
-    public static void printStatistics(final String input, final String output) {
-        long inputSize = new File(input).length();
-        System.out.println("\nInput file size:  " + Utils.humanReadableByteCount(inputSize));
-        long outputSize = new File(output).length();
-        System.out.println("Output file size: " + Utils.humanReadableByteCount(outputSize));
-        double ratio = ((double) inputSize) / ((double) outputSize);
-        if (ratio > 1) {
-            ratio = 1 / ratio;
-        }
-        DecimalFormat percentFormat = new DecimalFormat("0.00%");
-        if (!xml) {
-            System.out.println("Compression rate: " + percentFormat.format(ratio));
-        }
-        System.out.println("Processing time:  " + (double) runtime/1000 + "s\n");
-
-        System.out.println("Total number of nodes:  " + numberOfNodes);
-        System.out.println("Number of unary nodes:  " + numberOfUnaryNodes);
-        System.out.println("Number of binary nodes: " + numberOfBinaryNodes);
+    public static CodecStatistics compressBatch(final RnaCodec codec, final String input, final String output,
+                                                final int threads) {
+        return compressBatch(codec, RnaValidator.DEFAULT, input, output, threads);
     }
 
     /**
-     * Compresses an RNA sequence with the corresponding secondary structure.
+     * Compresses all valid records of a multi-record file or of all .txt files in a directory into one archive (see
+     * BatchProcessor.compress()).
      *
-     * @param sequence  RNA sequence.
-     * @param structure RNA secondary structure.
-     * @return List of bits.
+     * @param codec     Codec used for compression.
+     * @param validator Validator of the records.
+     * @param input     Path of the multi-record file or directory.
+     * @param output    Path of the archive to be written.
+     * @param threads   Number of worker threads.
+     * @return Statistics of all compressed records.
      */
-    public static List<Boolean> compress(final String sequence, final String structure) {
-        final Node<String> tree = buildContractedTree(sequence.toLowerCase(), structure);
-        final List<Boolean> compression = new ArrayList<>();
-
-        compression.addAll(compressUnlabeledTree(tree));
-        compression.addAll(compressLabels(tree));
+    public static CodecStatistics compressBatch(final RnaCodec codec, final RnaValidator validator,
+                                                final String input, final String output, final int threads) {
+        try {
+            return BatchProcessor.compress(codec, validator, input, output, threads);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return CodecStatistics.EMPTY;
+    }
 
-        return compression;
+    /**
+     * Decompresses all records of an archive into a multi-record file.
+     *
+     * @param codec   Codec whose Huffman codes are used if the archive was compressed with them.
+     * @param input   Path of the archive.
+     * @param output  Path of the multi-record file to be written.
+     * @param threads Number of worker threads.
+     * @return Statistics of all decompressed records.
+     */
+    public static CodecStatistics decompressBatch(final RnaCodec codec, final String input, final String output,
+                                                  final int threads) {
+        try {
+            return BatchProcessor.decompress(codec, input, output, threads);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return CodecStatistics.EMPTY;
     }
 
     /**
-     * Decompresses a bit sequence into an RNA sequence including its secondary structure.
+     * Loads Huffman codes from a table file written by trainTables().
      *
-     * @param compressed Compressed bit sequence.
-     * @return Decompressed RNA. 0: Sequence. 1: Structure.
+     * @param path Path of the table file.
+     * @return Huffman codes.
      */
-    public static String[] decompress(final List<Boolean> compressed) {
-        final Node<String> tree = decompressUnlabeledTree(compressed);
+    private static HuffmanMaps loadTables(final String path) {
+        try {
+            return HuffmanMaps.load(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return null;
+    }
 
-        decompressLabels(compressed, tree);
+    /**
+     * Trains Huffman codes on all records of a multi-record file or directory (see HuffmanTrainer) and saves them as a
+     * table file, which compression and decompression load with --tables.
+     *
+     * @param input  Path of the multi-record file or directory.
+     * @param output Path of the table file to be written.
+     * @return Statistics of the records the codes were trained on.
+     */
+    private static CodecStatistics trainTables(final String input, final String output) {
+        final HuffmanTrainer trainer = new HuffmanTrainer();
+        try {
+            trainer.addAll(input);
+            final HuffmanMaps huffmanMaps = trainer.build();
+            huffmanMaps.save(output);
+            System.out.printf("Huffman tables %08x%n", huffmanMaps.getId());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return trainer.getStatistics();
+    }
 
-        return treeToRNA(tree);
+    /**
+     * Runs CorpusBenchmark on a directory, prints the totals per codec and writes the report. The report is JSON if the
+     * output path ends with .json, CSV otherwise.
+     *
+     * @param options     Options of the codecs, whose Huffman codes are used.
+     * @param input       Path of the corpus directory.
+     * @param output      Path of the report to be written.
+     * @param repetitions Number of repetitions per file.
+     * @return Statistics of the files compressed with the standard codec.
+     */
+    private static CodecStatistics benchmarkCorpus(final CodecOptions options, final String input, final String output,
+                                                   final int repetitions) {
+        final List<CorpusBenchmark.Result> results = new CorpusBenchmark(repetitions, options).run(input);
+        CodecStatistics statistics = CodecStatistics.EMPTY;
+        for (final CorpusBenchmark.Result result : results) {
+            if (CorpusBenchmark.TOTAL.equals(result.file)) {
+                System.out.printf("%-17s %10.4f bits/base %10.2f MB/s encode %10.2f MB/s decode%n", result.codec,
+                        result.bitsPerBase(), result.encodeMBps(), result.decodeMBps());
+                if (statistics.records == 0) {
+                    statistics = result.statistics;
+                }
+            }
+        }
+        try (Writer writer = new BufferedWriter(new FileWriter(output))) {
+            if (output.endsWith(".json")) {
+                CorpusBenchmark.writeJson(results, repetitions, options.getHuffmanMaps().getId(), writer);
+            } else {
+                CorpusBenchmark.writeCsv(results, writer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return statistics;
     }
 
     /**
-     * Creates an XML string representing the contracted tree from an RNA sequence and its secondary structure.
+     * Creates an XML file representing the contracted tree of a .txt RNA file.
      *
-     * @param sequence  RNA sequence.
-     * @param structure RNA secondary structure.
-     * @return XML string.
+     * @param validator Validator of the record.
+     * @param input     Path of the .txt file.
+     * @param output    Path of the .xml file to be written.
+     * @param debug     True, if the XML is printed to the console; False, otherwise.
+     * @return Statistics of the contracted tree.
      */
-    public static String createXML(final String sequence, final String structure) {
-        return Utils.generateXML(buildContractedTree(sequence.toLowerCase(), structure));
+    private static CodecStatistics createXMLFile(final RnaValidator validator, final String input,
+                                                 final String output, final boolean debug) {
+        final AsciiSequence[] rna = Utils.readAsciiFile(input);
+        final String sequence = validator.validate(rna[0], rna[1]).toString();
+        final Node<String> tree = buildContractedTree(sequence.toLowerCase(), rna[1].toString());
+        final String xml = Utils.generateXML(tree);
+        if (debug) {
+            System.out.println(xml);
+        }
+        Utils.writeFile(output, xml);
+        return CodecStatistics.of(tree);
     }
 
     /**
-     * Compresses the structure of a given tree into a bit sequence (in this case: list of booleans).
+     * Runs a CompressionServer until the process is stopped.
      *
-     * @param <T>  Type of the tree data. Irrelevant in this case as only the structure is compressed.
-     * @param tree Root node of the tree.
-     * @return Bit sequence.
+     * @param codec Codec of compression requests.
+     * @param port  Port to listen on.
      */
-    public static<T> List<Boolean> compressUnlabeledTree(final Node<T> tree) {
-        final String imbalancedBrackets = tree.getImbalancedBrackets();
-        List<Boolean> result = new ArrayList<>();
-        for (int i = 1; i < imbalancedBrackets.length(); i++) {
-            result.add(imbalancedBrackets.charAt(i) == '(');
+    private static void runServer(final RnaCodec codec, final int port) {
+        try (CompressionServer server = new CompressionServer(codec, port)) {
+            System.out.println("Compression service listening on port " + server.getPort());
+            server.run();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
-        return result;
     }
 
     /**
-     * Compresses the labels of a contracted RNA tree into a bit sequence.
+     * Compresses a .txt RNA file with a running CompressionServer and saves it as an archive with a single record.
      *
-     * @param tree Root node of the contracted RNA tree.
-     * @return Bit sequence.
+     * @param port    Port of the server.
+     * @param options Options whose Huffman codes are used if the server compresses with them.
+     * @param input   Path of the .txt file.
+     * @param output  Path of the .rnac file to be written.
+     * @return Statistics of the compressed record.
      */
-    public static List<Boolean> compressLabels(final Node<String> tree) {
-        final StringBuilder labelBuilder = new StringBuilder();
-        labelBuilder.append(';');
-        for (final String nodeLabel : tree.getPreorder()) {
-            labelBuilder.append(nodeLabel);
-            labelBuilder.append(';');
-        }
-        final String labels = labelBuilder.toString();
-        List<Boolean> result = new ArrayList<>();
-        String currentPair;
-        Map<String, List<Boolean>> huffmanUnary = HUFFMAN_MAPS.getUnaryC();
-        Map<String, List<Boolean>> huffmanBinary = HUFFMAN_MAPS.getBinaryC();
-        for (int i = 0; i < labels.length() - 1; i++) {
-            currentPair = labels.substring(i, i + 2);
-            if (huffmanUnary.containsKey(currentPair)) {
-                result.addAll(huffmanUnary.get(currentPair));
-            } else if (huffmanBinary.containsKey(currentPair)) {
-                result.addAll(huffmanBinary.get(currentPair));
+    private static CodecStatistics compressRemote(final int port, final CodecOptions options, final String input,
+                                                  final String output) {
+        final String[] rna = Utils.readFile(input);
+        try (CompressionClient client = new CompressionClient(port, options)) {
+            final CompressionClient.Compressed compressed = client.compress(rna[0], rna[1]);
+            try (ArchiveWriter writer = new ArchiveWriter(output, compressed.options)) {
+                writer.write("", compressed.bits);
             }
+            return compressed.statistics;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
-        return result;
+        return CodecStatistics.EMPTY;
     }
 
     /**
-     * Decompresses part of a bit sequence into an unlabeled tree.
+     * Decompresses a record of a .rnac file with a running CompressionServer (see decompressFile()).
      *
-     * @param compressedTree Bit sequence of the compressed tree.
-     * @return Root node of the decompressed tree.
+     * @param port    Port of the server.
+     * @param options Options used for files without an archive header, and whose Huffman codes are used for archives
+     *                compressed with them.
+     * @param input   Path of the .rnac file.
+     * @param output  Path of the .txt file to be written.
+     * @param record  Position of the record in the archive, or -1 for an archive with a single record.
+     * @return Statistics of the decompressed record.
      */
-    public static Node<String> decompressUnlabeledTree(final List<Boolean> compressedTree) {
-        Node<String> current = new Node<>("");
-        Node<String> root = current;
-        int i = 0;
-        while (current != null && i < compressedTree.size()) {
-            if (compressedTree.get(i)) {
-                Node<String> child = new Node<>("");
-                current.addChild(child);
-                current = child;
+    private static CodecStatistics decompressRemote(final int port, final CodecOptions options, final String input,
+                                                    final String output, final int record) {
+        try (CompressionClient client = new CompressionClient(port, options)) {
+            final RnaCodec.Decompressed rna;
+            if (ArchiveReader.isArchive(input)) {
+                try (ArchiveReader reader = new ArchiveReader(input)) {
+                    if (record < 0 && reader.size() != 1) {
+                        throw new IOException(input + " contains " + reader.size()
+                                + " records. Use -b to decompress all of them or -r to select one.");
+                    }
+                    final CodecOptions archiveOptions = reader.getOptions(options);
+                    if (archiveOptions.isReference() && record > 0) {
+                        throw new IOException("Records coded against a reference are decompressed without -p");
+                    }
+                    rna = client.decompress(archiveOptions, reader.get(Math.max(0, record)).bits);
+                }
             } else {
-                current = current.parent;
-            }
-            while (current != null && current.children.size() == 2) {
-                current = current.parent;
+                rna = client.decompress(options, Utils.readBits(input));
             }
-            i++;
+            Utils.writeFile(output, rna.sequence + '\n' + rna.structure);
+            return rna.statistics;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
-        compressedTree.subList(0, i).clear();
-        return root;
+        return CodecStatistics.EMPTY;
     }
 
     /**
-     * Decompresses a bit sequence into RNA symbols and inserts them into the contracted tree.
+     * Creates an XML file of the contracted tree of a .txt RNA file with a running CompressionServer.
      *
-     * @param compressed Compressed bit sequence.
-     * @param tree       Root node of the contracted tree.
+     * @param port    Port of the server.
+     * @param options Options of the client; the XML does not depend on them.
+     * @param input   Path of the .txt file.
+     * @param output  Path of the .xml file to be written.
+     * @return Statistics of the contracted tree.
      */
-    public static void decompressLabels(final List<Boolean> compressed, final Node<String> tree) {
-        KeyAndIndex kai;
-        int start = 0;
-        for (final Node<String> node : tree.getPreorderNodes()) {
-            numberOfNodes++;
-            if (node.children.size() == 0) {
-                node.key = "e";
-            } else if (node.children.size() == 1) {
-                numberOfUnaryNodes++;
-                kai = decompressNode(compressed, true, start);
-                node.key = kai.key;
-                start = kai.index;
-            } else if (node.children.size() == 2) {
-                numberOfBinaryNodes++;
-                kai = decompressNode(compressed, false, start);
-                node.key = kai.key;
-                start = kai.index;
-            }
+    private static CodecStatistics createXMLRemote(final int port, final CodecOptions options, final String input,
+                                                   final String output) {
+        final String[] rna = Utils.readFile(input);
+        try (CompressionClient client = new CompressionClient(port, options)) {
+            final CompressionClient.Xml xml = client.createXML(rna[0], rna[1]);
+            Utils.writeFile(output, xml.xml);
+            return xml.statistics;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
-        compressed.clear();
+        return CodecStatistics.EMPTY;
     }
 
     /**
-     * Decompresses part of a bit sequence into RNA symbols from a single node.
+     * Prints some very basic statistics to the console.
      *
-     * @param compressed Compressed bit sequence.
-     * @param unary      True, if the sequence contains unary symbols; False, otherwise.
-     * @param start      Start index of the compressed bit sequence.
-     * @return RNA symbols of one node and new start index of the bit sequence (encapsulated in KeyAndIndex object).
+     * @param input      Input path of the (de-)compressed file.
+     * @param output     Output path of the (de-)compressed file.
+     * @param runtime    Processing time in milliseconds.
+     * @param statistics Node counts of the processed records.
+     * @param xml        True, if an XML file was generated; False, if a file was (de-)compressed.
      */
-    private static KeyAndIndex decompressNode(final List<Boolean> compressed, final boolean unary, int start) {
-        final StringBuilder seqBuilder = new StringBuilder();
-        Map<List<Boolean>, Character> huffman;
-        char previous = ';';
-        Character current;
-        int subSize;
-        List<Boolean> prefix;
-        while (true) {
-            if (unary) {
-                huffman = HUFFMAN_MAPS.getUnaryD(previous);
-                subSize = 0;
-            } else {
-                huffman = HUFFMAN_MAPS.getBinaryD(previous);
-                subSize = 1;
-            }
-            do {
-                subSize++;
-                prefix = compressed.subList(start, start + subSize);
-                current = huffman.get(prefix);
-            } while (current == null);
-            start += subSize;
-            if (current == ';') {
-                break;
-            }
-            seqBuilder.append(current);
-            previous = current;
+    public static void printStatistics(final String input, final String output, final long runtime,
+                                       final CodecStatistics statistics, final boolean xml) {
+        long inputSize = Utils.getSize(input);
+        System.out.println("\nInput file size:  " + Utils.humanReadableByteCount(inputSize));
+        long outputSize = new File(output).length();
+        System.out.println("Output file size: " + Utils.humanReadableByteCount(outputSize));
+        double ratio = ((double) inputSize) / ((double) outputSize);
+        if (ratio > 1) {
+            ratio = 1 / ratio;
+        }
+        DecimalFormat percentFormat = new DecimalFormat("0.00%");
+        if (!xml) {
+            System.out.println("Compression rate: " + percentFormat.format(ratio));
         }
-        return new KeyAndIndex(seqBuilder.toString(), start);
+        System.out.println("Processing time:  " + (double) runtime/1000 + "s\n");
+
+        System.out.println("Total number of nodes:  " + statistics.nodes);
+        System.out.println("Number of unary nodes:  " + statistics.unaryNodes);
+        System.out.println("Number of binary nodes: " + statistics.binaryNodes);
+    }
+
+    /**
+     * Compresses an RNA sequence with the corresponding secondary structure. Shorthand for RnaCodec.compress() with
+     * the default options.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @return Bit sequence.
+     */
+    public static BitWriter compress(final String sequence, final String structure) {
+        return CODEC.compress(sequence, structure).bits;
+    }
+
+    /**
+     * Decompresses a bit sequence into an RNA sequence including its secondary structure. Shorthand for
+     * RnaCodec.decompress() with the default options.
+     *
+     * @param compressed Compressed bit sequence.
+     * @return Decompressed RNA. 0: Sequence. 1: Structure.
+     */
+    public static String[] decompress(final BitReader compressed) {
+        return CODEC.decompress(compressed).toArray();
+    }
+
+    /**
+     * Creates an XML string representing the contracted tree from an RNA sequence and its secondary structure.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @return XML string.
+     */
+    public static String createXML(final String sequence, final String structure) {
+        return Utils.generateXML(buildContractedTree(sequence.toLowerCase(), structure));
     }
 
     /**
@@ -350,29 +655,8 @@ public class RNAContract {
      * @param structure RNA secondary structure.
      * @return Bit sequence, compressed with alternative method.
      */
-    public static List<Boolean> compressAlternative(final String sequence, final String structure) {
-        final Node<String> tree = buildContractedTree(sequence.toLowerCase(), structure);
-        List<Boolean> bits = new ArrayList<>();
-        Map<String, List<Boolean>> huffmanUnary = HUFFMAN_MAPS.getUnaryC();
-        Map<String, List<Boolean>> huffmanBinary = HUFFMAN_MAPS.getBinaryC();
-        for (final Node<String> node : tree.getPreorderNodes()) {
-            final String label = ';' + node.key + ';';
-            if (node.children.size() == 1) {
-                bits.add(false);
-                for (int i = 0; i < label.length() - 1; i++) {
-                    bits.addAll(huffmanUnary.get(label.substring(i, i + 2)));
-                }
-                bits.add(!node.children.get(0).key.equals("e"));
-            } else if (node.children.size() == 2) {
-                bits.add(true);
-                for (int i = 0; i < label.length() - 1; i++) {
-                    bits.addAll(huffmanBinary.get(label.substring(i, i + 2)));
-                }
-                bits.add(!node.children.get(0).key.equals("e"));
-                bits.add(!node.children.get(1).key.equals("e"));
-            }
-        }
-        return bits;
+    public static BitWriter compressAlternative(final String sequence, final String structure) {
+        return ALTERNATIVE_CODEC.compress(sequence, structure).bits;
     }
 
     /**
@@ -381,66 +665,8 @@ public class RNAContract {
      * @param compressed Bit sequence, compressed with alternative method.
      * @return Decompressed RNA. 0: Sequence. 1: Structure.
      */
-    public static String[] decompressAlternative(final List<Boolean> compressed) {
-        final Node<String> root = new Node<>("");
-        int index = 0;
-        Deque<Node<String>> nodesToDecode = new LinkedList<>();
-        Node<String> current = root;
-        while (index < compressed.size()) {
-            numberOfNodes++;
-            boolean unary = !compressed.get(index++);
-            KeyAndIndex kai = decompressNode(compressed, unary, index);
-            current.key = kai.key;
-            index = kai.index;
-            if (unary) {
-                numberOfUnaryNodes++;
-                Node<String> child = new Node<>("");
-                current.addChild(child);
-                if (compressed.get(index++)) {
-                    current = child;
-                } else {
-                    numberOfNodes++;
-                    child.key = "e";
-                    if (nodesToDecode.isEmpty()) {
-                        break;
-                    } else {
-                        current = nodesToDecode.pop();
-                    }
-                }
-            } else {
-                numberOfBinaryNodes++;
-                Node<String> left = new Node<>("");
-                Node<String> right = new Node<>("");
-                current.addChild(left);
-                current.addChild(right);
-                boolean leftEmpty = true;
-                if (compressed.get(index++)) {
-                    current = left;
-                    leftEmpty = false;
-                } else {
-                    numberOfNodes++;
-                    left.key = "e";
-                }
-                if (compressed.get(index++)) {
-                    if (leftEmpty) {
-                        current = right;
-                    } else {
-                        nodesToDecode.push(right);
-                    }
-                } else {
-                    numberOfNodes++;
-                    right.key = "e";
-                    if (leftEmpty) {
-                        if (!nodesToDecode.isEmpty()) {
-                            current = nodesToDecode.pop();
-                        } else {
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-        return treeToRNA(root);
+    public static String[] decompressAlternative(final BitReader compressed) {
+        return ALTERNATIVE_CODEC.decompress(compressed).toArray();
     }
 
     /**
@@ -555,38 +781,47 @@ public class RNAContract {
     }
 
     /**
-     * Helper method that recursively performs contractions for the contracted tree.
+     * Helper method that performs contractions for the contracted tree. Traverses the strict tree with an explicit
+     * stack, so the depth of the tree is not limited by the thread stack size.
      *
      * @param contractedRoot Root of the contracted tree.
      * @param root           Root of the strict unary-binary tree.
      */
-    private static void copyToContractedTree(final Node<String> contractedRoot, Node<Character> root) {
-        Node<String> contractedChild;
-        numberOfNodes++;
-        if (root.children.size() == 0) {
-            contractedRoot.addChild(new Node<>(root.key.toString()));
-        } else if (root.children.size() == 1) {
-            numberOfUnaryNodes++;
-            StringBuilder superNodeKeys = new StringBuilder();
-            while (root.children.size() == 1) {
-                superNodeKeys.append(root.key.toString());
-                root = root.children.get(0);
+    private static void copyToContractedTree(final Node<String> contractedRoot, final Node<Character> root) {
+        final Deque<Node<Character>> strictStack = new ArrayDeque<>();
+        final Deque<Node<String>> contractedStack = new ArrayDeque<>();
+        strictStack.push(root);
+        contractedStack.push(contractedRoot);
+        while (!strictStack.isEmpty()) {
+            Node<Character> current = strictStack.pop();
+            final Node<String> contractedParent = contractedStack.pop();
+            final Node<String> contractedChild;
+            if (current.children.size() == 0) {
+                contractedParent.addChild(new Node<>(current.key.toString()));
+            } else if (current.children.size() == 1) {
+                StringBuilder superNodeKeys = new StringBuilder();
+                while (current.children.size() == 1) {
+                    superNodeKeys.append(current.key.toString());
+                    current = current.children.get(0);
+                }
+                contractedChild = new Node<>(superNodeKeys.toString());
+                contractedParent.addChild(contractedChild);
+                strictStack.push(current);
+                contractedStack.push(contractedChild);
+            } else {
+                StringBuilder contractedNodeKeys = new StringBuilder();
+                Node<Character> rightSide = current.children.get(1);
+                do {
+                    contractedNodeKeys.append(current.key);
+                    current = current.children.get(0);
+                } while (current.children.size() > 1 && current.children.get(1).key == 'e');
+                contractedChild = new Node<>(contractedNodeKeys.toString());
+                contractedParent.addChild(contractedChild);
+                strictStack.push(rightSide);
+                contractedStack.push(contractedChild);
+                strictStack.push(current);
+                contractedStack.push(contractedChild);
             }
-            contractedChild = new Node<>(superNodeKeys.toString());
-            contractedRoot.addChild(contractedChild);
-            copyToContractedTree(contractedChild, root);
-        } else {
-            numberOfBinaryNodes++;
-            StringBuilder contractedNodeKeys = new StringBuilder();
-            Node<Character> rightSide = root.children.get(1);
-            do {
-                contractedNodeKeys.append(root.key);
-                root = root.children.get(0);
-            } while (root.children.size() > 1 && root.children.get(1).key == 'e');
-            contractedChild = new Node<>(contractedNodeKeys.toString());
-            contractedRoot.addChild(contractedChild);
-            copyToContractedTree(contractedChild, root);
-            copyToContractedTree(contractedChild, rightSide);
         }
     }
 
@@ -599,13 +834,7 @@ public class RNAContract {
     public static String[] treeToRNA(final Node<String> root) {
         StringBuilder seqBuilder = new StringBuilder();
         StringBuilder strucBuilder = new StringBuilder();
-        VARIABLE_MAP.put('p', new char[]{'A', 'U'});
-        VARIABLE_MAP.put('q', new char[]{'U', 'A'});
-        VARIABLE_MAP.put('r', new char[]{'C', 'G'});
-        VARIABLE_MAP.put('s', new char[]{'G', 'C'});
-        VARIABLE_MAP.put('x', new char[]{'U', 'G'});
-        VARIABLE_MAP.put('y', new char[]{'G', 'U'});
-        recursiveTreeToRNA(root, seqBuilder, strucBuilder);
+        appendTreeToRNA(root, seqBuilder, strucBuilder);
 
         final String sequence = seqBuilder.toString();
         final String structure = strucBuilder.toString();
@@ -613,48 +842,47 @@ public class RNAContract {
     }
 
     /**
-     * Helper method that recursively traverses the tree to create the corresponding RNA sequence and secondary
-     * structure.
+     * Appends the RNA sequence and secondary structure of a tree, walking it in preorder with an explicit stack, so the
+     * depth of the tree is not limited by the thread stack size.
      *
      * @param root         Root of the contracted tree.
      * @param seqBuilder   StringBuilder that builds the RNA sequence.
      * @param strucBuilder StringBuilder that builds the RNA secondary structure.
      */
-    private static void recursiveTreeToRNA(final Node<String> root, final StringBuilder seqBuilder,
-                                           final StringBuilder strucBuilder) {
-        if (root.children.size() == 1) {
-            seqBuilder.append(root.key.toUpperCase());
-            for (int i = 0; i < root.key.length(); i++) {
-                strucBuilder.append('.');
-            }
-            recursiveTreeToRNA(root.children.get(0), seqBuilder, strucBuilder);
-        } else if (root.children.size() == 2) {
-            Deque<Character> reverse = new LinkedList<>();
-            for (int i = 0; i < root.key.length(); i++) {
-                char[] current = VARIABLE_MAP.get(root.key.charAt(i));
-                seqBuilder.append(current[0]);
-                strucBuilder.append('(');
-                reverse.push(current[1]);
+    private static void appendTreeToRNA(final Node<String> root, final StringBuilder seqBuilder,
+                                        final StringBuilder strucBuilder) {
+        final Deque<Node<String>> stack = new ArrayDeque<>();
+        /* closing.get(i): the i-th stack element (from the bottom) closes the pairs of its binary node. */
+        final BitSet closing = new BitSet();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final Node<String> node = stack.pop();
+            if (closing.get(stack.size())) {
+                for (int i = node.key.length() - 1; i >= 0; i--) {
+                    seqBuilder.append(RnaCodec.PAIR_CLOSING[HuffmanMaps.binaryIndex(node.key.charAt(i))]);
+                    strucBuilder.append(')');
+                }
+                continue;
             }
-            recursiveTreeToRNA(root.children.get(0), seqBuilder, strucBuilder);
-            while (!reverse.isEmpty()) {
-                seqBuilder.append(reverse.pop());
-                strucBuilder.append(')');
+            if (node.children.size() == 1) {
+                seqBuilder.append(node.key.toUpperCase());
+                for (int i = 0; i < node.key.length(); i++) {
+                    strucBuilder.append('.');
+                }
+                closing.clear(stack.size());
+                stack.push(node.children.get(0));
+            } else if (node.children.size() == 2) {
+                for (int i = 0; i < node.key.length(); i++) {
+                    seqBuilder.append(RnaCodec.PAIR_OPENING[HuffmanMaps.binaryIndex(node.key.charAt(i))]);
+                    strucBuilder.append('(');
+                }
+                closing.clear(stack.size());
+                stack.push(node.children.get(1));
+                closing.set(stack.size());
+                stack.push(node);
+                closing.clear(stack.size());
+                stack.push(node.children.get(0));
             }
-            recursiveTreeToRNA(root.children.get(1), seqBuilder, strucBuilder);
         }
     }
 }
-
-/**
- * decompressNode() needs to return two values: The decompressed key and the new start index of the compressed bit list.
- * Therefore it returns a KeyAndIndex object which contains both values.
- */
-class KeyAndIndex {
-    public final String key;
-    public final int index;
-    public KeyAndIndex(final String key, final int index) {
-        this.key = key;
-        this.index = index;
-    }
-}
@@ -0,0 +1,30 @@
+package de.techfak.jfriemel.rnacontract;
+
+/**
+ * A named RNA sequence with its secondary structure, i.e. one record of a multi-record file.
+ */
+public class RNARecord {
+
+    public final String name;
+    public final String sequence;
+    public final String structure;
+    /** Lines of the sequence and the structure in their file, starting at 1, for error messages. */
+    public final long sequenceLine;
+    public final long structureLine;
+
+    /**
+     * Record of a single-record file, whose sequence is the first and whose structure is the second line.
+     */
+    public RNARecord(final String name, final String sequence, final String structure) {
+        this(name, sequence, structure, 1, 2);
+    }
+
+    public RNARecord(final String name, final String sequence, final String structure, final long sequenceLine,
+                     final long structureLine) {
+        this.name = name;
+        this.sequence = sequence;
+        this.structure = structure;
+        this.sequenceLine = sequenceLine;
+        this.structureLine = structureLine;
+    }
+}
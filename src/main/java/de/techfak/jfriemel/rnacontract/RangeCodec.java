@@ -0,0 +1,426 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive range coder backend of RnaCodec, an alternative to the Huffman codes of HuffmanMaps. The same information
+ * as in the Huffman formats is written in the same order, but every bit and symbol is coded with an adaptive
+ * probability, so frequent symbols cost a fraction of a bit:
+ * <ul>
+ * <li>Label symbols are predicted from the two previous symbols of the label (order 2, the separator ';' standing in
+ * before the first symbol), separately for unary and binary labels.</li>
+ * <li>Tree shape bits of the standard method are predicted from the three previous shape bits.</li>
+ * <li>Type bits of the alternative method are predicted from the type of the previous node, the child flags from
+ * the node type and, for the second child, the flag of the first child.</li>
+ * </ul>
+ * All probabilities start at 1/2 for every record, so records remain independent. The coder is the carry-less binary
+ * range coder of LZMA with 11-bit probabilities. A tree without inner nodes is written as zero bytes.
+ */
+class RangeCodec {
+
+    private static final int PROBABILITY_BITS = 11;
+    private static final int PROBABILITY_ONE = 1 << PROBABILITY_BITS;
+    private static final int ADAPTATION_SHIFT = 5;
+    private static final int TOP = 1 << 24;
+
+    /* Symbols are coded as 3 bits in a binary tree of 8 probabilities per context. */
+    private static final int SYMBOL_BITS = 3;
+
+    private static final int UNARY_SYMBOLS = HuffmanMaps.UNARY_SYMBOLS.length;
+    private static final int BINARY_SYMBOLS = HuffmanMaps.BINARY_SYMBOLS.length;
+
+    private static final int SHAPE_CONTEXT_BITS = 3;
+
+    private RangeCodec() {
+
+    }
+
+    /**
+     * Compresses a tree like RnaCodec.compressUnlabeledTree() followed by RnaCodec.compressLabels(), or like the
+     * alternative method.
+     *
+     * @param tree        Compact contracted tree.
+     * @param alternative True for the layout of the alternative method; False for the standard one.
+     * @param result      Bit sequence the compressed tree is appended to, in whole bytes.
+     */
+    static void compress(final ContractedTree tree, final boolean alternative, final BitWriter result) {
+        if (tree.size() == 0 || tree.getChildCount(0) == 0) {
+            return;
+        }
+        final Model model = new Model();
+        final Encoder encoder = new Encoder(result);
+        if (alternative) {
+            compressAlternative(tree, model, encoder);
+        } else {
+            compressShape(tree, model, encoder);
+            for (int node = 0; node < tree.size(); node++) {
+                final int childCount = tree.getChildCount(node);
+                if (childCount > 0) {
+                    model.encodeLabel(encoder, tree, node, childCount == 1);
+                }
+            }
+        }
+        encoder.flush();
+    }
+
+    /**
+     * Counterpart of compress().
+     *
+     * @param compressed  Bit sequence of a single compressed tree.
+     * @param alternative True for the layout of the alternative method; False for the standard one.
+     * @return Labeled compact contracted tree.
+     * @throws IllegalStateException If the bit sequence ends before the tree.
+     */
+    static ContractedTree decompress(final BitReader compressed, final boolean alternative) {
+        final ContractedTree tree = new ContractedTree();
+        if (!compressed.hasRemaining()) {
+            if (!alternative) {
+                tree.addNode(ContractedTree.NONE);
+            }
+            return tree;
+        }
+        final Model model = new Model();
+        final Decoder decoder = new Decoder(compressed);
+        if (alternative) {
+            decompressAlternative(tree, model, decoder);
+        } else {
+            decompressShape(tree, model, decoder);
+            for (int node = 0; node < tree.size(); node++) {
+                final int childCount = tree.getChildCount(node);
+                if (childCount > 0) {
+                    model.decodeLabel(decoder, tree, node, childCount == 1);
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Writes the bits of RnaCodec.compressUnlabeledTree(), in the same order.
+     */
+    private static void compressShape(final ContractedTree tree, final Model model, final Encoder encoder) {
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            if (stackSize + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            final int entry = stack[--stackSize];
+            if (entry < 0) {
+                model.encodeShape(encoder, false);
+                continue;
+            }
+            if (entry != 0) {
+                model.encodeShape(encoder, true);
+            }
+            final int childCount = tree.getChildCount(entry);
+            if (childCount != 2) {
+                stack[stackSize++] = ~entry;
+            }
+            if (childCount == 2) {
+                stack[stackSize++] = tree.getSecondChild(entry);
+            }
+            if (childCount > 0) {
+                stack[stackSize++] = tree.getFirstChild(entry);
+            }
+        }
+    }
+
+    /**
+     * Reads the bits written by compressShape() like RnaCodec.decompressUnlabeledTree().
+     */
+    private static void decompressShape(final ContractedTree tree, final Model model, final Decoder decoder) {
+        int current = tree.addNode(ContractedTree.NONE);
+        while (current != ContractedTree.NONE) {
+            if (model.decodeShape(decoder)) {
+                current = tree.addNode(current);
+            } else {
+                current = tree.getParent(current);
+            }
+            while (current != ContractedTree.NONE && tree.getChildCount(current) == 2) {
+                current = tree.getParent(current);
+            }
+        }
+    }
+
+    private static void compressAlternative(final ContractedTree tree, final Model model, final Encoder encoder) {
+        for (int node = 0; node < tree.size(); node++) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 0) {
+                continue;
+            }
+            model.encodeType(encoder, childCount == 2);
+            model.encodeLabel(encoder, tree, node, childCount == 1);
+            final boolean first = tree.getChildCount(tree.getFirstChild(node)) != 0;
+            if (childCount == 1) {
+                model.encodeFlag(encoder, Model.UNARY_CHILD, first);
+            } else {
+                model.encodeFlag(encoder, Model.FIRST_CHILD, first);
+                model.encodeFlag(encoder, first ? Model.SECOND_CHILD_AFTER_INNER : Model.SECOND_CHILD_AFTER_LEAF,
+                        tree.getChildCount(tree.getSecondChild(node)) != 0);
+            }
+        }
+    }
+
+    /**
+     * Counterpart of compressAlternative(), structured like RnaCodec.decompressAlternative().
+     */
+    private static void decompressAlternative(final ContractedTree tree, final Model model, final Decoder decoder) {
+        /* Entries are parent << 1 of a pending non-leaf second child, or parent << 1 | 1 of a pending leaf. */
+        int[] pending = new int[16];
+        int pendingSize = 0;
+        int parent = ContractedTree.NONE;
+        while (true) {
+            final int node = tree.addNode(parent);
+            final boolean unary = !model.decodeType(decoder);
+            model.decodeLabel(decoder, tree, node, unary);
+            if (unary) {
+                if (model.decodeFlag(decoder, Model.UNARY_CHILD)) {
+                    parent = node;
+                    continue;
+                }
+                tree.addNode(node);
+            } else {
+                final boolean left = model.decodeFlag(decoder, Model.FIRST_CHILD);
+                final boolean right = model.decodeFlag(decoder,
+                        left ? Model.SECOND_CHILD_AFTER_INNER : Model.SECOND_CHILD_AFTER_LEAF);
+                if (left) {
+                    if (pendingSize == pending.length) {
+                        pending = Arrays.copyOf(pending, pendingSize << 1);
+                    }
+                    pending[pendingSize++] = node << 1 | (right ? 0 : 1);
+                    parent = node;
+                    continue;
+                }
+                tree.addNode(node);
+                if (right) {
+                    parent = node;
+                    continue;
+                }
+                tree.addNode(node);
+            }
+            parent = ContractedTree.NONE;
+            while (pendingSize > 0) {
+                final int entry = pending[--pendingSize];
+                if ((entry & 1) == 0) {
+                    parent = entry >>> 1;
+                    break;
+                }
+                tree.addNode(entry >>> 1);
+            }
+            if (parent == ContractedTree.NONE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adaptive probabilities of all contexts of one record.
+     */
+    private static final class Model {
+
+        static final int UNARY_CHILD = 0;
+        static final int FIRST_CHILD = 1;
+        static final int SECOND_CHILD_AFTER_LEAF = 2;
+        static final int SECOND_CHILD_AFTER_INNER = 3;
+
+        private final int[] unary = probabilities(UNARY_SYMBOLS * UNARY_SYMBOLS << SYMBOL_BITS);
+        private final int[] binary = probabilities(BINARY_SYMBOLS * BINARY_SYMBOLS << SYMBOL_BITS);
+        private final int[] shape = probabilities(1 << SHAPE_CONTEXT_BITS);
+        private final int[] type = probabilities(2);
+        private final int[] flags = probabilities(4);
+        private int shapeHistory;
+        private int previousType;
+
+        private static int[] probabilities(final int count) {
+            final int[] probabilities = new int[count];
+            Arrays.fill(probabilities, PROBABILITY_ONE >>> 1);
+            return probabilities;
+        }
+
+        void encodeLabel(final Encoder encoder, final ContractedTree tree, final int node, final boolean unary) {
+            final int[] probabilities = unary ? this.unary : binary;
+            final int symbols = unary ? UNARY_SYMBOLS : BINARY_SYMBOLS;
+            final int separator = symbols - 1;
+            int context = separator * symbols + separator;
+            final int length = tree.getLabelLength(node);
+            for (int i = 0; i <= length; i++) {
+                final int symbol;
+                if (i == length) {
+                    symbol = separator;
+                } else {
+                    final char label = tree.getLabelSymbol(node, i);
+                    symbol = unary ? HuffmanMaps.unaryIndex(label) : HuffmanMaps.binaryIndex(label);
+                    if (symbol < 0 || symbol == separator) {
+                        throw new IllegalArgumentException("Unsupported symbol '" + label + "'");
+                    }
+                }
+                final int offset = context << SYMBOL_BITS;
+                int index = 1;
+                for (int bit = SYMBOL_BITS - 1; bit >= 0; bit--) {
+                    final int value = (symbol >>> bit) & 1;
+                    encoder.encode(probabilities, offset + index, value);
+                    index = (index << 1) | value;
+                }
+                context = (context % symbols) * symbols + symbol;
+            }
+        }
+
+        void decodeLabel(final Decoder decoder, final ContractedTree tree, final int node, final boolean unary) {
+            final int[] probabilities = unary ? this.unary : binary;
+            final char[] alphabet = unary ? HuffmanMaps.UNARY_SYMBOLS : HuffmanMaps.BINARY_SYMBOLS;
+            final int symbols = alphabet.length;
+            final int separator = symbols - 1;
+            int context = separator * symbols + separator;
+            while (true) {
+                final int offset = context << SYMBOL_BITS;
+                int index = 1;
+                for (int bit = 0; bit < SYMBOL_BITS; bit++) {
+                    index = (index << 1) | decoder.decode(probabilities, offset + index);
+                }
+                final int symbol = index - (1 << SYMBOL_BITS);
+                if (symbol == separator) {
+                    return;
+                }
+                if (symbol > separator) {
+                    throw new IllegalStateException("Invalid range-coded symbol");
+                }
+                tree.appendLabel(node, alphabet[symbol]);
+                context = (context % symbols) * symbols + symbol;
+            }
+        }
+
+        void encodeShape(final Encoder encoder, final boolean bit) {
+            encoder.encode(shape, shapeHistory, bit ? 1 : 0);
+            shapeHistory = ((shapeHistory << 1) | (bit ? 1 : 0)) & ((1 << SHAPE_CONTEXT_BITS) - 1);
+        }
+
+        boolean decodeShape(final Decoder decoder) {
+            final int bit = decoder.decode(shape, shapeHistory);
+            shapeHistory = ((shapeHistory << 1) | bit) & ((1 << SHAPE_CONTEXT_BITS) - 1);
+            return bit == 1;
+        }
+
+        void encodeType(final Encoder encoder, final boolean binary) {
+            encoder.encode(type, previousType, binary ? 1 : 0);
+            previousType = binary ? 1 : 0;
+        }
+
+        boolean decodeType(final Decoder decoder) {
+            previousType = decoder.decode(type, previousType);
+            return previousType == 1;
+        }
+
+        void encodeFlag(final Encoder encoder, final int context, final boolean inner) {
+            encoder.encode(flags, context, inner ? 1 : 0);
+        }
+
+        boolean decodeFlag(final Decoder decoder, final int context) {
+            return decoder.decode(flags, context) == 1;
+        }
+    }
+
+    /**
+     * Range encoder writing whole bytes to a BitWriter.
+     */
+    private static final class Encoder {
+
+        private final BitWriter output;
+        private long low;
+        private int range = -1;
+        private int cache;
+        private long cacheSize = 1;
+        /* The first byte is always 0 and is not written; the decoder starts without it. */
+        private boolean first = true;
+
+        Encoder(final BitWriter output) {
+            this.output = output;
+        }
+
+        void encode(final int[] probabilities, final int index, final int bit) {
+            final int probability = probabilities[index];
+            final int bound = (range >>> PROBABILITY_BITS) * probability;
+            if (bit == 0) {
+                range = bound;
+                probabilities[index] = probability + ((PROBABILITY_ONE - probability) >>> ADAPTATION_SHIFT);
+            } else {
+                low += bound & 0xFFFFFFFFL;
+                range -= bound;
+                probabilities[index] = probability - (probability >>> ADAPTATION_SHIFT);
+            }
+            while (Integer.compareUnsigned(range, TOP) < 0) {
+                range <<= 8;
+                shiftLow();
+            }
+        }
+
+        private void shiftLow() {
+            if (low < 0xFF000000L || low > 0xFFFFFFFFL) {
+                final int carry = (int) (low >>> 32);
+                int value = cache;
+                do {
+                    if (!first) {
+                        output.writeBits((value + carry) & 0xFF, 8);
+                    }
+                    first = false;
+                    value = 0xFF;
+                } while (--cacheSize != 0);
+                cache = (int) (low >>> 24) & 0xFF;
+            }
+            cacheSize++;
+            low = (low & 0x00FFFFFFL) << 8;
+        }
+
+        void flush() {
+            for (int i = 0; i < 5; i++) {
+                shiftLow();
+            }
+        }
+    }
+
+    /**
+     * Range decoder reading whole bytes from a BitReader.
+     */
+    private static final class Decoder {
+
+        private final BitReader input;
+        private int range = -1;
+        private int code;
+
+        Decoder(final BitReader input) {
+            this.input = input;
+            for (int i = 0; i < 4; i++) {
+                code = (code << 8) | nextByte();
+            }
+        }
+
+        int decode(final int[] probabilities, final int index) {
+            final int probability = probabilities[index];
+            final int bound = (range >>> PROBABILITY_BITS) * probability;
+            final int bit;
+            if (Integer.compareUnsigned(code, bound) < 0) {
+                range = bound;
+                probabilities[index] = probability + ((PROBABILITY_ONE - probability) >>> ADAPTATION_SHIFT);
+                bit = 0;
+            } else {
+                code -= bound;
+                range -= bound;
+                probabilities[index] = probability - (probability >>> ADAPTATION_SHIFT);
+                bit = 1;
+            }
+            while (Integer.compareUnsigned(range, TOP) < 0) {
+                range <<= 8;
+                code = (code << 8) | nextByte();
+            }
+            return bit;
+        }
+
+        private int nextByte() {
+            if (input.limit() - input.position() < 8) {
+                throw new IllegalStateException("Range-coded record ends at bit " + input.position());
+            }
+            return input.readBits(8);
+        }
+    }
+}
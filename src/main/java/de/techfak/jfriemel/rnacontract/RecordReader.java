@@ -0,0 +1,99 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads RNA records one by one, either from a multi-record file or from all .txt files of a directory.
+ * <p>
+ * A multi-record file contains a sequence line followed by a structure line for every record. A record may be
+ * preceded by a FASTA-like header line starting with '&gt;', which contains the name of the record. Empty lines and
+ * lines starting with '#' are ignored, as is anything after the first whitespace of a structure line (e.g. the free
+ * energy printed by RNAfold).
+ * In a directory, every .txt file is a single record named by its path (see Utils.readFile()).
+ */
+public class RecordReader implements Closeable {
+
+    private final BufferedReader reader;
+    private final Iterator<String> files;
+    private int recordIndex = 0;
+    private long lineNumber = 0;
+
+    /**
+     * Opens a multi-record file or a directory of single-record files.
+     *
+     * @param path Path of the file or directory.
+     * @throws IOException If the file cannot be opened.
+     */
+    public RecordReader(final String path) throws IOException {
+        if (new File(path).isDirectory()) {
+            final List<String> paths = Utils.getDirectoryList(path, ".txt");
+            Collections.sort(paths);
+            files = paths.iterator();
+            reader = null;
+        } else {
+            files = null;
+            reader = new BufferedReader(new FileReader(path));
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return Next record; null, if there are no more records.
+     * @throws IOException If the input cannot be read or a record is incomplete.
+     */
+    public RNARecord next() throws IOException {
+        if (files != null) {
+            if (!files.hasNext()) {
+                return null;
+            }
+            final String file = files.next();
+            final String[] rna = Utils.readFile(file);
+            recordIndex++;
+            return new RNARecord(file, rna[0] == null ? "" : rna[0], rna[1] == null ? "" : rna[1]);
+        }
+        String name = "";
+        String line = nextLine();
+        if (line == null) {
+            return null;
+        }
+        if (line.startsWith(">")) {
+            name = line.substring(1).trim();
+            line = nextLine();
+        }
+        final long sequenceLine = lineNumber;
+        final String structure = nextLine();
+        recordIndex++;
+        if (line == null || structure == null || line.startsWith(">") || structure.startsWith(">")) {
+            throw new IOException("Incomplete record " + recordIndex + (name.isEmpty() ? "" : " (" + name + ")"));
+        }
+        return new RNARecord(name, line, structure.split("\\s", 2)[0], sequenceLine, lineNumber);
+    }
+
+    private String nextLine() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            line = line.trim();
+        } while (line.isEmpty() || line.startsWith("#"));
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+}
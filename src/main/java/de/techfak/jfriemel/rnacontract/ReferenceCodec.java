@@ -0,0 +1,323 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Codes RNA records against a reference record, e.g. the members of one RNA family against their consensus or their
+ * first member. The contracted tree of a record is walked in preorder together with the node at the same position of
+ * the reference tree, and written as an edit script against it:
+ * <ul>
+ * <li>If there is a reference node, a copy bit: 1 if the subtree equals the subtree of the reference node, which is
+ * then copied as a whole.</li>
+ * <li>Otherwise the node itself: 0 for a leaf, 10 for a unary and 11 for a binary node. The label of a non-leaf node
+ * of the same type as its reference node is written as the difference to the reference label (see writeLabelDiff());
+ * every other label is written with the Huffman codes. The first child is compared with the first child of the
+ * reference node, the second child with the second child of a binary reference node; children without a counterpart
+ * are written without a copy bit.</li>
+ * </ul>
+ * Every record starts with a bit telling whether it is written as an edit script (1) or, because that would be longer,
+ * with the plain codec (0). Records only depend on the reference, so they can still be decoded independently of each
+ * other. With the exception stream (see CodecOptions.isExceptions()) it comes first and the reference and the records
+ * are coded with their placeholders. An instance only reads its reference after construction and can be shared
+ * between threads.
+ */
+public class ReferenceCodec {
+
+    private final RnaCodec codec;
+    private final ContractedTree reference;
+    private final Map<DagCodec.Subtree, Integer> classIds = new HashMap<>();
+    private final int[] referenceClasses;
+
+    /**
+     * @param codec     Codec of records that are not written as an edit script; its Huffman codes are used for
+     *                  changed labels.
+     * @param sequence  RNA sequence of the reference.
+     * @param structure RNA secondary structure of the reference.
+     */
+    public ReferenceCodec(final RnaCodec codec, final CharSequence sequence, final CharSequence structure) {
+        this.codec = codec;
+        this.reference = RnaCodec.buildCompactTree(codec.getOptions().isExceptions()
+                ? ExceptionStream.split(sequence, structure).sequence : sequence, structure);
+        this.referenceClasses = DagCodec.classify(reference, classIds, true);
+    }
+
+    /**
+     * Compresses an RNA record as an edit script against the reference, or with the plain codec if that is shorter.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @return Bit sequence and statistics.
+     */
+    public RnaCodec.Compressed compress(final CharSequence sequence, final CharSequence structure) {
+        final BitWriter exceptions = new BitWriter(64);
+        CharSequence canonical = sequence;
+        if (codec.getOptions().isExceptions()) {
+            final ExceptionStream.Split split = ExceptionStream.split(sequence, structure);
+            split.write(exceptions);
+            canonical = split.sequence;
+        }
+        final ContractedTree tree = RnaCodec.buildCompactTree(canonical, structure);
+        final BitWriter script = new BitWriter(2L * tree.size());
+        script.append(exceptions);
+        script.writeBit(true);
+        writeScript(tree, script);
+        final RnaCodec.Compressed plain = codec.compressRecord(canonical, structure,
+                new BitWriter(4L * canonical.length()));
+        if (plain.bits.size() < script.size() - exceptions.size() - 1) {
+            final BitWriter result = new BitWriter(exceptions.size() + plain.bits.size() + 1);
+            result.append(exceptions);
+            result.writeBit(false);
+            result.append(plain.bits);
+            return new RnaCodec.Compressed(result, plain.statistics);
+        }
+        return new RnaCodec.Compressed(script, CodecStatistics.of(tree));
+    }
+
+    /**
+     * Writes a tree as an edit script against the reference tree.
+     *
+     * @param tree   Compact contracted tree.
+     * @param result Bit sequence the edit script is appended to.
+     */
+    private void writeScript(final ContractedTree tree, final BitWriter result) {
+        final int[] classes = DagCodec.classify(tree, classIds, false);
+        /* Pairs of a node of the tree and its reference node, or NONE if it has none. */
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            final int referenceNode = stack[--stackSize];
+            final int node = stack[--stackSize];
+            if (referenceNode != ContractedTree.NONE) {
+                final boolean copy = classes[node] >= 0 && classes[node] == referenceClasses[referenceNode];
+                result.writeBit(copy);
+                if (copy) {
+                    continue;
+                }
+            }
+            final int childCount = tree.getChildCount(node);
+            result.writeBit(childCount != 0);
+            if (childCount == 0) {
+                continue;
+            }
+            result.writeBit(childCount == 2);
+            final int referenceCount = referenceChildCount(referenceNode);
+            if (referenceCount == childCount) {
+                writeLabelDiff(tree, node, referenceNode, childCount == 1, result);
+            } else {
+                codec.compressNode(tree, node, childCount == 1, result);
+            }
+            if (stackSize + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            if (childCount == 2) {
+                stack[stackSize++] = tree.getSecondChild(node);
+                stack[stackSize++] = referenceCount == 2 ? reference.getSecondChild(referenceNode)
+                        : ContractedTree.NONE;
+            }
+            stack[stackSize++] = tree.getFirstChild(node);
+            stack[stackSize++] = referenceCount > 0 ? reference.getFirstChild(referenceNode) : ContractedTree.NONE;
+        }
+    }
+
+    /**
+     * Counterpart of compress().
+     *
+     * @param compressed Bit sequence of a single record compressed with compress().
+     * @return Decompressed RNA and statistics.
+     * @throws IllegalStateException If the edit script ends early.
+     */
+    public RnaCodec.Decompressed decompress(final BitReader compressed) {
+        if (codec.getOptions().isExceptions()) {
+            final long[] exceptions = ExceptionStream.read(compressed);
+            final RnaCodec.Decompressed record = decompressRecord(compressed);
+            return new RnaCodec.Decompressed(new String[]{ExceptionStream.restore(record.sequence, exceptions),
+                    record.structure}, record.statistics);
+        }
+        return decompressRecord(compressed);
+    }
+
+    /**
+     * Counterpart of compress() after the exception stream.
+     *
+     * @param compressed Compressed bit sequence, positioned at the bit choosing the edit script or the plain codec.
+     * @return Decompressed canonical RNA and statistics.
+     * @throws IllegalStateException If the edit script ends early.
+     */
+    private RnaCodec.Decompressed decompressRecord(final BitReader compressed) {
+        if (!compressed.readBit()) {
+            return codec.decompressRecord(compressed);
+        }
+        final ContractedTree tree = new ContractedTree();
+        /* Pairs of the parent of the next node, or NONE for the root, and the reference node of the next node. */
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = ContractedTree.NONE;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            final int referenceNode = stack[--stackSize];
+            final int parent = stack[--stackSize];
+            if (!compressed.hasRemaining()) {
+                throw new IllegalStateException("Incomplete edit script at bit " + compressed.position());
+            }
+            if (referenceNode != ContractedTree.NONE && compressed.readBit()) {
+                copySubtree(referenceNode, tree, parent);
+                continue;
+            }
+            final int node = tree.addNode(parent);
+            if (!compressed.readBit()) {
+                continue;
+            }
+            final int childCount = compressed.readBit() ? 2 : 1;
+            final int referenceCount = referenceChildCount(referenceNode);
+            if (referenceCount == childCount && compressed.readBit()) {
+                for (int i = 0; i < reference.getLabelLength(referenceNode); i++) {
+                    tree.appendLabel(node, reference.getLabelSymbol(referenceNode, i));
+                }
+            } else if (referenceCount == childCount && compressed.readBit()) {
+                readSubstitutions(compressed, referenceNode, childCount == 1, tree, node);
+            } else {
+                codec.decompressNode(compressed, childCount == 1, tree, node);
+            }
+            if (stackSize + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            if (childCount == 2) {
+                stack[stackSize++] = node;
+                stack[stackSize++] = referenceCount == 2 ? reference.getSecondChild(referenceNode)
+                        : ContractedTree.NONE;
+            }
+            stack[stackSize++] = node;
+            stack[stackSize++] = referenceCount > 0 ? reference.getFirstChild(referenceNode) : ContractedTree.NONE;
+        }
+        return new RnaCodec.Decompressed(RnaCodec.treeToRNA(tree), CodecStatistics.of(tree));
+    }
+
+    /**
+     * Appends a copy of a subtree of the reference tree in preorder.
+     *
+     * @param source Root of the subtree in the reference tree.
+     * @param tree   Tree the copy is appended to.
+     * @param parent Parent of the copy, or NONE for the root.
+     */
+    private void copySubtree(final int source, final ContractedTree tree, final int parent) {
+        /* Pairs of a node of the subtree and the parent of its copy. */
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = source;
+        stack[stackSize++] = parent;
+        while (stackSize > 0) {
+            final int copyParent = stack[--stackSize];
+            final int node = stack[--stackSize];
+            final int copy = tree.addNode(copyParent);
+            for (int i = 0; i < reference.getLabelLength(node); i++) {
+                tree.appendLabel(copy, reference.getLabelSymbol(node, i));
+            }
+            if (stackSize + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            final int childCount = reference.getChildCount(node);
+            if (childCount == 2) {
+                stack[stackSize++] = reference.getSecondChild(node);
+                stack[stackSize++] = copy;
+            }
+            if (childCount > 0) {
+                stack[stackSize++] = reference.getFirstChild(node);
+                stack[stackSize++] = copy;
+            }
+        }
+    }
+
+    /**
+     * @param referenceNode Index of a node of the reference tree, or NONE.
+     * @return Number of children of the node; 0 for NONE.
+     */
+    private int referenceChildCount(final int referenceNode) {
+        return referenceNode == ContractedTree.NONE ? 0 : reference.getChildCount(referenceNode);
+    }
+
+    /**
+     * Writes the label of a node against the label of its reference node of the same type: 1 if both are equal, 01
+     * followed by the substitutions if both have the same length, or 00 followed by the label with the Huffman codes.
+     * Substitutions are one bit per symbol, 1 if it differs from the reference symbol, which is then followed by the
+     * index of the new symbol. The shorter of the last two is chosen.
+     *
+     * @param tree          Compact contracted tree.
+     * @param node          Index of a node of the tree.
+     * @param referenceNode Index of the reference node.
+     * @param unary         True, if the labels contain unary symbols; False, otherwise.
+     * @param result        Bit sequence the label is appended to.
+     */
+    private void writeLabelDiff(final ContractedTree tree, final int node, final int referenceNode,
+                                final boolean unary, final BitWriter result) {
+        final int length = tree.getLabelLength(node);
+        final int width = symbolWidth(unary);
+        long substitutionBits = Long.MAX_VALUE;
+        if (length == reference.getLabelLength(referenceNode)) {
+            substitutionBits = length;
+            for (int i = 0; i < length; i++) {
+                if (tree.getLabelSymbol(node, i) != reference.getLabelSymbol(referenceNode, i)) {
+                    substitutionBits += width;
+                }
+            }
+            if (substitutionBits == length) {
+                result.writeBit(true);
+                return;
+            }
+        }
+        result.writeBit(false);
+        final boolean substitutions = substitutionBits < codec.labelBits(tree, node, unary);
+        result.writeBit(substitutions);
+        if (!substitutions) {
+            codec.compressNode(tree, node, unary, result);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            final char symbol = tree.getLabelSymbol(node, i);
+            final boolean changed = symbol != reference.getLabelSymbol(referenceNode, i);
+            result.writeBit(changed);
+            if (changed) {
+                result.writeBits(unary ? HuffmanMaps.unaryIndex(symbol) : HuffmanMaps.binaryIndex(symbol), width);
+            }
+        }
+    }
+
+    /**
+     * Counterpart of the substitutions of writeLabelDiff().
+     *
+     * @param compressed    Compressed bit sequence, positioned at the first substitution bit.
+     * @param referenceNode Index of the reference node.
+     * @param unary         True, if the labels contain unary symbols; False, otherwise.
+     * @param tree          Tree of the decompressed record.
+     * @param node          Index of the node whose label is read.
+     * @throws IllegalStateException If a substituted symbol does not exist.
+     */
+    private void readSubstitutions(final BitReader compressed, final int referenceNode, final boolean unary,
+                                   final ContractedTree tree, final int node) {
+        final char[] symbols = unary ? HuffmanMaps.UNARY_SYMBOLS : HuffmanMaps.BINARY_SYMBOLS;
+        final int width = symbolWidth(unary);
+        for (int i = 0; i < reference.getLabelLength(referenceNode); i++) {
+            if (!compressed.readBit()) {
+                tree.appendLabel(node, reference.getLabelSymbol(referenceNode, i));
+                continue;
+            }
+            final int index = compressed.readBits(width);
+            if (index >= symbols.length - 1) {
+                throw new IllegalStateException("Invalid label symbol at bit " + compressed.position());
+            }
+            tree.appendLabel(node, symbols[index]);
+        }
+    }
+
+    /**
+     * @param unary True for unary symbols; False for binary symbols.
+     * @return Number of bits of the index of a substituted symbol.
+     */
+    private static int symbolWidth(final boolean unary) {
+        final int separator = unary ? HuffmanMaps.UNARY_SEPARATOR : HuffmanMaps.BINARY_SEPARATOR;
+        return Integer.SIZE - Integer.numberOfLeadingZeros(separator - 1);
+    }
+}
@@ -0,0 +1,940 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Compressor and decompressor for single RNA records. A codec is immutable and keeps no state between calls, so one
+ * instance can be shared by any number of threads. Every call returns its own statistics.
+ * With more than one lane (see CodecOptions.getLanes()), the labels of the standard method are split round-robin into
+ * interleaved streams: the k-th label goes to lane k mod N. A record then starts with the lengths of all lanes but the
+ * last, followed by the tree structure and the lanes one after another. Since consecutive labels are in different
+ * lanes, their decoding does not depend on each other. Large trees decode their lanes on several threads if the
+ * common fork-join pool has more than one.
+ * With a block size (see CodecOptions.getBlockSize()), a record is split into blocks of at least that many bases at
+ * positions of its exterior loop, i.e. between top-level subtrees of the contracted tree. The blocks are compressed
+ * independently on the common fork-join pool and stored after the number and the lengths of the blocks, so they are
+ * decompressed in parallel as well.
+ */
+public class RnaCodec {
+
+    /* Opening and closing bases of the binary symbols, indexed like HuffmanMaps.BINARY_SYMBOLS. */
+    static final char[] PAIR_OPENING = {'A', 'U', 'C', 'G', 'U', 'G'};
+    static final char[] PAIR_CLOSING = {'U', 'A', 'G', 'C', 'G', 'U'};
+
+    /* Number of bits of the width of the lane and block lengths. */
+    private static final int LENGTH_WIDTH_BITS = 6;
+    /* Number of bits of the block count of a record split into blocks. */
+    private static final int BLOCK_COUNT_BITS = 32;
+    /* Trees with at least this many nodes decode their lanes in parallel on multi-core machines. */
+    private static final int PARALLEL_LANE_NODES = 1 << 16;
+
+    private final CodecOptions options;
+    private final HuffmanMaps huffmanMaps;
+
+    public RnaCodec() {
+        this(CodecOptions.DEFAULT);
+    }
+
+    /**
+     * @param options Settings of the codec.
+     */
+    public RnaCodec(final CodecOptions options) {
+        if (options.getLanes() > 1 && (options.isAlternative() || options.isRangeCoder() || options.isDag())) {
+            throw new IllegalArgumentException("Interleaved lanes require the standard method with Huffman codes");
+        }
+        if (options.isDag() && (options.isAlternative() || options.isRangeCoder())) {
+            throw new IllegalArgumentException("The DAG method requires Huffman codes and excludes the alternative "
+                    + "method");
+        }
+        this.options = options;
+        this.huffmanMaps = options.getHuffmanMaps();
+    }
+
+    /**
+     * @return Settings of the codec.
+     */
+    public CodecOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return Huffman codes of the codec.
+     */
+    HuffmanMaps getHuffmanMaps() {
+        return huffmanMaps;
+    }
+
+    /**
+     * Compressed RNA record together with the statistics of its contracted tree.
+     */
+    public static final class Compressed {
+
+        public final BitWriter bits;
+        public final CodecStatistics statistics;
+
+        Compressed(final BitWriter bits, final CodecStatistics statistics) {
+            this.bits = bits;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Decompressed RNA record together with the statistics of its contracted tree.
+     */
+    public static final class Decompressed {
+
+        public final String sequence;
+        public final String structure;
+        public final CodecStatistics statistics;
+
+        Decompressed(final String[] rna, final CodecStatistics statistics) {
+            this.sequence = rna[0];
+            this.structure = rna[1];
+            this.statistics = statistics;
+        }
+
+        /**
+         * @return 0: Sequence. 1: Structure.
+         */
+        public String[] toArray() {
+            return new String[]{sequence, structure};
+        }
+    }
+
+    /**
+     * Compresses an RNA sequence with the corresponding secondary structure.
+     *
+     * @param sequence  RNA sequence in any case, e.g. an AsciiSequence of a mapped input file.
+     * @param structure RNA secondary structure.
+     * @return Bit sequence and statistics.
+     */
+    public Compressed compress(final CharSequence sequence, final CharSequence structure) {
+        final BitWriter compression = new BitWriter(4L * sequence.length());
+        if (!options.isExceptions()) {
+            return compressRecord(sequence, structure, compression);
+        }
+        final ExceptionStream.Split split = ExceptionStream.split(sequence, structure);
+        split.write(compression);
+        return compressRecord(split.sequence, structure, compression);
+    }
+
+    /**
+     * Compresses an RNA record without the exception stream, even if the options contain it.
+     *
+     * @param sequence    RNA sequence of the bases A, C, G and U in any case.
+     * @param structure   RNA secondary structure with canonical pairs.
+     * @param compression Bit sequence the record is appended to.
+     * @return The bit sequence and statistics.
+     * @throws IllegalArgumentException If the record contains a non-canonical pair.
+     */
+    Compressed compressRecord(final CharSequence sequence, final CharSequence structure,
+                              final BitWriter compression) {
+        if (options.getBlockSize() > 0) {
+            return compressBlocks(sequence, structure, compression);
+        }
+        final ContractedTree tree = buildCompactTree(sequence, structure);
+        if (options.isDag()) {
+            DagCodec.compress(this, tree, compression);
+        } else if (options.isRangeCoder()) {
+            RangeCodec.compress(tree, options.isAlternative(), compression);
+        } else if (options.isAlternative()) {
+            compressAlternative(tree, compression);
+        } else if (options.getLanes() > 1) {
+            compressLanes(tree, compression);
+        } else {
+            compressUnlabeledTree(tree, compression);
+            compressLabels(tree, compression);
+        }
+        return new Compressed(compression, CodecStatistics.of(tree));
+    }
+
+    /**
+     * Decompresses a bit sequence into an RNA sequence including its secondary structure.
+     *
+     * @param compressed Compressed bit sequence.
+     * @return Decompressed RNA and statistics.
+     */
+    public Decompressed decompress(final BitReader compressed) {
+        if (!options.isExceptions()) {
+            return decompressRecord(compressed);
+        }
+        final long[] exceptions = ExceptionStream.read(compressed);
+        final Decompressed record = decompressRecord(compressed);
+        return new Decompressed(new String[]{ExceptionStream.restore(record.sequence, exceptions), record.structure},
+                record.statistics);
+    }
+
+    /**
+     * Counterpart of compressRecord().
+     *
+     * @param compressed Compressed bit sequence.
+     * @return Decompressed RNA and statistics.
+     */
+    Decompressed decompressRecord(final BitReader compressed) {
+        if (options.getBlockSize() > 0) {
+            return decompressBlocks(compressed);
+        }
+        final ContractedTree tree;
+        if (options.isDag()) {
+            tree = DagCodec.decompress(this, compressed);
+        } else if (options.isRangeCoder()) {
+            tree = RangeCodec.decompress(compressed, options.isAlternative());
+        } else if (options.isAlternative()) {
+            tree = decompressAlternative(compressed);
+        } else if (options.getLanes() > 1) {
+            tree = decompressLanes(compressed, ForkJoinPool.getCommonPoolParallelism() > 1 ? PARALLEL_LANE_NODES
+                    : Integer.MAX_VALUE);
+        } else {
+            tree = decompressUnlabeledTree(compressed);
+            decompressLabels(compressed, tree);
+        }
+        return new Decompressed(treeToRNA(tree), CodecStatistics.of(tree));
+    }
+
+    /**
+     * Splits a record into blocks and compresses them in parallel: the number of blocks, the width and the lengths of
+     * all blocks but the last, and then the blocks, each compressed like a record without blocks.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @param result    Bit sequence the blocks are appended to.
+     * @return The bit sequence and the summed statistics of the blocks.
+     */
+    private Compressed compressBlocks(final CharSequence sequence, final CharSequence structure,
+                                      final BitWriter result) {
+        final int[] ends = blockEnds(structure, sequence.length(), options.getBlockSize());
+        final RnaCodec blockCodec = new RnaCodec(options.withBlockSize(0).withExceptions(false));
+        final Compressed[] blocks = new Compressed[ends.length];
+        IntStream.range(0, ends.length).parallel().forEach(block -> {
+            final int start = block == 0 ? 0 : ends[block - 1];
+            blocks[block] = blockCodec.compress(sequence.subSequence(start, ends[block]),
+                    structure.subSequence(start, ends[block]));
+        });
+        final BitWriter[] parts = new BitWriter[blocks.length];
+        long nodes = 0;
+        long unaryNodes = 0;
+        long binaryNodes = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            parts[i] = blocks[i].bits;
+            nodes += blocks[i].statistics.nodes;
+            unaryNodes += blocks[i].statistics.unaryNodes;
+            binaryNodes += blocks[i].statistics.binaryNodes;
+        }
+        result.writeBits(blocks.length, BLOCK_COUNT_BITS);
+        writeLengths(parts, result);
+        for (final BitWriter part : parts) {
+            result.append(part);
+        }
+        return new Compressed(result, new CodecStatistics(1, nodes, unaryNodes, binaryNodes));
+    }
+
+    /**
+     * Chooses the block boundaries of a record: a block ends at the first position of the exterior loop, i.e. outside
+     * of all base pairs, after it has reached the block size.
+     *
+     * @param structure RNA secondary structure.
+     * @param length    Length of the record.
+     * @param blockSize Minimum number of bases per block.
+     * @return Index after the last base of every block; the last entry is the length.
+     */
+    private static int[] blockEnds(final CharSequence structure, final int length, final int blockSize) {
+        int[] ends = new int[16];
+        int count = 0;
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = structure.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+            if (depth == 0 && i + 1 - start >= blockSize && i + 1 < length) {
+                if (count == ends.length) {
+                    ends = Arrays.copyOf(ends, count << 1);
+                }
+                ends[count++] = i + 1;
+                start = i + 1;
+            }
+        }
+        ends = Arrays.copyOf(ends, count + 1);
+        ends[count] = length;
+        return ends;
+    }
+
+    /**
+     * Counterpart of compressBlocks().
+     *
+     * @param compressed Compressed bit sequence.
+     * @return Decompressed RNA and the summed statistics of the blocks.
+     */
+    private Decompressed decompressBlocks(final BitReader compressed) {
+        final int count = compressed.readBits(BLOCK_COUNT_BITS);
+        if (count < 1) {
+            throw new IllegalStateException("Invalid block count " + count);
+        }
+        final BitReader[] parts = slices(compressed, readLengths(compressed, count));
+        final RnaCodec blockCodec = new RnaCodec(options.withBlockSize(0).withExceptions(false));
+        final Decompressed[] blocks = new Decompressed[count];
+        IntStream.range(0, count).parallel().forEach(block -> blocks[block] = blockCodec.decompress(parts[block]));
+        compressed.skipBits(parts[count - 1].position() - compressed.position());
+        long length = 0;
+        long nodes = 0;
+        long unaryNodes = 0;
+        long binaryNodes = 0;
+        for (final Decompressed block : blocks) {
+            length += block.sequence.length();
+            nodes += block.statistics.nodes;
+            unaryNodes += block.statistics.unaryNodes;
+            binaryNodes += block.statistics.binaryNodes;
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Decompressed record is too long");
+        }
+        final StringBuilder sequence = new StringBuilder((int) length);
+        final StringBuilder structure = new StringBuilder((int) length);
+        for (final Decompressed block : blocks) {
+            sequence.append(block.sequence);
+            structure.append(block.structure);
+        }
+        return new Decompressed(new String[]{sequence.toString(), structure.toString()},
+                new CodecStatistics(1, nodes, unaryNodes, binaryNodes));
+    }
+
+    /**
+     * Writes the width and the lengths of all parts but the last, which extends to the end of the record.
+     *
+     * @param parts  Parts stored one after another.
+     * @param result Bit sequence the lengths are appended to.
+     */
+    private static void writeLengths(final BitWriter[] parts, final BitWriter result) {
+        long longest = 0;
+        for (int i = 0; i < parts.length - 1; i++) {
+            longest = Math.max(longest, parts[i].size());
+        }
+        final int width = Long.SIZE - Long.numberOfLeadingZeros(longest);
+        result.writeBits(width, LENGTH_WIDTH_BITS);
+        for (int i = 0; i < parts.length - 1; i++) {
+            result.writeBits(parts[i].size(), width);
+        }
+    }
+
+    /**
+     * Reads the lengths written by writeLengths().
+     *
+     * @param compressed Compressed bit sequence, positioned at the width.
+     * @param count      Number of parts.
+     * @return Lengths of all parts but the last.
+     */
+    private static long[] readLengths(final BitReader compressed, final int count) {
+        final int width = compressed.readBits(LENGTH_WIDTH_BITS);
+        final long[] lengths = new long[count - 1];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = width > Integer.SIZE
+                    ? (long) compressed.readBits(width - Integer.SIZE) << Integer.SIZE
+                    | compressed.readBits(Integer.SIZE) & 0xFFFFFFFFL
+                    : compressed.readBits(width) & 0xFFFFFFFFL;
+        }
+        return lengths;
+    }
+
+    /**
+     * Creates readers for parts stored one after another from the current position to the end of the record.
+     *
+     * @param compressed Compressed bit sequence, positioned at the first part.
+     * @param lengths    Lengths of all parts but the last.
+     * @return Readers of the parts.
+     */
+    private static BitReader[] slices(final BitReader compressed, final long[] lengths) {
+        final BitReader[] parts = new BitReader[lengths.length + 1];
+        long start = compressed.position();
+        for (int i = 0; i < lengths.length; i++) {
+            parts[i] = compressed.slice(start, start + lengths[i]);
+            start += lengths[i];
+        }
+        parts[lengths.length] = compressed.slice(start, compressed.limit());
+        return parts;
+    }
+
+    /**
+     * Compresses the structure of a compact contracted tree into a bit sequence: a 1 for every node but the root, and
+     * a 0 after the subtree of every non-binary node.
+     *
+     * @param tree   Compact contracted tree.
+     * @param result Bit sequence the compressed structure is appended to.
+     */
+    public static void compressUnlabeledTree(final ContractedTree tree, final BitWriter result) {
+        if (tree.size() == 0) {
+            return;
+        }
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            if (stackSize + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            final int entry = stack[--stackSize];
+            if (entry < 0) {
+                result.writeBit(false);
+                continue;
+            }
+            if (entry != 0) {
+                result.writeBit(true);
+            }
+            final int childCount = tree.getChildCount(entry);
+            if (childCount != 2) {
+                stack[stackSize++] = ~entry;
+            }
+            if (childCount == 2) {
+                stack[stackSize++] = tree.getSecondChild(entry);
+            }
+            if (childCount > 0) {
+                stack[stackSize++] = tree.getFirstChild(entry);
+            }
+        }
+    }
+
+    /**
+     * Compresses the labels of a compact contracted tree into a bit sequence.
+     *
+     * @param tree   Compact contracted tree.
+     * @param result Bit sequence the compressed labels are appended to.
+     */
+    public void compressLabels(final ContractedTree tree, final BitWriter result) {
+        for (int node = 0; node < tree.size(); node++) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 1) {
+                compressNode(tree, node, true, result);
+            } else if (childCount == 2) {
+                compressNode(tree, node, false, result);
+            }
+        }
+    }
+
+    /**
+     * Compresses a compact contracted tree with the labels split into lanes: the lengths of the lanes (see
+     * writeLengths()), the tree structure, and then the lanes.
+     *
+     * @param tree   Compact contracted tree.
+     * @param result Bit sequence the compressed tree is appended to.
+     */
+    private void compressLanes(final ContractedTree tree, final BitWriter result) {
+        final BitWriter[] lanes = new BitWriter[options.getLanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new BitWriter();
+        }
+        int lane = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount > 0) {
+                compressNode(tree, node, childCount == 1, lanes[lane]);
+                lane = lane + 1 == lanes.length ? 0 : lane + 1;
+            }
+        }
+        writeLengths(lanes, result);
+        compressUnlabeledTree(tree, result);
+        for (final BitWriter bits : lanes) {
+            result.append(bits);
+        }
+    }
+
+    /**
+     * Compresses the label of a single node of a compact contracted tree, followed by the separator ';'.
+     *
+     * @param tree   Compact contracted tree.
+     * @param node   Index of the node.
+     * @param unary  True, if the label contains unary symbols; False, otherwise.
+     * @param result Bit sequence the compressed label is appended to.
+     */
+    void compressNode(final ContractedTree tree, final int node, final boolean unary, final BitWriter result) {
+        final int[][] codes = unary ? huffmanMaps.getUnaryCodes() : huffmanMaps.getBinaryCodes();
+        final int separator = unary ? HuffmanMaps.UNARY_SEPARATOR : HuffmanMaps.BINARY_SEPARATOR;
+        final int length = tree.getLabelLength(node);
+        int previous = separator;
+        int code;
+        for (int i = 0; i < length; i++) {
+            final int current = symbolIndex(tree.getLabelSymbol(node, i), unary);
+            code = codes[previous][current];
+            result.writeBits(code >>> 8, code & 0xFF);
+            previous = current;
+        }
+        code = codes[previous][separator];
+        result.writeBits(code >>> 8, code & 0xFF);
+    }
+
+    /**
+     * Counts the bits compressNode() writes for the label of a node.
+     *
+     * @param tree  Compact contracted tree.
+     * @param node  Index of the node.
+     * @param unary True, if the label contains unary symbols; False, otherwise.
+     * @return Number of bits of the compressed label, including the separator.
+     */
+    int labelBits(final ContractedTree tree, final int node, final boolean unary) {
+        final int[][] codes = unary ? huffmanMaps.getUnaryCodes() : huffmanMaps.getBinaryCodes();
+        final int separator = unary ? HuffmanMaps.UNARY_SEPARATOR : HuffmanMaps.BINARY_SEPARATOR;
+        int bits = 0;
+        int previous = separator;
+        for (int i = 0; i < tree.getLabelLength(node); i++) {
+            final int current = symbolIndex(tree.getLabelSymbol(node, i), unary);
+            bits += codes[previous][current] & 0xFF;
+            previous = current;
+        }
+        return bits + (codes[previous][separator] & 0xFF);
+    }
+
+    /**
+     * Looks up the index of a label symbol in HuffmanMaps.UNARY_SYMBOLS or HuffmanMaps.BINARY_SYMBOLS.
+     *
+     * @param symbol Label symbol.
+     * @param unary  True, if the symbol is a unary symbol; False, otherwise.
+     * @return Symbol index.
+     */
+    private static int symbolIndex(final char symbol, final boolean unary) {
+        final int index = unary ? HuffmanMaps.unaryIndex(symbol) : HuffmanMaps.binaryIndex(symbol);
+        final int separator = unary ? HuffmanMaps.UNARY_SEPARATOR : HuffmanMaps.BINARY_SEPARATOR;
+        if (index < 0 || index == separator) {
+            throw new IllegalArgumentException("Unsupported symbol '" + symbol + "'");
+        }
+        return index;
+    }
+
+    /**
+     * Decompresses part of a bit sequence into an unlabeled compact tree. Consumes exactly the bits of the tree.
+     *
+     * @param compressedTree Bit sequence starting with the compressed tree.
+     * @return Compact tree without labels.
+     */
+    public static ContractedTree decompressUnlabeledTree(final BitReader compressedTree) {
+        final int expectedNodes = (int) Math.min(Integer.MAX_VALUE - 8,
+                (compressedTree.limit() - compressedTree.position()) / 16 + 1);
+        final ContractedTree tree = new ContractedTree(expectedNodes, expectedNodes);
+        int current = tree.addNode(ContractedTree.NONE);
+        while (current != ContractedTree.NONE && compressedTree.hasRemaining()) {
+            if (compressedTree.readBit()) {
+                current = tree.addNode(current);
+            } else {
+                current = tree.getParent(current);
+            }
+            while (current != ContractedTree.NONE && tree.getChildCount(current) == 2) {
+                current = tree.getParent(current);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Decompresses a bit sequence into RNA symbols and inserts them into the compact contracted tree.
+     *
+     * @param compressed Compressed bit sequence, positioned at the first label.
+     * @param tree       Compact contracted tree.
+     */
+    public void decompressLabels(final BitReader compressed, final ContractedTree tree) {
+        for (int node = 0; node < tree.size(); node++) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 1) {
+                decompressNode(compressed, true, tree, node);
+            } else if (childCount == 2) {
+                decompressNode(compressed, false, tree, node);
+            }
+        }
+    }
+
+    /**
+     * Counterpart of compressLanes().
+     *
+     * @param compressed    Compressed bit sequence.
+     * @param parallelNodes Minimum number of nodes of a tree whose lanes are decoded in parallel.
+     * @return Labeled compact contracted tree.
+     */
+    ContractedTree decompressLanes(final BitReader compressed, final int parallelNodes) {
+        final long[] lengths = readLengths(compressed, options.getLanes());
+        final ContractedTree tree = decompressUnlabeledTree(compressed);
+        final BitReader[] lanes = slices(compressed, lengths);
+        if (tree.size() >= parallelNodes) {
+            decompressLanesParallel(lanes, tree);
+        } else {
+            int lane = 0;
+            for (int node = 0; node < tree.size(); node++) {
+                final int childCount = tree.getChildCount(node);
+                if (childCount > 0) {
+                    decompressNode(lanes[lane], childCount == 1, tree, node);
+                    lane = lane + 1 == lanes.length ? 0 : lane + 1;
+                }
+            }
+        }
+        compressed.skipBits(lanes[lanes.length - 1].position() - compressed.position());
+        return tree;
+    }
+
+    /**
+     * Decodes every lane on its own thread. The labeled nodes are listed once, so every lane only visits its own
+     * nodes, and decodes their labels into a buffer of its own, setting their ranges relative to the buffer. Once
+     * all buffers are complete, every lane copies its buffer into the label array of the tree at its offset and moves
+     * the ranges of its nodes there, again in parallel.
+     *
+     * @param lanes Readers of the lanes, positioned at their first label.
+     * @param tree  Compact contracted tree without labels.
+     */
+    private void decompressLanesParallel(final BitReader[] lanes, final ContractedTree tree) {
+        final int[] labeled = new int[tree.size()];
+        int count = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            if (tree.getChildCount(node) > 0) {
+                labeled[count++] = node;
+            }
+        }
+        final int labeledCount = count;
+        final LaneLabels[] labels = new LaneLabels[lanes.length];
+        IntStream.range(0, lanes.length).parallel()
+                .forEach(lane -> labels[lane] = decodeLane(lanes[lane], tree, labeled, labeledCount, lane));
+        final int[] offsets = new int[lanes.length];
+        long total = 0;
+        for (int lane = 0; lane < lanes.length; lane++) {
+            offsets[lane] = (int) total;
+            total += labels[lane].size;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Decompressed labels are too long");
+        }
+        final byte[] symbols = new byte[(int) total];
+        IntStream.range(0, lanes.length).parallel().forEach(lane -> {
+            System.arraycopy(labels[lane].symbols, 0, symbols, offsets[lane], labels[lane].size);
+            for (int i = lane; i < labeledCount; i += lanes.length) {
+                final int node = labeled[i];
+                tree.setLabel(node, offsets[lane] + tree.getLabelStart(node), tree.getLabelLength(node));
+            }
+        });
+        tree.setLabels(symbols);
+    }
+
+    /**
+     * Decodes all labels of one lane into a buffer of its own. The tree is only modified by setting the label ranges
+     * of the nodes of the lane, relative to the buffer, so several lanes can be decoded at once.
+     *
+     * @param compressed   Reader of the lane, positioned at its first label.
+     * @param tree         Compact contracted tree without labels.
+     * @param labeled      Nodes with a label in preorder; the i-th one belongs to lane i mod the number of lanes.
+     * @param labeledCount Number of nodes with a label.
+     * @param lane         Index of the lane.
+     * @return Symbols of the labels of the lane.
+     */
+    private LaneLabels decodeLane(final BitReader compressed, final ContractedTree tree, final int[] labeled,
+                                  final int labeledCount, final int lane) {
+        final LaneLabels labels = new LaneLabels((int) Math.min(Integer.MAX_VALUE - 8,
+                (compressed.limit() - compressed.position()) / 2 + 16));
+        for (int i = lane; i < labeledCount; i += options.getLanes()) {
+            final int node = labeled[i];
+            final boolean unary = tree.getChildCount(node) == 1;
+            final int[][] tables = unary ? huffmanMaps.getUnaryTable() : huffmanMaps.getBinaryTable();
+            final char[] symbols = unary ? HuffmanMaps.UNARY_SYMBOLS : HuffmanMaps.BINARY_SYMBOLS;
+            final int peekLength = unary ? huffmanMaps.getUnaryPeekLength() : huffmanMaps.getBinaryPeekLength();
+            final int separator = symbols.length - 1;
+            final int start = labels.size;
+            int context = separator;
+            while ((context = decodeSymbol(compressed, tables[context], peekLength)) != separator) {
+                labels.add(symbols[context]);
+            }
+            tree.setLabel(node, start, labels.size - start);
+        }
+        return labels;
+    }
+
+    /**
+     * Label symbols decoded from one lane, stored consecutively.
+     */
+    private static final class LaneLabels {
+
+        byte[] symbols;
+        int size;
+
+        LaneLabels(final int capacity) {
+            symbols = new byte[capacity];
+        }
+
+        void add(final char symbol) {
+            if (size == symbols.length) {
+                symbols = Arrays.copyOf(symbols, size << 1);
+            }
+            symbols[size++] = (byte) symbol;
+        }
+    }
+
+    /**
+     * Decompresses part of a bit sequence into the label of a single node of a compact contracted tree.
+     *
+     * @param compressed Compressed bit sequence, positioned at the first bit of the node.
+     * @param unary      True, if the sequence contains unary symbols; False, otherwise.
+     * @param tree       Compact contracted tree.
+     * @param node       Index of the node.
+     */
+    void decompressNode(final BitReader compressed, final boolean unary, final ContractedTree tree, final int node) {
+        final int[][] tables = unary ? huffmanMaps.getUnaryTable() : huffmanMaps.getBinaryTable();
+        final char[] symbols = unary ? HuffmanMaps.UNARY_SYMBOLS : HuffmanMaps.BINARY_SYMBOLS;
+        final int peekLength = unary ? huffmanMaps.getUnaryPeekLength() : huffmanMaps.getBinaryPeekLength();
+        final int separator = symbols.length - 1;
+        int context = separator;
+        while ((context = decodeSymbol(compressed, tables[context], peekLength)) != separator) {
+            tree.appendLabel(node, symbols[context]);
+        }
+    }
+
+    /**
+     * Decodes a single symbol with a decoding table of HuffmanMaps and consumes its code.
+     *
+     * @param compressed Compressed bit sequence.
+     * @param table      Decoding table of the current context.
+     * @param peekLength Number of bits the table is indexed with.
+     * @return Index of the decoded symbol.
+     */
+    static int decodeSymbol(final BitReader compressed, final int[] table, final int peekLength) {
+        final int entry = table[compressed.peekBits(peekLength)];
+        if (entry < 0) {
+            throw new IllegalStateException("Invalid Huffman code at bit " + compressed.position());
+        }
+        compressed.skipBits(entry & 0xFF);
+        return entry >>> 8;
+    }
+
+    /**
+     * An alternative compression method that does not explicitly compress the tree but implicitly by adding marker bits
+     * to the preorder sequence: every non-leaf node is written as a type bit (0 for unary, 1 for binary), its label and
+     * one bit per child telling whether the child is a non-leaf node.
+     *
+     * @param tree   Compact contracted tree.
+     * @param result Bit sequence the compressed tree is appended to.
+     */
+    private void compressAlternative(final ContractedTree tree, final BitWriter result) {
+        for (int node = 0; node < tree.size(); node++) {
+            final int childCount = tree.getChildCount(node);
+            if (childCount == 1) {
+                result.writeBit(false);
+                compressNode(tree, node, true, result);
+                result.writeBit(tree.getChildCount(tree.getFirstChild(node)) != 0);
+            } else if (childCount == 2) {
+                result.writeBit(true);
+                compressNode(tree, node, false, result);
+                result.writeBit(tree.getChildCount(tree.getFirstChild(node)) != 0);
+                result.writeBit(tree.getChildCount(tree.getSecondChild(node)) != 0);
+            }
+        }
+    }
+
+    /**
+     * Counterpart of compressAlternative(). Nodes are created in preorder: leaves are added as soon as their position
+     * is reached, pending second children are kept on a stack.
+     *
+     * @param compressed Bit sequence, compressed with alternative method.
+     * @return Labeled compact contracted tree.
+     */
+    private ContractedTree decompressAlternative(final BitReader compressed) {
+        final ContractedTree tree = new ContractedTree();
+        /* Entries are parent << 1 of a pending non-leaf second child, or parent << 1 | 1 of a pending leaf. */
+        int[] pending = new int[16];
+        int pendingSize = 0;
+        int parent = ContractedTree.NONE;
+        while (compressed.hasRemaining()) {
+            final int node = tree.addNode(parent);
+            final boolean unary = !compressed.readBit();
+            decompressNode(compressed, unary, tree, node);
+            if (unary) {
+                if (compressed.readBit()) {
+                    parent = node;
+                    continue;
+                }
+                tree.addNode(node);
+            } else {
+                final boolean left = compressed.readBit();
+                final boolean right = compressed.readBit();
+                if (left) {
+                    if (pendingSize == pending.length) {
+                        pending = Arrays.copyOf(pending, pendingSize << 1);
+                    }
+                    pending[pendingSize++] = node << 1 | (right ? 0 : 1);
+                    parent = node;
+                    continue;
+                }
+                tree.addNode(node);
+                if (right) {
+                    parent = node;
+                    continue;
+                }
+                tree.addNode(node);
+            }
+            parent = ContractedTree.NONE;
+            while (pendingSize > 0) {
+                final int entry = pending[--pendingSize];
+                if ((entry & 1) == 0) {
+                    parent = entry >>> 1;
+                    break;
+                }
+                tree.addNode(entry >>> 1);
+            }
+            if (parent == ContractedTree.NONE) {
+                break;
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Builds the compact representation of the contracted tree of an RNA sequence and its secondary structure in a
+     * single pass, without building the strict unary-binary tree first. Gives the same tree as
+     * RNAContract.buildContractedTree(String, String).
+     * Every run of unpaired bases becomes a unary node and every base pair a binary node, created in input order and
+     * thus in preorder. When a pair closes, it is contracted with the pair it directly encloses if nothing lies between
+     * the two closing brackets. The labels are the symbols at the sequence positions of the unpaired bases and opening
+     * brackets, so contracted labels are contiguous ranges of one array. Bases are folded to lower case while they are
+     * read, so the input is not copied.
+     *
+     * @param sequence  RNA sequence in any case.
+     * @param structure RNA secondary structure.
+     * @return Compact contracted tree.
+     */
+    public static ContractedTree buildCompactTree(final CharSequence sequence, final CharSequence structure) {
+        final int length = sequence.length();
+        final byte[] symbols = new byte[length];
+        final ContractedTree tree = new ContractedTree(length / 2 + 1, symbols);
+        int[] pairStack = new int[16];
+        int pairStackSize = 0;
+        /* Node whose next child is created next, and the unary node of the current run of unpaired bases. */
+        int attach = ContractedTree.NONE;
+        int unary = ContractedTree.NONE;
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            final char input = sequence.charAt(i);
+            final char base = input >= 'A' && input <= 'Z' ? (char) (input | 0x20) : input;
+            switch (structure.charAt(i)) {
+                case '.':
+                    if (unary == ContractedTree.NONE) {
+                        unary = tree.addNode(attach);
+                        runStart = i;
+                    }
+                    symbols[i] = (byte) base;
+                    tree.setLabel(unary, runStart, i - runStart + 1);
+                    break;
+                case '(':
+                    if (unary != ContractedTree.NONE) {
+                        attach = unary;
+                        unary = ContractedTree.NONE;
+                    }
+                    switch (base) {
+                        case 'a':
+                            symbols[i] = 'p';
+                            break;
+                        case 'u':
+                            symbols[i] = 'q';
+                            break;
+                        case 'c':
+                            symbols[i] = 'r';
+                            break;
+                        case 'g':
+                            symbols[i] = 's';
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unsupported paired base '" + base + "' at " + i);
+                    }
+                    attach = tree.addNode(attach);
+                    tree.setLabel(attach, i, 1);
+                    if (pairStackSize == pairStack.length) {
+                        pairStack = Arrays.copyOf(pairStack, pairStackSize << 1);
+                    }
+                    pairStack[pairStackSize++] = attach;
+                    break;
+                case ')':
+                    if (pairStackSize == 0) {
+                        throw new IllegalArgumentException("Unbalanced closing bracket at " + i);
+                    }
+                    if (unary != ContractedTree.NONE) {
+                        attach = unary;
+                        unary = ContractedTree.NONE;
+                    }
+                    tree.addNode(attach);
+                    final int pair = pairStack[--pairStackSize];
+                    final int opening = tree.getLabelStart(pair);
+                    if (!RnaValidator.isCanonicalPair(sequence.charAt(opening), base)) {
+                        throw new IllegalArgumentException("Non-canonical pair " + sequence.charAt(opening) + '-'
+                                + input + " at " + opening + " and " + i);
+                    }
+                    /* Since G and U have two possible pairings, the key for the corresponding node might need to be
+                     * altered. */
+                    if (base == 'u' && symbols[opening] == 's') {
+                        symbols[opening] = 'y';
+                    } else if (base == 'g' && symbols[opening] == 'q') {
+                        symbols[opening] = 'x';
+                    }
+                    final int inner = tree.getFirstChild(pair);
+                    if (tree.getChildCount(inner) == 2 && tree.getChildCount(tree.getSecondChild(inner)) == 0) {
+                        tree.mergeFirstChild(pair);
+                    }
+                    attach = pair;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported structure character '" + structure.charAt(i)
+                            + "' at " + i);
+            }
+        }
+        if (pairStackSize > 0) {
+            throw new IllegalArgumentException("Unbalanced opening bracket");
+        }
+        if (unary != ContractedTree.NONE) {
+            attach = unary;
+        }
+        tree.addNode(attach);
+        tree.compact();
+        tree.trimToSize();
+        return tree;
+    }
+
+    /**
+     * Converts a labeled compact contracted tree to an RNA sequence and secondary structure.
+     *
+     * @param tree Compact contracted tree.
+     * @return RNA. 0: Sequence. 1: Structure.
+     */
+    public static String[] treeToRNA(final ContractedTree tree) {
+        final StringBuilder seqBuilder = new StringBuilder();
+        final StringBuilder strucBuilder = new StringBuilder();
+        if (tree.size() == 0) {
+            return new String[]{"", ""};
+        }
+        /* Non-negative entries are nodes to be visited, negative entries ~node close the pairs of a binary node. */
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            if (stackSize + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            final int entry = stack[--stackSize];
+            if (entry < 0) {
+                final int node = ~entry;
+                for (int i = tree.getLabelLength(node) - 1; i >= 0; i--) {
+                    seqBuilder.append(PAIR_CLOSING[HuffmanMaps.binaryIndex(tree.getLabelSymbol(node, i))]);
+                    strucBuilder.append(')');
+                }
+                continue;
+            }
+            final int childCount = tree.getChildCount(entry);
+            if (childCount == 1) {
+                for (int i = 0; i < tree.getLabelLength(entry); i++) {
+                    seqBuilder.append(Character.toUpperCase(tree.getLabelSymbol(entry, i)));
+                    strucBuilder.append('.');
+                }
+                stack[stackSize++] = tree.getFirstChild(entry);
+            } else if (childCount == 2) {
+                for (int i = 0; i < tree.getLabelLength(entry); i++) {
+                    seqBuilder.append(PAIR_OPENING[HuffmanMaps.binaryIndex(tree.getLabelSymbol(entry, i))]);
+                    strucBuilder.append('(');
+                }
+                stack[stackSize++] = tree.getSecondChild(entry);
+                stack[stackSize++] = ~entry;
+                stack[stackSize++] = tree.getFirstChild(entry);
+            }
+        }
+        return new String[]{seqBuilder.toString(), strucBuilder.toString()};
+    }
+}
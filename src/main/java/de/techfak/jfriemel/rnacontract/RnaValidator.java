@@ -0,0 +1,230 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.util.Arrays;
+
+/**
+ * Checks an RNA record before it is compressed, in one pass over the sequence and the structure with a table lookup
+ * per character: bases must be A, C, G or U in any case, the structure must consist of balanced brackets and dots of
+ * the length of the sequence, optionally followed by whitespace and a comment such as the free energy, and every pair
+ * must be canonical (A-U, C-G or G-U). The first error is reported with
+ * its line and column, so an invalid record fails with a precise message instead of an exception deep inside the tree
+ * builder, or, for a non-canonical pair, a silently changed base. What happens to invalid records is set by a Policy.
+ * A validator for codecs with the exception stream (see CodecOptions.isExceptions()) accepts every printable ASCII
+ * character as a base and non-canonical pairs, and only rejects errors of the structure. Instances are immutable and
+ * can be shared between threads.
+ */
+public class RnaValidator {
+
+    /** Validator that rejects every invalid record, used unless another policy is chosen. */
+    public static final RnaValidator DEFAULT = new RnaValidator(Policy.REJECT);
+
+    /**
+     * Handling of invalid records.
+     */
+    public enum Policy {
+        /** Fail with the position of the first error. */
+        REJECT,
+        /** Read T as U, e.g. for DNA input, and reject other errors. The decompressed record contains U. */
+        MAP_T_TO_U,
+        /** Write invalid records of a batch to a side file with the position of their first error and go on. */
+        ESCAPE
+    }
+
+    /**
+     * Invalid record, with the position of its first error.
+     */
+    public static final class InvalidRnaException extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long line;
+        private final int column;
+
+        InvalidRnaException(final long line, final int column, final String message) {
+            super("Line " + line + ", column " + column + ": " + message);
+            this.line = line;
+            this.column = column;
+        }
+
+        /**
+         * @return Line of the first error in the input, starting at 1.
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * @return Column of the first error in its line, starting at 1.
+         */
+        public int getColumn() {
+            return column;
+        }
+    }
+
+    private static final int INVALID = 0;
+    private static final int A = 1;
+    private static final int C = 2;
+    private static final int G = 3;
+    private static final int U = 4;
+    private static final int T = 5;
+    private static final int UNPAIRED = 1;
+    private static final int OPENING = 2;
+    private static final int CLOSING = 3;
+
+    /* Class of every ASCII character as a base and as a structure character. */
+    private static final byte[] BASES = new byte[128];
+    private static final byte[] BRACKETS = new byte[128];
+    /* Bit 6 * opening + closing is set for the canonical pairs of two base classes; T pairs like U. */
+    private static final long CANONICAL_PAIRS;
+    /* The same without T, which the tree cannot store: the pairs accepted by isCanonicalPair(). */
+    private static final long CANONICAL_RNA_PAIRS;
+
+    static {
+        final char[] bases = {'a', 'c', 'g', 'u', 't'};
+        for (int i = 0; i < bases.length; i++) {
+            BASES[bases[i]] = (byte) (A + i);
+            BASES[Character.toUpperCase(bases[i])] = (byte) (A + i);
+        }
+        BRACKETS['.'] = UNPAIRED;
+        BRACKETS['('] = OPENING;
+        BRACKETS[')'] = CLOSING;
+        final int[][] pairs = {{A, U}, {U, A}, {C, G}, {G, C}, {G, U}, {U, G}, {A, T}, {T, A}, {G, T}, {T, G}};
+        long canonical = 0;
+        long canonicalRna = 0;
+        for (final int[] pair : pairs) {
+            canonical |= 1L << (6 * pair[0] + pair[1]);
+            if (pair[0] != T && pair[1] != T) {
+                canonicalRna |= 1L << (6 * pair[0] + pair[1]);
+            }
+        }
+        CANONICAL_PAIRS = canonical;
+        CANONICAL_RNA_PAIRS = canonicalRna;
+    }
+
+    private final Policy policy;
+    private final boolean exceptions;
+
+    /**
+     * @param policy Handling of invalid records.
+     */
+    public RnaValidator(final Policy policy) {
+        this(policy, false);
+    }
+
+    /**
+     * @param policy     Handling of invalid records.
+     * @param exceptions True to accept the bases and pairs stored in the exception stream; False to accept only
+     *                   canonical data.
+     */
+    public RnaValidator(final Policy policy, final boolean exceptions) {
+        this.policy = policy;
+        this.exceptions = exceptions;
+    }
+
+    /**
+     * @return Handling of invalid records.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Checks a single-record file, whose sequence is the first and whose structure is the second line.
+     *
+     * @param sequence  RNA sequence.
+     * @param structure RNA secondary structure.
+     * @return The sequence to be compressed (see validate(CharSequence, CharSequence, long, long)).
+     * @throws InvalidRnaException If the record is invalid.
+     */
+    public CharSequence validate(final CharSequence sequence, final CharSequence structure) {
+        return validate(sequence, structure, 1, 2);
+    }
+
+    /**
+     * Checks an RNA record. Nothing is copied unless T is mapped to U.
+     *
+     * @param sequence      RNA sequence.
+     * @param structure     RNA secondary structure.
+     * @param sequenceLine  Line of the sequence in the input, for error messages.
+     * @param structureLine Line of the structure in the input, for error messages.
+     * @return The sequence to be compressed: the given one, or a copy with every T replaced by U if the policy is
+     * MAP_T_TO_U and the sequence contains T.
+     * @throws InvalidRnaException If the record is invalid, also with the ESCAPE policy, whose records are escaped by
+     *                             the caller.
+     */
+    public CharSequence validate(final CharSequence sequence, final CharSequence structure, final long sequenceLine,
+                                 final long structureLine) {
+        final int length = Math.min(sequence.length(), structure.length());
+        final boolean mapThymine = policy == Policy.MAP_T_TO_U;
+        /* Positions of the open pairs. */
+        int[] openPairs = new int[16];
+        int depth = 0;
+        boolean thymine = false;
+        for (int i = 0; i < length; i++) {
+            final char base = sequence.charAt(i);
+            final char bracket = structure.charAt(i);
+            final int baseClass = base < BASES.length ? BASES[base] : INVALID;
+            final int bracketClass = bracket < BRACKETS.length ? BRACKETS[bracket] : INVALID;
+            if (baseClass == INVALID && !(exceptions && base > ' ' && base < 0x7F)
+                    || baseClass == T && !mapThymine && !exceptions) {
+                throw new InvalidRnaException(sequenceLine, i + 1, "Unsupported base " + quote(base)
+                        + (baseClass == T ? "; use MAP_T_TO_U to read T as U" : ""));
+            }
+            thymine |= baseClass == T && mapThymine;
+            if (bracketClass == OPENING) {
+                if (depth == openPairs.length) {
+                    openPairs = Arrays.copyOf(openPairs, depth << 1);
+                }
+                openPairs[depth++] = i;
+            } else if (bracketClass == CLOSING) {
+                if (depth == 0) {
+                    throw new InvalidRnaException(structureLine, i + 1, "Unbalanced closing bracket");
+                }
+                final int opening = openPairs[--depth];
+                final int openingClass = BASES[sequence.charAt(opening)];
+                if (!exceptions && (CANONICAL_PAIRS >>> (6 * openingClass + baseClass) & 1) == 0) {
+                    throw new InvalidRnaException(structureLine, i + 1, "Non-canonical pair "
+                            + sequence.charAt(opening) + '-' + base + " with column " + (opening + 1));
+                }
+            } else if (bracketClass == INVALID) {
+                throw new InvalidRnaException(structureLine, i + 1, "Unsupported structure character "
+                        + quote(bracket));
+            }
+        }
+        /* Anything after whitespace following the structure is ignored, e.g. the free energy printed by RNAfold. */
+        if (structure.length() < sequence.length() || structure.length() > length
+                && structure.charAt(length) != ' ' && structure.charAt(length) != '\t') {
+            throw new InvalidRnaException(structureLine, length + 1, "Structure is "
+                    + (structure.length() < sequence.length() ? "shorter" : "longer") + " than the sequence ("
+                    + structure.length() + " and " + sequence.length() + " characters)");
+        }
+        if (depth > 0) {
+            throw new InvalidRnaException(structureLine, openPairs[0] + 1, "Unbalanced opening bracket");
+        }
+        return thymine ? mapThymine(sequence) : sequence;
+    }
+
+    /**
+     * @param opening Base at the opening bracket, in any case.
+     * @param closing Base at the closing bracket, in any case.
+     * @return True, if both bases form a canonical pair of A, C, G and U; False, otherwise, also for pairs with T,
+     * which only the validator accepts when it maps T to U.
+     */
+    static boolean isCanonicalPair(final char opening, final char closing) {
+        return opening < BASES.length && closing < BASES.length
+                && (CANONICAL_RNA_PAIRS >>> (6 * BASES[opening] + BASES[closing]) & 1) != 0;
+    }
+
+    private static CharSequence mapThymine(final CharSequence sequence) {
+        final char[] mapped = new char[sequence.length()];
+        for (int i = 0; i < mapped.length; i++) {
+            final char base = sequence.charAt(i);
+            mapped[i] = base == 't' ? 'u' : base == 'T' ? 'U' : base;
+        }
+        return new String(mapped);
+    }
+
+    private static String quote(final char c) {
+        return c >= 0x20 && c < 0x7F ? "'" + c + "'" : String.format("U+%04X", (int) c);
+    }
+}
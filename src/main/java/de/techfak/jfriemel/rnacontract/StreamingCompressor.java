@@ -0,0 +1,457 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Compresses an RNA record with the alternative method of RnaCodec while reading it, without holding the sequence,
+ * the structure or the contracted tree in memory. Produces exactly the bits of RnaCodec.compress().
+ * <p>
+ * In the alternative method every node is written in preorder as its type, its label and one bit per child. The
+ * label of a binary node is only known once its pair has closed (contractions and G-U pairs depend on the closing
+ * bracket), so the bits of every open pair's content are collected in a rope and attached to its parent when the pair
+ * closes. Unpaired bases and pairs outside of all brackets are written to the output stream right away. Memory
+ * therefore tracks the nesting depth plus the compressed size of the largest top-level pair, not the sequence length.
+ */
+public class StreamingCompressor {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /* Number of buffered top-level bits at which they are written to the output stream. */
+    private static final long FLUSH_BITS = 1L << 19;
+
+    private final int[][] unaryCodes;
+    private final int[][] binaryCodes;
+
+    /**
+     * @param codec Codec with the alternative method and Huffman codes (see supports()).
+     */
+    public StreamingCompressor(final RnaCodec codec) {
+        if (!supports(codec.getOptions())) {
+            throw new IllegalArgumentException("Streaming compression requires the alternative method with Huffman "
+                    + "codes");
+        }
+        unaryCodes = codec.getHuffmanMaps().getUnaryCodes();
+        binaryCodes = codec.getHuffmanMaps().getBinaryCodes();
+    }
+
+    /**
+     * @param options Options of a codec.
+     * @return True, if records of the codec can be compressed while they are read; False, otherwise.
+     */
+    public static boolean supports(final CodecOptions options) {
+        return options.isAlternative() && !options.isRangeCoder() && !options.isDag()
+                && options.getBlockSize() == 0 && !options.isExceptions();
+    }
+
+    /**
+     * Number of bits written by a compression together with the statistics of the contracted tree.
+     */
+    public static final class Result {
+
+        public final long bits;
+        public final CodecStatistics statistics;
+
+        Result(final long bits, final CodecStatistics statistics) {
+            this.bits = bits;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Compresses a .txt RNA file, whose first line is the sequence and whose second line is the structure. The file is
+     * read through two readers, one per line, so neither line is held in memory.
+     *
+     * @param path   Path of the .txt file.
+     * @param output Stream the compressed bits are written to, the last byte padded with zeros.
+     * @return Number of written bits and statistics.
+     * @throws IOException If the file cannot be read or the output cannot be written.
+     */
+    public Result compressFile(final String path, final OutputStream output) throws IOException {
+        try (Reader sequence = new FileReader(path); Reader structure = new FileReader(path)) {
+            final LineReader structureLine = new LineReader(structure);
+            structureLine.skipLine();
+            return new Encoder(new LineReader(sequence), structureLine, output).run();
+        }
+    }
+
+    /**
+     * Compresses an RNA sequence with the corresponding secondary structure. Both are read up to the end of their
+     * first line. Structure characters beyond the end of the sequence are ignored.
+     *
+     * @param sequence  Reader of the RNA sequence.
+     * @param structure Reader of the RNA secondary structure.
+     * @param output    Stream the compressed bits are written to, the last byte padded with zeros.
+     * @return Number of written bits and statistics.
+     * @throws IOException If an input cannot be read or the output cannot be written.
+     */
+    public Result compress(final Reader sequence, final Reader structure, final OutputStream output)
+            throws IOException {
+        return new Encoder(new LineReader(sequence), new LineReader(structure), output).run();
+    }
+
+    /**
+     * State of a single compression.
+     */
+    private final class Encoder {
+
+        private static final int END = -1;
+
+        private final LineReader sequence;
+        private final LineReader structure;
+        private final OutputStream output;
+
+        private final Deque<Frame> openPairs = new ArrayDeque<>();
+        /* Bits outside of all pairs, not yet written to the output stream. */
+        private final Rope topLevel = new Rope();
+        private final BitWriter outputBuffer = new BitWriter(FLUSH_BITS + 64);
+        private long writtenBits;
+
+        /* Pair that closed at the previous position and is written or contracted once the next position is known. */
+        private Frame closed;
+        private boolean unaryOpen;
+        private int unaryPrevious;
+
+        private long unaryNodes;
+        private long binaryNodes;
+        private long leaves;
+
+        Encoder(final LineReader sequence, final LineReader structure, final OutputStream output) {
+            this.sequence = sequence;
+            this.structure = structure;
+            this.output = output;
+        }
+
+        Result run() throws IOException {
+            long position = 0;
+            while (true) {
+                final int base = sequence.next();
+                int bracket = structure.next();
+                if (base == END) {
+                    bracket = END;
+                } else if (bracket == END) {
+                    throw new IllegalArgumentException("Structure ends before the sequence at " + position);
+                } else if (bracket != '.' && bracket != '(' && bracket != ')') {
+                    throw new IllegalArgumentException("Unsupported structure character '" + (char) bracket
+                            + "' at " + position);
+                }
+                resolve(bracket);
+                if (bracket == END) {
+                    break;
+                }
+                final char symbol = Character.toLowerCase((char) base);
+                if (bracket == '.') {
+                    unpaired(symbol);
+                } else if (bracket == '(') {
+                    openPairs.push(new Frame(pairSymbol(symbol, position)));
+                } else {
+                    closePair(symbol, position);
+                }
+                if (openPairs.isEmpty() && topLevel.size() >= FLUSH_BITS) {
+                    flush();
+                }
+                position++;
+            }
+            if (!openPairs.isEmpty()) {
+                throw new IllegalArgumentException("Unbalanced opening bracket");
+            }
+            if (unaryNodes + binaryNodes == 0) {
+                leaves = 1;
+            }
+            flush();
+            if (outputBuffer.size() > 0) {
+                outputBuffer.writeTo(output);
+            }
+            output.flush();
+            return new Result(writtenBits, new CodecStatistics(1, unaryNodes + binaryNodes + leaves, unaryNodes,
+                    binaryNodes));
+        }
+
+        /**
+         * Completes the unary node or the closed pair preceding the current position.
+         *
+         * @param bracket Structure character at the current position, or END.
+         */
+        private void resolve(final int bracket) {
+            if (unaryOpen && bracket != '.') {
+                final Rope target = target();
+                writeCode(target, unaryCodes[unaryPrevious][HuffmanMaps.UNARY_SEPARATOR]);
+                target.writeBit(bracket == '(');
+                if (bracket != '(') {
+                    leaves++;
+                }
+                unaryOpen = false;
+            }
+            if (closed != null) {
+                final Frame pair = closed;
+                closed = null;
+                if (bracket == ')' && !openPairs.isEmpty() && openPairs.peek().content.isEmpty()) {
+                    /* The pair is the only content of the enclosing pair: contract both into one node. */
+                    openPairs.peek().contract(pair);
+                } else {
+                    writePair(pair, target(), bracket == '.' || bracket == '(');
+                }
+            }
+        }
+
+        private void unpaired(final char symbol) {
+            final Rope target = target();
+            if (!unaryOpen) {
+                target.writeBit(false);
+                unaryPrevious = HuffmanMaps.UNARY_SEPARATOR;
+                unaryOpen = true;
+                unaryNodes++;
+            }
+            final int index = HuffmanMaps.unaryIndex(symbol);
+            if (index < 0 || index == HuffmanMaps.UNARY_SEPARATOR) {
+                throw new IllegalArgumentException("Unsupported symbol '" + symbol + "'");
+            }
+            writeCode(target, unaryCodes[unaryPrevious][index]);
+            unaryPrevious = index;
+        }
+
+        private void closePair(final char symbol, final long position) {
+            if (openPairs.isEmpty()) {
+                throw new IllegalArgumentException("Unbalanced closing bracket at " + position);
+            }
+            final Frame pair = openPairs.pop();
+            /* The first label symbol of an open pair is the one of its opening base (see pairSymbol()). */
+            final char opening = "aucg".charAt("pqrs".indexOf(pair.label[0]));
+            if (!RnaValidator.isCanonicalPair(opening, symbol)) {
+                throw new IllegalArgumentException("Non-canonical pair " + opening + '-' + symbol + " at " + position);
+            }
+            /* Since G and U have two possible pairings, the key for the corresponding node might need to be altered. */
+            if (symbol == 'u' && pair.label[0] == 's') {
+                pair.label[0] = 'y';
+            } else if (symbol == 'g' && pair.label[0] == 'q') {
+                pair.label[0] = 'x';
+            }
+            closed = pair;
+        }
+
+        /**
+         * Writes a binary node followed by its first subtree.
+         *
+         * @param pair          Closed pair.
+         * @param target        Rope the node is written to.
+         * @param secondNonLeaf True, if the second child of the node is not a leaf; False, otherwise.
+         */
+        private void writePair(final Frame pair, final Rope target, final boolean secondNonLeaf) {
+            target.writeBit(true);
+            int previous = HuffmanMaps.BINARY_SEPARATOR;
+            for (int i = 0; i < pair.labelLength; i++) {
+                final int current = HuffmanMaps.binaryIndex((char) pair.label[i]);
+                writeCode(target, binaryCodes[previous][current]);
+                previous = current;
+            }
+            writeCode(target, binaryCodes[previous][HuffmanMaps.BINARY_SEPARATOR]);
+            final boolean firstNonLeaf = !pair.content.isEmpty();
+            target.writeBit(firstNonLeaf);
+            target.writeBit(secondNonLeaf);
+            target.append(pair.content);
+            binaryNodes++;
+            leaves += (firstNonLeaf ? 0 : 1) + (secondNonLeaf ? 0 : 1);
+        }
+
+        private Rope target() {
+            return openPairs.isEmpty() ? topLevel : openPairs.peek().content;
+        }
+
+        private void flush() throws IOException {
+            writtenBits += topLevel.size();
+            topLevel.drainTo(outputBuffer);
+            outputBuffer.flushBytes(output);
+        }
+    }
+
+    private static void writeCode(final Rope target, final int code) {
+        target.writeBits(code >>> 8, code & 0xFF);
+    }
+
+    private static byte pairSymbol(final char base, final long position) {
+        switch (base) {
+            case 'a':
+                return 'p';
+            case 'u':
+                return 'q';
+            case 'c':
+                return 'r';
+            case 'g':
+                return 's';
+            default:
+                throw new IllegalArgumentException("Unsupported paired base '" + base + "' at " + position);
+        }
+    }
+
+    /**
+     * An open pair: the binary symbols of the node it becomes and the bits of its content.
+     */
+    private static final class Frame {
+
+        private byte[] label;
+        private int labelLength;
+        private Rope content = new Rope();
+
+        Frame(final byte symbol) {
+            label = new byte[]{symbol};
+            labelLength = 1;
+        }
+
+        /**
+         * Takes over the label and the content of a closed pair that is the only content of this pair.
+         *
+         * @param inner Closed inner pair.
+         */
+        void contract(final Frame inner) {
+            if (labelLength + inner.labelLength > label.length) {
+                label = Arrays.copyOf(label, Math.max(label.length << 1, labelLength + inner.labelLength));
+            }
+            System.arraycopy(inner.label, 0, label, labelLength, inner.labelLength);
+            labelLength += inner.labelLength;
+            content = inner.content;
+        }
+    }
+
+    /**
+     * Bit sequence made of linked segments, so that sequences can be concatenated without copying.
+     */
+    private static final class Rope {
+
+        private Segment head;
+        private Segment tail;
+        private long size;
+
+        void writeBit(final boolean bit) {
+            if (tail == null) {
+                head = tail = new Segment();
+            }
+            tail.bits.writeBit(bit);
+            size++;
+        }
+
+        void writeBits(final long value, final int length) {
+            if (tail == null) {
+                head = tail = new Segment();
+            }
+            tail.bits.writeBits(value, length);
+            size += length;
+        }
+
+        /**
+         * Appends the segments of another rope, which must not be used afterwards.
+         *
+         * @param other Rope to be appended.
+         */
+        void append(final Rope other) {
+            if (other.head == null) {
+                return;
+            }
+            if (head == null) {
+                head = other.head;
+            } else {
+                tail.next = other.head;
+            }
+            tail = other.tail;
+            size += other.size;
+        }
+
+        long size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Moves all bits to a bit buffer and empties the rope.
+         *
+         * @param target Bit buffer the bits are appended to.
+         */
+        void drainTo(final BitWriter target) {
+            for (Segment segment = head; segment != null; segment = segment.next) {
+                target.append(segment.bits);
+            }
+            head = tail = null;
+            size = 0;
+        }
+    }
+
+    private static final class Segment {
+
+        private final BitWriter bits = new BitWriter(128);
+        private Segment next;
+    }
+
+    /**
+     * Reads the characters of a single line in chunks. Accepts the same line terminators as BufferedReader.readLine().
+     */
+    private static final class LineReader {
+
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private boolean endOfLine;
+
+        LineReader(final Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return Next character of the line; -1 at the end of the line.
+         * @throws IOException If the reader fails.
+         */
+        int next() throws IOException {
+            if (endOfLine) {
+                return -1;
+            }
+            final int c = read();
+            if (c == '\n' || c == '\r' || c < 0) {
+                endOfLine = true;
+                return -1;
+            }
+            return c;
+        }
+
+        /**
+         * Skips the current line, so that next() returns the characters of the following line.
+         *
+         * @throws IOException If the reader fails.
+         */
+        void skipLine() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c >= 0 && c != '\n' && c != '\r');
+            if (c == '\r' && peek() == '\n') {
+                position++;
+            }
+        }
+
+        private int read() throws IOException {
+            final int c = peek();
+            if (c >= 0) {
+                position++;
+            }
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position];
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package de.techfak.jfriemel.rnacontract;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Decompresses a record compressed with the alternative method of RnaCodec without building its contracted tree. The
+ * alternative method stores the nodes in preorder, which is also the order of the RNA, so every base and bracket is
+ * written to its sink as soon as its node is decoded. Only the closing bases of the open pairs are kept on a stack
+ * until the inner part of their pair is complete; memory therefore tracks the nesting depth, not the sequence length.
+ * Produces exactly the RNA of RnaCodec.decompress().
+ */
+public class StreamingDecompressor {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    private static final char[] UNARY_BASES = new char[HuffmanMaps.UNARY_SEPARATOR];
+
+    static {
+        for (int i = 0; i < UNARY_BASES.length; i++) {
+            UNARY_BASES[i] = Character.toUpperCase(HuffmanMaps.UNARY_SYMBOLS[i]);
+        }
+    }
+
+    private final int[][] unaryTable;
+    private final int[][] binaryTable;
+    private final int unaryPeekLength;
+    private final int binaryPeekLength;
+
+    /**
+     * @param codec Codec with the alternative method and Huffman codes (see supports()).
+     */
+    public StreamingDecompressor(final RnaCodec codec) {
+        if (!supports(codec.getOptions())) {
+            throw new IllegalArgumentException("Streaming decompression requires the alternative method with Huffman "
+                    + "codes");
+        }
+        final HuffmanMaps huffmanMaps = codec.getHuffmanMaps();
+        unaryTable = huffmanMaps.getUnaryTable();
+        binaryTable = huffmanMaps.getBinaryTable();
+        unaryPeekLength = huffmanMaps.getUnaryPeekLength();
+        binaryPeekLength = huffmanMaps.getBinaryPeekLength();
+    }
+
+    /**
+     * @param options Options of a codec.
+     * @return True, if records of the codec can be decompressed while they are written; False, otherwise.
+     */
+    public static boolean supports(final CodecOptions options) {
+        return options.isAlternative() && !options.isRangeCoder() && !options.isDag()
+                && options.getBlockSize() == 0 && !options.isExceptions();
+    }
+
+    /**
+     * Decompresses a record into the two lines of a .txt RNA file. Both lines are written while decoding, so the
+     * record is decoded twice: once for the sequence and once for the structure.
+     *
+     * @param sequencePass  Compressed record, read while writing the sequence.
+     * @param structurePass The same compressed record, read while writing the structure.
+     * @param output        Writer the sequence, a line break and the structure are written to.
+     * @return Statistics of the decompressed record.
+     * @throws IOException If the output cannot be written.
+     */
+    public CodecStatistics decompressLines(final BitReader sequencePass, final BitReader structurePass,
+                                           final Writer output) throws IOException {
+        final CodecStatistics statistics = decompress(sequencePass, output, null);
+        output.write('\n');
+        decompress(structurePass, null, output);
+        return statistics;
+    }
+
+    /**
+     * Decompresses a record, writing its sequence and its structure to separate sinks.
+     *
+     * @param compressed Compressed record.
+     * @param sequence   Writer for the RNA sequence, or null if the sequence is not needed.
+     * @param structure  Writer for the RNA secondary structure, or null if the structure is not needed.
+     * @return Statistics of the decompressed record.
+     * @throws IOException If a writer fails.
+     */
+    public CodecStatistics decompress(final BitReader compressed, final Writer sequence, final Writer structure)
+            throws IOException {
+        return new Decoder(compressed, new Sink(sequence), new Sink(structure)).run();
+    }
+
+    /**
+     * State of a single decompression.
+     */
+    private final class Decoder {
+
+        private final BitReader compressed;
+        private final Sink sequence;
+        private final Sink structure;
+
+        /* Symbol indices of the labels of all open binary nodes, the innermost label on top. */
+        private byte[] labels = new byte[64];
+        private int labelsSize;
+        /* One entry per open binary node: its label length, complemented if its second child is a leaf. */
+        private int[] pending = new int[16];
+        private int pendingSize;
+
+        private long unaryNodes;
+        private long binaryNodes;
+        private long leaves;
+
+        Decoder(final BitReader compressed, final Sink sequence, final Sink structure) {
+            this.compressed = compressed;
+            this.sequence = sequence;
+            this.structure = structure;
+        }
+
+        CodecStatistics run() throws IOException {
+            boolean open = true;
+            while (open && compressed.hasRemaining()) {
+                if (!compressed.readBit()) {
+                    unaryNodes++;
+                    unaryLabel();
+                    if (compressed.readBit()) {
+                        continue;
+                    }
+                    leaves++;
+                } else {
+                    binaryNodes++;
+                    final int length = binaryLabel();
+                    final boolean left = compressed.readBit();
+                    final boolean right = compressed.readBit();
+                    if (left) {
+                        push(right ? length : ~length);
+                        continue;
+                    }
+                    leaves++;
+                    closePairs(length);
+                    if (right) {
+                        continue;
+                    }
+                    leaves++;
+                }
+                open = false;
+                while (pendingSize > 0) {
+                    final int entry = pending[--pendingSize];
+                    if (entry >= 0) {
+                        closePairs(entry);
+                        open = true;
+                        break;
+                    }
+                    closePairs(~entry);
+                    leaves++;
+                }
+            }
+            sequence.flush();
+            structure.flush();
+            return new CodecStatistics(1, unaryNodes + binaryNodes + leaves, unaryNodes, binaryNodes);
+        }
+
+        private void unaryLabel() throws IOException {
+            final int[][] tables = unaryTable;
+            int context = HuffmanMaps.UNARY_SEPARATOR;
+            while ((context = RnaCodec.decodeSymbol(compressed, tables[context], unaryPeekLength))
+                    != HuffmanMaps.UNARY_SEPARATOR) {
+                sequence.append(UNARY_BASES[context]);
+                structure.append('.');
+            }
+        }
+
+        /**
+         * Writes the opening brackets of a binary node and keeps its label for the closing brackets.
+         *
+         * @return Length of the label.
+         */
+        private int binaryLabel() throws IOException {
+            final int[][] tables = binaryTable;
+            int length = 0;
+            int context = HuffmanMaps.BINARY_SEPARATOR;
+            while ((context = RnaCodec.decodeSymbol(compressed, tables[context], binaryPeekLength))
+                    != HuffmanMaps.BINARY_SEPARATOR) {
+                sequence.append(RnaCodec.PAIR_OPENING[context]);
+                structure.append('(');
+                if (labelsSize == labels.length) {
+                    labels = Arrays.copyOf(labels, labelsSize << 1);
+                }
+                labels[labelsSize++] = (byte) context;
+                length++;
+            }
+            return length;
+        }
+
+        /**
+         * Writes the closing brackets of the innermost open binary node and removes its label.
+         *
+         * @param length Length of the label.
+         */
+        private void closePairs(final int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                sequence.append(RnaCodec.PAIR_CLOSING[labels[--labelsSize]]);
+                structure.append(')');
+            }
+        }
+
+        private void push(final int entry) {
+            if (pendingSize == pending.length) {
+                pending = Arrays.copyOf(pending, pendingSize << 1);
+            }
+            pending[pendingSize++] = entry;
+        }
+    }
+
+    /**
+     * Buffers characters for a writer, which may be null to discard them.
+     */
+    private static final class Sink {
+
+        private final Writer writer;
+        private final char[] buffer;
+        private int size;
+
+        Sink(final Writer writer) {
+            this.writer = writer;
+            this.buffer = writer == null ? null : new char[BUFFER_SIZE];
+        }
+
+        void append(final char c) throws IOException {
+            if (writer == null) {
+                return;
+            }
+            if (size == buffer.length) {
+                flush();
+            }
+            buffer[size++] = c;
+        }
+
+        void flush() throws IOException {
+            if (size > 0) {
+                writer.write(buffer, 0, size);
+                size = 0;
+            }
+        }
+    }
+}
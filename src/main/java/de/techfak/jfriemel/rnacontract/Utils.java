@@ -2,21 +2,26 @@ package de.techfak.jfriemel.rnacontract;
 
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.stream.*;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class Utils {
 
@@ -25,14 +30,14 @@ public class Utils {
     }
 
     /**
-     * Prints a list of booleans in humanly readable form. true -> 1, false -> 0.
+     * Prints a bit sequence in humanly readable form. true -> 1, false -> 0.
      *
-     * @param bits List of booleans, where each boolean corresponds to one bit.
+     * @param bits Bit sequence.
      */
-    public static void printBits(final List<Boolean> bits) {
+    public static void printBits(final BitWriter bits) {
         StringBuilder outputBuilder = new StringBuilder();
-        for (final Boolean bit : bits) {
-            if (bit) {
+        for (long i = 0; i < bits.size(); i++) {
+            if (bits.getBit(i)) {
                 outputBuilder.append('1');
             } else {
                 outputBuilder.append('0');
@@ -62,6 +67,24 @@ public class Utils {
         return paths;
     }
 
+    /**
+     * Returns the size of a file, or the total size of all .txt files in a directory.
+     *
+     * @param path Path of the file or directory.
+     * @return Size in bytes.
+     */
+    public static long getSize(final String path) {
+        final File file = new File(path);
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        long size = 0;
+        for (final String child : getDirectoryList(path, ".txt")) {
+            size += new File(child).length();
+        }
+        return size;
+    }
+
     /**
      * Reads the first two lines of a text file.
      *
@@ -83,6 +106,27 @@ public class Utils {
         return result;
     }
 
+    /**
+     * Reads the first two lines of an ASCII text file without decoding or copying them: the file is memory-mapped and
+     * the lines are views of the mapping (see AsciiSequence).
+     *
+     * @param path Path to the input text file, at most 2 GiB.
+     * @return The first two lines of the input file; empty for missing lines.
+     */
+    public static AsciiSequence[] readAsciiFile(final String path) {
+        AsciiSequence[] result = null;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is larger than 2 GiB; please compress it with -a");
+            }
+            result = AsciiSequence.lines(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), 2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return result;
+    }
+
     /**
      * Writes a String to a text file.
      *
@@ -102,50 +146,33 @@ public class Utils {
     }
 
     /**
-     * Reads bits from a file into a list of booleans.
+     * Reads bits from a file. The file is memory-mapped, so its content is decoded directly from the page cache
+     * instead of being copied into the heap.
      *
      * @param path Path of the file.
-     * @return List of booleans.
+     * @return Bit reader over the file content.
      */
-    public static List<Boolean> readBits(final String path) {
-        List<Boolean> bits = new ArrayList<>();
+    public static BitReader readBits(final String path) {
+        MappedFile file = null;
         try {
-            InputStream inputStream = new FileInputStream(path);
-            byte[] bytes = inputStream.readAllBytes();
-            inputStream.close();
-            for (byte aByte : bytes) {
-                for (int bitIndex = 0; bitIndex < 8; bitIndex++) {
-                    bits.add((aByte & (byte) (128 / (1 << bitIndex))) != 0);
-                }
-            }
+            file = MappedFile.map(path);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(-1);
         }
-        return bits;
+        return file.bitReader(0, 8 * file.size());
     }
 
     /**
-     * Writes a list of booleans as bits to a file.
+     * Writes a bit sequence to a file. The last byte is padded with zeros.
      *
      * @param path Path of the file.
-     * @param bits List of booleans.
+     * @param bits Bit sequence.
      */
-    public static void writeBits(final String path, final List<Boolean> bits) {
-        while (bits.size() % 8 != 0) {
-            bits.add(false);
-        }
-        byte[] bytes = new byte[bits.size() / 8];
-        for (int byteIndex = 0; byteIndex < bytes.length; byteIndex++) {
-            for (int bitIndex = 0; bitIndex < 8; bitIndex++) {
-                if (bits.get(8 * byteIndex + bitIndex)) {
-                    bytes[byteIndex] |= (128 >> bitIndex);
-                }
-            }
-        }
+    public static void writeBits(final String path, final BitWriter bits) {
         try {
             OutputStream outputStream = new FileOutputStream(path);
-            outputStream.write(bytes);
+            bits.writeTo(outputStream);
             outputStream.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -186,32 +213,47 @@ public class Utils {
      */
     public static<T> String generateXML(Node<T> tree) {
         final StringBuilder xmlBuilder = new StringBuilder();
-        recursiveXMLGenerator(tree, xmlBuilder);
+        appendXML(tree, xmlBuilder);
         return xmlBuilder.toString();
     }
 
     /**
-     * Recursively builds an XML String from a tree.
+     * Appends the XML representation of a tree, walking it in preorder with an explicit stack, so the depth of the
+     * tree is not limited by the thread stack size.
      *
      * @param tree       Root of the tree.
      * @param xmlBuilder StringBuilder for the XML String.
      * @param <T>        Type of the node labels.
      */
-    private static<T> void recursiveXMLGenerator(final Node<T> tree, final StringBuilder xmlBuilder) {
-        T label = tree.key;
-        xmlBuilder.append('<');
-        if (tree.children.size() > 0) {
-            xmlBuilder.append(label);
-            xmlBuilder.append('>');
-            for (final Node<T> child : tree.children) {
-                recursiveXMLGenerator(child, xmlBuilder);
+    private static<T> void appendXML(final Node<T> tree, final StringBuilder xmlBuilder) {
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        /* closing.get(i): the i-th stack element (from the bottom) only needs its closing tag. */
+        final BitSet closing = new BitSet();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            final Node<T> node = stack.pop();
+            final T label = node.key;
+            if (closing.get(stack.size())) {
+                xmlBuilder.append("</");
+                xmlBuilder.append(label);
+                xmlBuilder.append('>');
+                continue;
+            }
+            xmlBuilder.append('<');
+            if (node.children.size() > 0) {
+                xmlBuilder.append(label);
+                xmlBuilder.append('>');
+                closing.set(stack.size());
+                stack.push(node);
+                final ListIterator<Node<T>> iterator = node.children.listIterator(node.children.size());
+                while (iterator.hasPrevious()) {
+                    closing.clear(stack.size());
+                    stack.push(iterator.previous());
+                }
+            } else {
+                xmlBuilder.append(label);
+                xmlBuilder.append("/>");
             }
-            xmlBuilder.append("</");
-            xmlBuilder.append(label);
-            xmlBuilder.append('>');
-        } else {
-            xmlBuilder.append(label);
-            xmlBuilder.append("/>");
         }
     }
 
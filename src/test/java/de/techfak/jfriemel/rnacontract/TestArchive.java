@@ -0,0 +1,164 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestArchive {
+
+    private static final String[][] RECORDS = {
+            {"tRNA-like", "CGCGCGCGCGCAGGACCCCGGGGCUAUUAGCUCAGUUUGGUUAGAGCGCACCCCUGAUAAGGGUGAGGUCGCUGAUUCGAAUUCAGCAUAGCCCA", "()()()()()(.)(.)..()(((((((..((((..........)))).(((((.......))))).....(((((.......))))))))))))."},
+            {"short", "ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).)."},
+            {"", "GU", "()"},
+            {"unpaired", "A", "."}};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testBatchRoundTrip() throws IOException {
+        final StringBuilder content = new StringBuilder("# comment\n");
+        for (final String[] record : RECORDS) {
+            if (!record[0].isEmpty()) {
+                content.append('>').append(record[0]).append('\n');
+            }
+            content.append(record[1]).append('\n').append(record[2]).append(" (-1.20)\n\n");
+        }
+        final Path input = directory.resolve("records.txt");
+        Files.write(input, content.toString().getBytes());
+        for (final CodecOptions options : new CodecOptions[]{CodecOptions.DEFAULT,
+                CodecOptions.DEFAULT.withAlternative(true), CodecOptions.DEFAULT.withReference(true),
+                CodecOptions.DEFAULT.withAlternative(true).withReference(true)}) {
+            final Path archive = directory.resolve("records.rnac");
+            final Path output = directory.resolve("decompressed.txt");
+            final RnaCodec codec = new RnaCodec(options);
+            assertEquals(RECORDS.length, BatchProcessor.compress(codec, input.toString(), archive.toString(), 3).records);
+            assertEquals(RECORDS.length, BatchProcessor.decompress(new RnaCodec(), archive.toString(), output.toString(), 3).records);
+            assertRecords(Files.readAllLines(output));
+            try (ArchiveReader reader = new ArchiveReader(archive.toString())) {
+                assertEquals(options.isReference(), reader.getOptions().isReference());
+            }
+        }
+    }
+
+    @Test
+    public void testFailedBatch() throws IOException {
+        final Path input = directory.resolve("records.txt");
+        Files.write(input, Arrays.asList(">valid", RECORDS[1][1], RECORDS[1][2], ">invalid", "GGANAGCC", "((.(.)))",
+                ">valid too", RECORDS[3][1], RECORDS[3][2]));
+        final Path archive = directory.resolve("records.rnac");
+        assertThrows(IOException.class, () -> BatchProcessor.compress(new RnaCodec(), input.toString(),
+                archive.toString(), 2));
+        assertFalse(Files.exists(archive));
+
+        /* A previous archive at the same path is not left behind either. */
+        Files.write(input, Arrays.asList(RECORDS[1][1], RECORDS[1][2]));
+        assertEquals(1, BatchProcessor.compress(new RnaCodec(), input.toString(), archive.toString(), 2).records);
+        Files.write(input, Arrays.asList(RECORDS[1][1], RECORDS[1][2], "GA", "()"));
+        assertThrows(IOException.class, () -> BatchProcessor.compress(new RnaCodec(), input.toString(),
+                archive.toString(), 2));
+        assertFalse(Files.exists(archive));
+    }
+
+    @Test
+    public void testBatchDirectory() throws IOException {
+        for (int i = 0; i < RECORDS.length; i++) {
+            Files.write(directory.resolve("record" + i + ".txt"), Arrays.asList(RECORDS[i][1], RECORDS[i][2]));
+        }
+        final Path archive = directory.resolve("directory.rnac");
+        final Path output = directory.resolve("directory.out");
+        assertEquals(RECORDS.length, BatchProcessor.compress(new RnaCodec(), directory.toString(), archive.toString(),
+                2).records);
+        assertEquals(RECORDS.length, BatchProcessor.decompress(new RnaCodec(), archive.toString(), output.toString(),
+                2).records);
+        final List<String> lines = Files.readAllLines(output);
+        for (int i = 0; i < RECORDS.length; i++) {
+            assertEquals(">" + directory.resolve("record" + i + ".txt"), lines.get(3 * i));
+            assertEquals(RECORDS[i][1], lines.get(3 * i + 1));
+            assertEquals(RECORDS[i][2], lines.get(3 * i + 2));
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        final RnaCodec codec = new RnaCodec(CodecOptions.DEFAULT.withAlternative(true));
+        final Path archive = directory.resolve("random.rnac");
+        try (ArchiveWriter writer = new ArchiveWriter(archive.toString(), codec.getOptions())) {
+            for (final String[] record : RECORDS) {
+                writer.write(record[0], codec.compress(record[1], record[2]).bits);
+            }
+        }
+        assertTrue(ArchiveReader.isArchive(archive.toString()));
+        try (ArchiveReader reader = new ArchiveReader(archive.toString())) {
+            assertEquals(RECORDS.length, reader.size());
+            assertTrue(reader.getOptions().isAlternative());
+            for (int i = RECORDS.length - 1; i >= 0; i--) {
+                final ArchiveReader.Entry entry = reader.get(i);
+                assertEquals(RECORDS[i][0], entry.name);
+                final RnaCodec.Decompressed rna = new RnaCodec(reader.getOptions()).decompress(entry.bits);
+                assertEquals(RECORDS[i][1], rna.sequence);
+                assertEquals(RECORDS[i][2], rna.structure);
+            }
+            assertThrows(IOException.class, () -> reader.get(RECORDS.length));
+        }
+    }
+
+    @Test
+    public void testMappedChunks() throws IOException {
+        final RnaCodec codec = new RnaCodec();
+        final Path archive = directory.resolve("chunks.rnac");
+        try (ArchiveWriter writer = new ArchiveWriter(archive.toString(), codec.getOptions())) {
+            for (final String[] record : RECORDS) {
+                writer.write(record[0], codec.compress(record[1], record[2]).bits);
+            }
+        }
+        final ArchiveReader reader = new ArchiveReader(MappedFile.map(archive.toString(), 3), archive.toString());
+        for (final String[] record : RECORDS) {
+            final ArchiveReader.Entry entry = reader.next();
+            assertEquals(record[0], entry.name);
+            assertArrayEquals(new String[]{record[1], record[2]}, codec.decompress(entry.bits).toArray());
+        }
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testSingleRecordFile() throws IOException {
+        final Path input = directory.resolve("single.txt");
+        Files.write(input, Arrays.asList(RECORDS[1][1], RECORDS[1][2]));
+        final Path archive = directory.resolve("single.rnac");
+        final Path legacy = directory.resolve("legacy.rnac");
+        final Path output = directory.resolve("single.out");
+        final RnaCodec codec = new RnaCodec();
+        RNAContract.compressFile(codec, input.toString(), archive.toString(), false);
+        Utils.writeBits(legacy.toString(), codec.compress(RECORDS[1][1], RECORDS[1][2]).bits);
+        assertFalse(ArchiveReader.isArchive(legacy.toString()));
+        for (final Path compressed : new Path[]{archive, legacy}) {
+            RNAContract.decompressFile(codec, compressed.toString(), output.toString(), -1, false);
+            assertEquals(Arrays.asList(RECORDS[1][1], RECORDS[1][2]), Files.readAllLines(output));
+        }
+    }
+
+    private static void assertRecords(final List<String> lines) {
+        int line = 0;
+        for (final String[] record : RECORDS) {
+            if (!record[0].isEmpty()) {
+                assertEquals(">" + record[0], lines.get(line++));
+            }
+            assertEquals(record[1], lines.get(line++));
+            assertEquals(record[2], lines.get(line++));
+        }
+        assertEquals(line, lines.size());
+    }
+}
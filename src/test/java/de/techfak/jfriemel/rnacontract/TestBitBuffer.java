@@ -0,0 +1,54 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestBitBuffer {
+
+    @Test
+    public void testByteLayout() {
+        BitWriter writer = new BitWriter();
+        writer.writeBit(true);
+        writer.writeBits(0b0110, 4);
+        writer.writeBits(0x1FF, 9);
+        assertEquals(14, writer.size());
+        assertArrayEquals(new byte[]{(byte) 0b10110111, (byte) 0b11111100}, writer.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        BitWriter writer = new BitWriter(1);
+        int[] values = new int[1000];
+        int[] lengths = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            lengths[i] = random.nextInt(33);
+            values[i] = lengths[i] == 0 ? 0 : random.nextInt() >>> (32 - lengths[i]);
+            writer.writeBits(values[i], lengths[i]);
+        }
+        BitWriter copy = new BitWriter();
+        copy.append(writer);
+        BitReader reader = copy.toReader();
+        assertEquals(writer.size(), reader.limit());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], reader.readBits(lengths[i]));
+        }
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void testLimit() {
+        BitWriter writer = new BitWriter();
+        writer.writeBits(0b101, 3);
+        BitReader reader = writer.toReader();
+        assertEquals(0b1010, reader.peekBits(4));
+        reader.skipBits(3);
+        assertThrows(IndexOutOfBoundsException.class, reader::readBit);
+    }
+}
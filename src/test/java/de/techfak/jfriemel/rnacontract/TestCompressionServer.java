@@ -0,0 +1,101 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCompressionServer {
+
+    private static final String SEQUENCE = "ACCGUGAGCCAUGUUAGGGA";
+    private static final String STRUCTURE = "..((((...)))..(.).).";
+
+    private CompressionServer server;
+    private Thread thread;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new CompressionServer(new RnaCodec(CodecOptions.DEFAULT.withAlternative(true)), 0);
+        thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        server.close();
+        thread.join();
+    }
+
+    @Test
+    public void testRequests() throws IOException {
+        try (CompressionClient client = new CompressionClient(server.getPort(), CodecOptions.DEFAULT)) {
+            final CompressionClient.Compressed compressed = client.compress(SEQUENCE, STRUCTURE);
+            assertTrue(compressed.options.isAlternative());
+            final RnaCodec local = new RnaCodec(compressed.options);
+            assertArrayEquals(local.compress(SEQUENCE, STRUCTURE).bits.toByteArray(), compressed.bits.toByteArray());
+            final RnaCodec.Decompressed rna = client.decompress(compressed.options, compressed.bits.toReader());
+            assertEquals(SEQUENCE, rna.sequence);
+            assertEquals(STRUCTURE, rna.structure);
+            assertEquals(compressed.statistics.nodes, rna.statistics.nodes);
+
+            /* Records of other codecs are decompressed with their own codec. */
+            final BitWriter standard = new RnaCodec().compress(SEQUENCE, STRUCTURE).bits;
+            assertEquals(STRUCTURE, client.decompress(CodecOptions.DEFAULT, standard.toReader()).structure);
+            assertEquals(RNAContract.createXML(SEQUENCE, STRUCTURE), client.createXML(SEQUENCE, STRUCTURE).xml);
+
+            /* A failed request is reported and the connection stays usable. */
+            assertThrows(IOException.class, () -> client.compress("AX", ".."));
+            assertEquals(SEQUENCE, client.decompress(compressed.options, compressed.bits.toReader()).sequence);
+        }
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final long seed = t;
+                results.add(executor.submit(() -> {
+                    final Random random = new Random(seed);
+                    try (CompressionClient client = new CompressionClient(server.getPort(), CodecOptions.DEFAULT)) {
+                        for (int n = 0; n < 50; n++) {
+                            final String[] rna = TestRNAContract.randomStructure(random, 300);
+                            final CompressionClient.Compressed compressed = client.compress(rna[0], rna[1]);
+                            final RnaCodec.Decompressed decompressed = client.decompress(compressed.options,
+                                    compressed.bits.toReader());
+                            if (!decompressed.sequence.equals(rna[0].toUpperCase())
+                                    || !decompressed.structure.equals(rna[1])) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCorpusBenchmark {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReport() throws IOException {
+        Files.write(directory.resolve("b.txt"), "ACCGUGAGCCAUGUUAGGGA\n..((((...)))..(.).).".getBytes());
+        Files.createDirectory(directory.resolve("sub"));
+        Files.write(directory.resolve("sub").resolve("a.txt"), "GGGAUCCCAUGU\n(((())))()()".getBytes());
+
+        final List<CorpusBenchmark.Result> results = new CorpusBenchmark(1).run(directory.toString());
+        assertEquals(15, results.size());
+        assertEquals("b.txt", results.get(0).file);
+        assertEquals("standard", results.get(0).codec);
+        assertEquals("alternative", results.get(1).codec);
+        assertEquals("standard-range", results.get(2).codec);
+        assertEquals("alternative-range", results.get(3).codec);
+        assertEquals("dag", results.get(4).codec);
+        assertEquals(directory.resolve("sub").resolve("a.txt").toString(),
+                directory.resolve(results.get(5).file).toString());
+
+        final CorpusBenchmark.Result total = results.get(10);
+        assertEquals(CorpusBenchmark.TOTAL, total.file);
+        assertEquals(32, total.bases);
+        assertEquals(2, total.statistics.records);
+        assertEquals(results.get(0).outputBits + results.get(5).outputBits, total.outputBits);
+        assertEquals(new RnaCodec().compress("GGGAUCCCAUGU", "(((())))()()").bits.size(),
+                results.get(5).outputBits);
+
+        final StringWriter csv = new StringWriter();
+        CorpusBenchmark.writeCsv(results, csv);
+        final String[] lines = csv.toString().split("\n");
+        assertEquals(16, lines.length);
+        assertTrue(lines[0].startsWith("file,codec,inputBytes,bases,outputBits,bitsPerBase"));
+        assertTrue(lines[15].startsWith("TOTAL,dag,"));
+
+        final StringWriter json = new StringWriter();
+        CorpusBenchmark.writeJson(results, 1, HuffmanMaps.DEFAULT.getId(), json);
+        assertTrue(json.toString().contains("\"file\": \"b.txt\", \"codec\": \"standard\""));
+        assertTrue(json.toString().contains("\"total\": [\n    {\"codec\": \"standard\""));
+    }
+}
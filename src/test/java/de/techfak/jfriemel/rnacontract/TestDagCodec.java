@@ -0,0 +1,61 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestDagCodec {
+
+    private static final RnaCodec CODEC = new RnaCodec(CodecOptions.DEFAULT.withDag(true));
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(19);
+        for (int n = 0; n < 200; n++) {
+            final String[] rna = n == 0 ? new String[]{"", ""} : TestRNAContract.randomStructure(random, 400);
+            final RnaCodec.Compressed compressed = CODEC.compress(rna[0], rna[1]);
+            final BitReader reader = compressed.bits.toReader();
+            final RnaCodec.Decompressed decompressed = CODEC.decompress(reader);
+            assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+            assertEquals(rna[1], decompressed.structure);
+            assertEquals(reader.limit(), reader.position());
+            assertEquals(compressed.statistics.nodes, decompressed.statistics.nodes);
+        }
+    }
+
+    @Test
+    public void testRepeatedHairpins() {
+        /* The same stem-loop enclosed by 50 different pairs. Only the enclosed parts are identical subtrees: the
+         * second child of every outer pair is the rest of the RNA. */
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            sequence.append(i % 2 == 0 ? "CAUAGGCGAAAACGCCAUG" : "GAUAGGCGAAAACGCCAUC");
+            structure.append("(...((((....))))..)");
+        }
+        final long standard = new RnaCodec().compress(sequence.toString(), structure.toString()).bits.size();
+        final BitWriter dag = CODEC.compress(sequence.toString(), structure.toString()).bits;
+        assertTrue(dag.size() * 2 < standard, dag.size() + " bits, standard " + standard);
+        final RnaCodec.Decompressed decompressed = CODEC.decompress(dag.toReader());
+        assertEquals(sequence.toString(), decompressed.sequence);
+        assertEquals(structure.toString(), decompressed.structure);
+    }
+
+    @Test
+    public void testInvalidReference() {
+        /* A new unary node with a non-leaf child, followed by a reference to that node, its own ancestor. */
+        final BitWriter bits = new BitWriter();
+        bits.writeBit(false);
+        bits.writeBit(false);
+        CODEC.compressNode(RnaCodec.buildCompactTree("a", "."), 0, true, bits);
+        bits.writeBit(true);
+        bits.writeBit(true);
+        assertThrows(IllegalStateException.class, () -> CODEC.decompress(bits.toReader()));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RnaCodec(CodecOptions.DEFAULT.withDag(true).withAlternative(true)));
+    }
+}
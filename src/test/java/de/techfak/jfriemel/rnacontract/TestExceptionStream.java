@@ -0,0 +1,140 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestExceptionStream {
+
+    private static final CodecOptions[] OPTIONS = {CodecOptions.DEFAULT, CodecOptions.DEFAULT.withAlternative(true),
+            CodecOptions.DEFAULT.withRangeCoder(true), CodecOptions.DEFAULT.withAlternative(true).withRangeCoder(true),
+            CodecOptions.DEFAULT.withDag(true), CodecOptions.DEFAULT.withLanes(4),
+            CodecOptions.DEFAULT.withBlockSize(50)};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testSplit() {
+        final ExceptionStream.Split canonical = ExceptionStream.split("GGACAGCC", "((.(.)))");
+        assertSame("GGACAGCC", canonical.sequence);
+        assertEquals(0, canonical.size());
+        /* An unpaired N, the non-canonical pair C-A, a pair with an unsupported opening base and one of two. */
+        final ExceptionStream.Split split = ExceptionStream.split("GGNCAACCNUxy", "((.(.)))()()");
+        assertEquals("GGaCAgCCaUgc", split.sequence.toString());
+        assertEquals(5, split.size());
+        final BitWriter bits = new BitWriter();
+        split.write(bits);
+        final BitReader reader = bits.toReader();
+        assertEquals("GGNCAACCNUxy", ExceptionStream.restore("GGACAGCCAUGC", ExceptionStream.read(reader)));
+        assertEquals(bits.size(), reader.position());
+        assertThrows(IllegalArgumentException.class, () -> ExceptionStream.split("G\u0100C", "(.)"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(25);
+        for (final CodecOptions options : OPTIONS) {
+            final RnaCodec plain = new RnaCodec(options);
+            final RnaCodec codec = new RnaCodec(options.withExceptions(true));
+            for (int n = 0; n < 30; n++) {
+                final String[] rna = TestRNAContract.randomStructure(random, 300);
+                /* Canonical records only pay for the empty exception stream. */
+                assertEquals(plain.compress(rna[0], rna[1]).bits.size() + 1,
+                        codec.compress(rna[0], rna[1]).bits.size());
+                final String sequence = n == 0 || rna[0].isEmpty() ? rna[0] : inject(random, rna[0], n);
+                final RnaCodec.Compressed compressed = codec.compress(sequence, rna[1]);
+                final BitReader reader = compressed.bits.toReader();
+                final RnaCodec.Decompressed decompressed = codec.decompress(reader);
+                assertEquals(expected(sequence), decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+                assertEquals(reader.limit(), reader.position());
+                if (!sequence.isEmpty()) {
+                    assertEquals(compressed.statistics.nodes, decompressed.statistics.nodes);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReference() {
+        final Random random = new Random(25);
+        final String[] reference = TestRNAContract.randomStructure(random, 300);
+        final String referenceSequence = inject(random, reference[0], 10);
+        for (final CodecOptions options : new CodecOptions[]{CodecOptions.DEFAULT,
+                CodecOptions.DEFAULT.withDag(true)}) {
+            final ReferenceCodec codec = new ReferenceCodec(new RnaCodec(options.withExceptions(true)),
+                    referenceSequence, reference[1]);
+            for (int n = 0; n < 10; n++) {
+                final String sequence = n == 0 ? referenceSequence : inject(random, reference[0], n);
+                final BitReader reader = codec.compress(sequence, reference[1]).bits.toReader();
+                final RnaCodec.Decompressed decompressed = codec.decompress(reader);
+                assertEquals(expected(sequence), decompressed.sequence);
+                assertEquals(reference[1], decompressed.structure);
+                assertEquals(reader.limit(), reader.position());
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        final Path input = directory.resolve("records.txt");
+        Files.write(input, Arrays.asList(">modified", "GGAIAGCU", "((.(.)))", ">dna", "ACGTNNacgt", "(.(....).)",
+                ">canonical", "ACGU", "(..)"));
+        final String archive = directory.resolve("records.rnac").toString();
+        final String output = directory.resolve("decompressed.txt").toString();
+        final RnaValidator validator = new RnaValidator(RnaValidator.Policy.REJECT, true);
+        for (final CodecOptions options : new CodecOptions[]{CodecOptions.DEFAULT.withExceptions(true),
+                CodecOptions.DEFAULT.withExceptions(true).withAlternative(true).withReference(true)}) {
+            assertEquals(3, BatchProcessor.compress(new RnaCodec(options), validator, input.toString(), archive, 2)
+                    .records);
+            try (ArchiveReader reader = new ArchiveReader(archive)) {
+                assertTrue(reader.getOptions().isExceptions());
+            }
+            BatchProcessor.decompress(new RnaCodec(), archive, output, 2);
+            assertEquals(Arrays.asList(">modified", "GGAIAGCU", "((.(.)))", ">dna", "ACGTNNACGt", "(.(....).)",
+                    ">canonical", "ACGU", "(..)"), Files.readAllLines(Path.of(output)));
+        }
+        /* Without the exception stream, the same records are rejected. */
+        assertThrows(IOException.class, () -> BatchProcessor.compress(new RnaCodec(), input.toString(), archive, 2));
+        assertThrows(RnaValidator.InvalidRnaException.class, () -> validator.validate("GG A", "(..)"));
+        assertThrows(RnaValidator.InvalidRnaException.class, () -> validator.validate("GGNA", "(.(."));
+    }
+
+    /**
+     * Replaces random bases by unsupported ones, which also creates non-canonical pairs.
+     */
+    private static String inject(final Random random, final String sequence, final int count) {
+        final char[] symbols = "NnTtIPXRY-".toCharArray();
+        final char[] result = sequence.toCharArray();
+        for (int i = 0; i < count; i++) {
+            final int position = random.nextInt(result.length);
+            result[position] = random.nextBoolean() ? symbols[random.nextInt(symbols.length)]
+                    : "ACGU".charAt(random.nextInt(4));
+        }
+        return new String(result);
+    }
+
+    /**
+     * @return The sequence as decompressed: A, C, G and U in upper case, every other symbol unchanged.
+     */
+    private static String expected(final String sequence) {
+        final char[] result = sequence.toCharArray();
+        for (int i = 0; i < result.length; i++) {
+            if ("acgu".indexOf(result[i]) >= 0) {
+                result[i] = Character.toUpperCase(result[i]);
+            }
+        }
+        return new String(result);
+    }
+}
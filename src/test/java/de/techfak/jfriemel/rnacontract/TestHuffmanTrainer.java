@@ -0,0 +1,82 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestHuffmanTrainer {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testTrainedCodes() throws IOException {
+        /* Adenine-rich loops and C-G stems, unlike the data the built-in codes were fitted to. */
+        final String sequence = "CCCCAAAAAAAGGGGAAAAAACCCAAAAAGGG";
+        final String structure = "((((.......))))......(((.....)))";
+        final HuffmanTrainer trainer = new HuffmanTrainer();
+        trainer.add(sequence, structure);
+        final HuffmanMaps trained = trainer.build();
+        assertEquals(1, trainer.getStatistics().records);
+        assertNotEquals(HuffmanMaps.DEFAULT.getId(), trained.getId());
+
+        final Random random = new Random(15);
+        for (final boolean alternative : new boolean[]{false, true}) {
+            final RnaCodec defaultCodec = new RnaCodec(CodecOptions.DEFAULT.withAlternative(alternative));
+            final RnaCodec trainedCodec = new RnaCodec(defaultCodec.getOptions().withHuffmanMaps(trained));
+            final BitWriter bits = trainedCodec.compress(sequence, structure).bits;
+            assertTrue(bits.size() < defaultCodec.compress(sequence, structure).bits.size());
+            assertEquals(sequence, trainedCodec.decompress(new BitReader(bits.toByteArray())).sequence);
+            for (int n = 0; n < 50; n++) {
+                final String[] rna = TestRNAContract.randomStructure(random, 200);
+                final BitWriter randomBits = trainedCodec.compress(rna[0], rna[1]).bits;
+                final RnaCodec.Decompressed decompressed =
+                        trainedCodec.decompress(new BitReader(randomBits.toByteArray()));
+                assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+            }
+        }
+    }
+
+    @Test
+    public void testTableFile() throws IOException {
+        final HuffmanTrainer trainer = new HuffmanTrainer();
+        trainer.add("GGGAUCCCAUGU", "(((())))()()");
+        final HuffmanMaps trained = trainer.build();
+        final Path tables = directory.resolve("tables.rnah");
+        trained.save(tables.toString());
+        assertEquals(79, Files.size(tables));
+        assertEquals(trained.getId(), HuffmanMaps.load(tables.toString()).getId());
+
+        final Path archive = directory.resolve("trained.rnac");
+        final CodecOptions options = CodecOptions.DEFAULT.withHuffmanMaps(trained);
+        try (ArchiveWriter writer = new ArchiveWriter(archive.toString(), options)) {
+            writer.write("", new RnaCodec(options).compress("GGGAUCCCAUGU", "(((())))()()").bits);
+        }
+        try (ArchiveReader reader = new ArchiveReader(archive.toString())) {
+            assertEquals(trained.getId(), reader.getTableId());
+            assertThrows(IOException.class, reader::getOptions);
+            final RnaCodec codec = new RnaCodec(reader.getOptions(options));
+            assertEquals("GGGAUCCCAUGU", codec.decompress(reader.get(0).bits).sequence);
+        }
+
+        Files.write(tables, new byte[]{'R', 'N', 'A', 'H', 1, 1});
+        assertThrows(IOException.class, () -> HuffmanMaps.load(tables.toString()));
+    }
+
+    @Test
+    public void testInvalidLengths() {
+        final int[][] unary = new int[5][5];
+        final int[][] binary = new int[7][7];
+        assertThrows(IllegalArgumentException.class, () -> HuffmanMaps.fromCodeLengths(unary, binary));
+    }
+}
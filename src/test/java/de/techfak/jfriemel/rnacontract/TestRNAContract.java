@@ -2,11 +2,13 @@ package de.techfak.jfriemel.rnacontract;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class TestRNAContract {
 
@@ -17,7 +19,7 @@ public class TestRNAContract {
     @Test
     public void testEmpty() {
         decompressCompressed("", "");
-        List<Boolean> empty = new ArrayList<>();
+        BitReader empty = new BitReader(new byte[0]);
         assertArrayEquals(new String[]{"", ""}, RNAContract.decompress(empty));
     }
 
@@ -45,8 +47,35 @@ public class TestRNAContract {
         decompressCompressed("accgugagccauguuaggga", "..((((...)))..(.).).");
     }
 
+    @Test
+    public void testAllSymbolTransitions() {
+        StringBuilder sequence = new StringBuilder();
+        StringBuilder structure = new StringBuilder();
+        for (final String first : unpairedBases) {
+            for (final String second : unpairedBases) {
+                sequence.append(first).append(second);
+                structure.append("..");
+            }
+        }
+        StringBuilder closing = new StringBuilder();
+        for (final String first : pairs) {
+            for (final String second : pairs) {
+                sequence.append(first.charAt(0)).append(second.charAt(0));
+                closing.insert(0, first.charAt(1)).insert(0, second.charAt(1));
+                structure.append("((");
+            }
+        }
+        sequence.append("aaa").append(closing);
+        structure.append("...");
+        for (int i = 0; i < closing.length(); i++) {
+            structure.append(')');
+        }
+        decompressCompressed(sequence.toString(), structure.toString());
+        decompressCompressedAlt(sequence.toString(), structure.toString());
+    }
+
     private static void decompressCompressed(final String sequence, final String structure) {
-        final String[] decComp = RNAContract.decompress(RNAContract.compress(sequence, structure));
+        final String[] decComp = RNAContract.decompress(RNAContract.compress(sequence, structure).toReader());
         assertEquals(sequence.toLowerCase(), decComp[0].toLowerCase());
         assertEquals(structure, decComp[1]);
     }
@@ -54,7 +83,7 @@ public class TestRNAContract {
     @Test
     public void testEmptyAlt() {
         decompressCompressedAlt("", "");
-        List<Boolean> empty = new ArrayList<>();
+        BitReader empty = new BitReader(new byte[0]);
         assertArrayEquals(new String[]{"", ""}, RNAContract.decompressAlternative(empty));
     }
 
@@ -106,8 +135,102 @@ public class TestRNAContract {
         assertEquals("<ac><r><yqs><agc><e/></agc><gu><x><a><e/></a><g><e/></g></x></gu></yqs><a><e/></a></r></ac>", RNAContract.createXML("ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).)."));
     }
 
+    @Test
+    public void testCompactTree() {
+        final String[][] examples = {{"", ""}, {"a", "."}, {"gu", "()"},
+                {"ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).)."},
+                {"CGCGCGCGCGCAGGACCCCGGGGCUAUUAGCUCAGUUUGGUUAGAGCGCACCCCUGAUAAGGGUGAGGUCGCUGAUUCGAAUUCAGCAUAGCCCA", "()()()()()(.)(.)..()(((((((..((((..........)))).(((((.......))))).....(((((.......))))))))))))."}};
+        for (final String[] example : examples) {
+            final ContractedTree tree = RnaCodec.buildCompactTree(example[0].toLowerCase(), example[1]);
+            assertEquals(RNAContract.createXML(example[0], example[1]), Utils.generateXML(tree.toNode()));
+            final String[] rna = RnaCodec.treeToRNA(tree);
+            assertEquals(example[0].toUpperCase(), rna[0]);
+            assertEquals(example[1], rna[1]);
+        }
+    }
+
+    @Test
+    public void testRandomStructures() {
+        final Random random = new Random(4);
+        for (int n = 0; n < 200; n++) {
+            final String[] rna = randomStructure(random, 120);
+            final String xml = RNAContract.createXML(rna[0], rna[1]);
+            assertEquals(xml, Utils.generateXML(RnaCodec.buildCompactTree(rna[0], rna[1]).toNode()));
+            decompressCompressed(rna[0], rna[1]);
+            decompressCompressedAlt(rna[0], rna[1]);
+        }
+    }
+
+    @Test
+    public void testDeepStructureOnSmallStack() throws InterruptedException {
+        final int depth = 100000;
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sequence.append("ga");
+            structure.append("(.");
+        }
+        for (int i = 0; i < depth; i++) {
+            sequence.append("ac");
+            structure.append(".)");
+        }
+        final Throwable[] failure = new Throwable[1];
+        final Thread thread = new Thread(null, () -> {
+            try {
+                decompressCompressed(sequence.toString(), structure.toString());
+                decompressCompressedAlt(sequence.toString(), structure.toString());
+                final String xml = RNAContract.createXML(sequence.toString(), structure.toString());
+                assertEquals(xml, Utils.generateXML(RnaCodec.buildCompactTree(sequence.toString(),
+                        structure.toString()).toNode()));
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "small-stack", 1 << 16);
+        thread.start();
+        thread.join();
+        assertNull(failure[0]);
+    }
+
+    /**
+     * Generates a random RNA sequence with a balanced secondary structure, using all canonical and G-U pairs.
+     *
+     * @param random    Random number generator.
+     * @param maxLength Upper bound (exclusive) for the number of steps; closing brackets may be added afterwards.
+     * @return 0: Sequence (lower case). 1: Structure.
+     */
+    static String[] randomStructure(final Random random, final int maxLength) {
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        final Deque<Character> open = new ArrayDeque<>();
+        final int length = random.nextInt(maxLength);
+        for (int i = 0; i < length; i++) {
+            final int choice = random.nextInt(3);
+            if (choice == 0 && !open.isEmpty()) {
+                final char opening = open.pop();
+                final char[] partners = opening == 'g' ? new char[]{'c', 'u'}
+                        : opening == 'u' ? new char[]{'a', 'g'} : new char[]{opening == 'a' ? 'u' : 'g'};
+                sequence.append(partners[random.nextInt(partners.length)]);
+                structure.append(')');
+            } else if (choice == 1) {
+                final char base = unpairedBases[random.nextInt(4)].charAt(0);
+                open.push(base);
+                sequence.append(base);
+                structure.append('(');
+            } else {
+                sequence.append(unpairedBases[random.nextInt(4)]);
+                structure.append('.');
+            }
+        }
+        while (!open.isEmpty()) {
+            final char opening = open.pop();
+            sequence.append(opening == 'a' ? 'u' : opening == 'u' ? 'a' : opening == 'c' ? 'g' : 'c');
+            structure.append(')');
+        }
+        return new String[]{sequence.toString(), structure.toString()};
+    }
+
     private static void decompressCompressedAlt(final String sequence, final String structure) {
-        final String[] decComp = RNAContract.decompressAlternative(RNAContract.compressAlternative(sequence, structure));
+        final String[] decComp = RNAContract.decompressAlternative(RNAContract.compressAlternative(sequence, structure).toReader());
         assertEquals(sequence.toLowerCase(), decComp[0].toLowerCase());
         assertEquals(structure, decComp[1]);
     }
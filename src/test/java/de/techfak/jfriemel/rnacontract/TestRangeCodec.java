@@ -0,0 +1,92 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRangeCodec {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(16);
+        for (final boolean alternative : new boolean[]{false, true}) {
+            final RnaCodec codec = new RnaCodec(CodecOptions.DEFAULT.withAlternative(alternative).withRangeCoder(true));
+            for (int n = 0; n < 100; n++) {
+                final String[] rna = TestRNAContract.randomStructure(random, 1 + random.nextInt(500));
+                final RnaCodec.Compressed compressed = codec.compress(rna[0], rna[1]);
+                assertEquals(0, compressed.bits.size() % 8);
+                final BitReader reader = compressed.bits.toReader();
+                final RnaCodec.Decompressed decompressed = codec.decompress(reader);
+                assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+                assertEquals(reader.limit(), reader.position());
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        final char[] opening = new char[50000];
+        final char[] closing = new char[50000];
+        Arrays.fill(opening, '(');
+        Arrays.fill(closing, ')');
+        final String deepStructure = new String(opening) + new String(closing);
+        final String deepSequence = deepStructure.replace('(', 'G').replace(')', 'C');
+        for (final boolean alternative : new boolean[]{false, true}) {
+            final RnaCodec codec = new RnaCodec(CodecOptions.DEFAULT.withAlternative(alternative).withRangeCoder(true));
+            for (final String[] rna : new String[][]{{"", ""}, {"A", "."}, {deepSequence, deepStructure}}) {
+                final RnaCodec.Compressed compressed = codec.compress(rna[0], rna[1]);
+                final RnaCodec.Decompressed decompressed = codec.decompress(compressed.bits.toReader());
+                assertEquals(rna[0], decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+            }
+            final BitWriter truncated = new BitWriter();
+            truncated.writeBits(0x12, 8);
+            assertThrows(IllegalStateException.class, () -> codec.decompress(truncated.toReader()));
+        }
+    }
+
+    @Test
+    public void testSmallerThanHuffman() {
+        /* Long stems and loops of a few repeated motifs, which the adaptive models learn within the record. */
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sequence.append("GGGCGCGAAAGCGCCCAA");
+            structure.append("((((((....))))))..");
+        }
+        for (final boolean alternative : new boolean[]{false, true}) {
+            final CodecOptions options = CodecOptions.DEFAULT.withAlternative(alternative);
+            final long huffman = new RnaCodec(options).compress(sequence.toString(), structure.toString()).bits.size();
+            final long range = new RnaCodec(options.withRangeCoder(true))
+                    .compress(sequence.toString(), structure.toString()).bits.size();
+            assertTrue(range < huffman, range + " >= " + huffman);
+        }
+    }
+
+    @Test
+    public void testArchive() throws IOException {
+        final Path archive = directory.resolve("range.rnac");
+        final CodecOptions options = CodecOptions.DEFAULT.withAlternative(true).withRangeCoder(true);
+        try (ArchiveWriter writer = new ArchiveWriter(archive.toString(), options)) {
+            writer.write("first", new RnaCodec(options).compress("GGGAUCCCAUGU", "(((())))()()").bits);
+        }
+        try (ArchiveReader reader = new ArchiveReader(archive.toString())) {
+            assertTrue(reader.getOptions().isRangeCoder());
+            assertTrue(reader.getOptions().isAlternative());
+            final RnaCodec codec = new RnaCodec(reader.getOptions());
+            assertEquals("(((())))()()", codec.decompress(reader.get(0).bits).structure);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestReferenceCodec {
+
+    private static final String SEQUENCE = "GCGGAUUUAGCUCAGUUGGGAGAGCGCCAGACUGAAGAUCUGGAGGUCCUGUGUUCGAUCCACAGAAUUCGCACCA";
+    private static final String STRUCTURE = "(((((((..((((........)))).(((((.......))))).....(((((.......))))))))))))....";
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(20);
+        final String[] reference = TestRNAContract.randomStructure(random, 400);
+        for (final CodecOptions options : new CodecOptions[]{CodecOptions.DEFAULT,
+                CodecOptions.DEFAULT.withAlternative(true), CodecOptions.DEFAULT.withRangeCoder(true),
+                CodecOptions.DEFAULT.withDag(true), CodecOptions.DEFAULT.withLanes(4),
+                CodecOptions.DEFAULT.withBlockSize(50)}) {
+            final ReferenceCodec codec = new ReferenceCodec(new RnaCodec(options), reference[0], reference[1]);
+            for (int n = 0; n < 50; n++) {
+                final String[] rna = n == 0 ? new String[]{"", ""} : n % 2 == 0
+                        ? TestRNAContract.randomStructure(random, 400) : mutate(random, reference, n);
+                final RnaCodec.Compressed compressed = codec.compress(rna[0], rna[1]);
+                final BitReader reader = compressed.bits.toReader();
+                final RnaCodec.Decompressed decompressed = codec.decompress(reader);
+                assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+                assertEquals(reader.limit(), reader.position());
+                if (n > 0) {
+                    assertEquals(compressed.statistics.nodes, decompressed.statistics.nodes);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHomologous() {
+        final RnaCodec plain = new RnaCodec();
+        final ReferenceCodec codec = new ReferenceCodec(plain, SEQUENCE, STRUCTURE);
+        final String[] rna = mutate(new Random(20), new String[]{SEQUENCE, STRUCTURE}, 3);
+        final BitWriter script = codec.compress(rna[0], rna[1]).bits;
+        final long standard = plain.compress(rna[0], rna[1]).bits.size();
+        assertTrue(script.size() * 4 < standard, script.size() + " bits, standard " + standard);
+        assertEquals(2, codec.compress(SEQUENCE, STRUCTURE).bits.size());
+        final RnaCodec.Decompressed decompressed = codec.decompress(script.toReader());
+        assertEquals(rna[0], decompressed.sequence);
+        assertEquals(rna[1], decompressed.structure);
+    }
+
+    /**
+     * @return Copy of an RNA with some of its unpaired bases replaced by other bases.
+     */
+    private static String[] mutate(final Random random, final String[] rna, final int mutations) {
+        final char[] sequence = rna[0].toCharArray();
+        for (int i = 0; i < mutations && sequence.length > 0; i++) {
+            final int position = random.nextInt(sequence.length);
+            if (rna[1].charAt(position) == '.') {
+                sequence[position] = "ACGU".charAt((("ACGU".indexOf(Character.toUpperCase(sequence[position])) + 1
+                        + random.nextInt(3)) & 3));
+            }
+        }
+        return new String[]{new String(sequence), rna[1]};
+    }
+}
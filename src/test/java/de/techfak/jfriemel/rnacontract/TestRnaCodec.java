@@ -0,0 +1,203 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestRnaCodec {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testStatistics() {
+        for (final boolean alternative : new boolean[]{false, true}) {
+            final RnaCodec codec = new RnaCodec(CodecOptions.DEFAULT.withAlternative(alternative));
+            final RnaCodec.Compressed compressed = codec.compress("ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).).");
+            final RnaCodec.Decompressed decompressed = codec.decompress(compressed.bits.toReader());
+            for (final CodecStatistics statistics : new CodecStatistics[]{compressed.statistics,
+                    decompressed.statistics}) {
+                assertEquals(1, statistics.records);
+                assertEquals(13, statistics.nodes);
+                assertEquals(6, statistics.unaryNodes);
+                assertEquals(3, statistics.binaryNodes);
+            }
+        }
+    }
+
+    @Test
+    public void testSharedCodec() throws InterruptedException, ExecutionException {
+        final RnaCodec codec = new RnaCodec();
+        final Random random = new Random(8);
+        final List<String[]> records = new ArrayList<>();
+        for (int n = 0; n < 64; n++) {
+            final StringBuilder sequence = new StringBuilder();
+            final StringBuilder structure = new StringBuilder();
+            for (int i = random.nextInt(2000); i > 0; i--) {
+                final int pair = random.nextInt(TestRNAContract.pairs.length);
+                sequence.insert(0, TestRNAContract.pairs[pair].charAt(0)).append(TestRNAContract.pairs[pair].charAt(1));
+                structure.insert(0, '(').append(')');
+                if (random.nextInt(4) == 0) {
+                    sequence.append(TestRNAContract.unpairedBases[random.nextInt(4)].toUpperCase());
+                    structure.append('.');
+                }
+            }
+            records.add(new String[]{sequence.toString().toUpperCase(), structure.toString()});
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String[]>> results = new ArrayList<>();
+            for (final String[] record : records) {
+                results.add(executor.submit(() -> codec.decompress(codec.compress(record[0], record[1]).bits
+                        .toReader()).toArray()));
+            }
+            for (int i = 0; i < records.size(); i++) {
+                assertArrayEquals(records.get(i), results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLanes() throws IOException {
+        final Random random = new Random(17);
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            sequence.append(i % 3 == 0 ? "GACA" : "UAGU");
+            structure.append("(.).");
+        }
+        for (final int lanes : new int[]{2, 3, 8}) {
+            final RnaCodec codec = new RnaCodec(CodecOptions.DEFAULT.withLanes(lanes));
+            for (int n = 0; n < 50; n++) {
+                final String[] rna = n == 0 ? new String[]{"", ""} : TestRNAContract.randomStructure(random, 300);
+                final BitReader reader = codec.compress(rna[0], rna[1]).bits.toReader();
+                final RnaCodec.Decompressed decompressed = codec.decompress(reader);
+                assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+                assertEquals(reader.limit(), reader.position());
+            }
+            /* Large enough to decode the lanes in parallel. */
+            final RnaCodec.Decompressed decompressed =
+                    codec.decompress(codec.compress(sequence.toString(), structure.toString()).bits.toReader());
+            assertEquals(sequence.toString(), decompressed.sequence);
+            assertEquals(structure.toString(), decompressed.structure);
+            /* The parallel decoder, forced even on a single core and for small trees. */
+            for (final String[] rna : new String[][]{{sequence.toString(), structure.toString()},
+                    TestRNAContract.randomStructure(random, 300), {"A", "."}}) {
+                final BitReader reader = codec.compress(rna[0], rna[1]).bits.toReader();
+                assertArrayEquals(new String[]{rna[0].toUpperCase(), rna[1]},
+                        RnaCodec.treeToRNA(codec.decompressLanes(reader, 0)));
+                assertEquals(reader.limit(), reader.position());
+            }
+        }
+
+        final Path archive = directory.resolve("lanes.rnac");
+        final CodecOptions options = CodecOptions.DEFAULT.withLanes(4);
+        try (ArchiveWriter writer = new ArchiveWriter(archive.toString(), options)) {
+            writer.write("", new RnaCodec(options).compress("GGGAUCCCAUGU", "(((())))()()").bits);
+        }
+        try (ArchiveReader reader = new ArchiveReader(archive.toString())) {
+            assertEquals(4, reader.getOptions().getLanes());
+            assertEquals("GGGAUCCCAUGU",
+                    new RnaCodec(reader.getOptions()).decompress(reader.get(0).bits).sequence);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new RnaCodec(CodecOptions.DEFAULT.withAlternative(true).withLanes(2)));
+        assertThrows(IllegalArgumentException.class, () -> CodecOptions.DEFAULT.withLanes(0));
+    }
+
+    @Test
+    public void testBlocks() throws IOException {
+        final Random random = new Random(18);
+        final CodecOptions[] variants = {CodecOptions.DEFAULT, CodecOptions.DEFAULT.withAlternative(true),
+                CodecOptions.DEFAULT.withRangeCoder(true), CodecOptions.DEFAULT.withLanes(3)};
+        for (final CodecOptions variant : variants) {
+            for (final int blockSize : new int[]{1, 7, 100}) {
+                final RnaCodec codec = new RnaCodec(variant.withBlockSize(blockSize));
+                for (int n = 0; n < 30; n++) {
+                    final String[] rna = n == 0 ? new String[]{"", ""} : TestRNAContract.randomStructure(random, 300);
+                    final BitReader reader = codec.compress(rna[0], rna[1]).bits.toReader();
+                    final RnaCodec.Decompressed decompressed = codec.decompress(reader);
+                    assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+                    assertEquals(rna[1], decompressed.structure);
+                    assertEquals(reader.limit(), reader.position());
+                }
+            }
+        }
+        /* Only positions outside of all pairs end a block, so this record is a single block. */
+        final RnaCodec codec = new RnaCodec(CodecOptions.DEFAULT.withBlockSize(2));
+        final RnaCodec.Compressed single = codec.compress("GGGAUCCC", "((....))");
+        assertEquals(1, single.bits.toReader().readBits(32));
+        assertEquals(1, single.statistics.records);
+        assertThrows(IllegalArgumentException.class, () -> codec.compress("GGGAUCCC", "(((....)"));
+        /* Structure characters other than brackets and dots are rejected instead of dropping their bases. */
+        assertThrows(IllegalArgumentException.class, () -> codec.compress("ACGU", "(x.)"));
+        assertThrows(IllegalArgumentException.class, () -> new RnaCodec().compress("ACGU", "..x."));
+        assertFalse(StreamingCompressor.supports(CodecOptions.DEFAULT.withAlternative(true).withBlockSize(2)));
+
+        final Path archive = directory.resolve("blocks.rnac");
+        try (ArchiveWriter writer = new ArchiveWriter(archive.toString(), codec.getOptions())) {
+            writer.write("", codec.compress("GGGAUCCCAUGU", "(((())))()()").bits);
+        }
+        try (ArchiveReader reader = new ArchiveReader(archive.toString())) {
+            assertEquals(2, reader.getOptions().getBlockSize());
+            assertEquals("(((())))()()",
+                    new RnaCodec(reader.getOptions()).decompress(reader.get(0).bits).structure);
+        }
+        /* Archives written before the block size was stored fall back to the default. */
+        assertEquals(CodecOptions.DEFAULT_BLOCK_SIZE, ArchiveReader.getOptions(ArchiveWriter.VARIANT_BLOCKS, 1, 0,
+                HuffmanMaps.DEFAULT.getId(), CodecOptions.DEFAULT).getBlockSize());
+    }
+
+    @Test
+    public void testAsciiInput() throws IOException {
+        final Random random = new Random(23);
+        final Path file = directory.resolve("ascii.txt");
+        for (final CodecOptions options : new CodecOptions[]{CodecOptions.DEFAULT,
+                CodecOptions.DEFAULT.withAlternative(true), CodecOptions.DEFAULT.withBlockSize(50)}) {
+            final RnaCodec codec = new RnaCodec(options);
+            for (int n = 0; n < 10; n++) {
+                final String[] rna = TestRNAContract.randomStructure(random, 200);
+                final String sequence = n % 2 == 0 ? rna[0].toLowerCase() : rna[0];
+                final String newline = n % 3 == 0 ? "\r\n" : "\n";
+                Files.write(file, (sequence + newline + rna[1]).getBytes(StandardCharsets.US_ASCII));
+                final AsciiSequence[] lines = Utils.readAsciiFile(file.toString());
+                assertEquals(sequence, lines[0].toString());
+                assertEquals(rna[1], lines[1].toString());
+                final RnaCodec.Compressed compressed = codec.compress(lines[0], lines[1]);
+                assertArrayEquals(codec.compress(rna[0].toLowerCase(), rna[1]).bits.toByteArray(),
+                        compressed.bits.toByteArray());
+                final RnaCodec.Decompressed decompressed = codec.decompress(compressed.bits.toReader());
+                assertEquals(rna[0].toUpperCase(), decompressed.sequence);
+                assertEquals(rna[1], decompressed.structure);
+            }
+        }
+        final AsciiSequence[] lines = AsciiSequence.lines(ByteBuffer.wrap("GAC\r\r\n..(".getBytes(
+                StandardCharsets.US_ASCII)), 4);
+        assertEquals("GAC", lines[0].toString());
+        assertEquals("", lines[1].toString());
+        assertEquals("..(", lines[2].toString());
+        assertEquals(0, lines[3].length());
+        assertEquals("AC", lines[0].subSequence(1, 3).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> lines[0].charAt(3));
+    }
+}
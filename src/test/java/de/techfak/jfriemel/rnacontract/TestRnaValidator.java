@@ -0,0 +1,117 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRnaValidator {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testErrors() {
+        final String sequence = "GgAcaGCc";
+        assertSame(sequence, RnaValidator.DEFAULT.validate(sequence, "((.(.)))"));
+        assertSame(sequence, RnaValidator.DEFAULT.validate(sequence, "((.(.))) (-3.10)"));
+        assertError(1, 4, "Unsupported base 'N'", "GGANAGCC", "((.(.)))");
+        assertError(1, 5, "Unsupported base 'T'; use MAP_T_TO_U to read T as U", "GGACTGCC", "((.(.)))");
+        assertError(2, 3, "Unsupported structure character '['", "GGACAGCC", "(([(.)))");
+        assertError(2, 7, "Unbalanced closing bracket", "GGACAGCC", "...(.)).");
+        assertError(2, 1, "Unbalanced opening bracket", "GGACAGCC", "((.(.)).");
+        assertError(2, 6, "Non-canonical pair C-A with column 4", "GGACAACC", "((.(.)))");
+        assertError(2, 9, "Structure is longer than the sequence (9 and 8 characters)", "GGACAGCC", "((.(.))).");
+        assertError(2, 8, "Structure is shorter than the sequence (7 and 8 characters)", "GGACAGCC", "((.(.))");
+        assertError(1, 2, "Unsupported base U+00E4", "G\u00e4ACAGCC", "((.(.)))");
+
+        final RnaValidator.InvalidRnaException exception = assertThrows(RnaValidator.InvalidRnaException.class,
+                () -> RnaValidator.DEFAULT.validate("GN", "..", 7, 8));
+        assertEquals(7, exception.getLine());
+        assertEquals(2, exception.getColumn());
+    }
+
+    @Test
+    public void testMapThymine() {
+        final RnaValidator validator = new RnaValidator(RnaValidator.Policy.MAP_T_TO_U);
+        assertEquals("GGACAGCu", validator.validate("GGACAGCt", "((.(.)))").toString());
+        final String sequence = "GGACAGCC";
+        assertSame(sequence, validator.validate(sequence, "((.(.)))"));
+        assertThrows(RnaValidator.InvalidRnaException.class, () -> validator.validate("GGANAGCC", "((.(.)))"));
+        final RnaCodec.Compressed compressed = new RnaCodec().compress(validator.validate("GCATGC", "((..))"),
+                "((..))");
+        assertEquals("GCAUGC", new RnaCodec().decompress(compressed.bits.toReader()).sequence);
+    }
+
+    @Test
+    public void testBatchPolicies() throws IOException {
+        final Path input = directory.resolve("batch.txt");
+        Files.write(input, Arrays.asList(">valid", "GGACAGCC", "((.(.)))", "", ">unknown base", "GGANAGCC",
+                "((.(.)))", ">valid too", "ACGU", "(..)"));
+        final String archive = directory.resolve("batch.rnac").toString();
+        final IOException rejected = assertThrows(IOException.class,
+                () -> BatchProcessor.compress(new RnaCodec(), input.toString(), archive, 2));
+        assertEquals("Invalid record unknown base: Line 6, column 4: Unsupported base 'N'", rejected.getMessage());
+        final Path invalid = directory.resolve("batch.rnac" + BatchProcessor.INVALID_SUFFIX);
+        assertFalse(Files.exists(invalid));
+
+        final RnaValidator validator = new RnaValidator(RnaValidator.Policy.ESCAPE);
+        assertEquals(2, BatchProcessor.compress(new RnaCodec(), validator, input.toString(), archive, 2).records);
+        assertEquals(Arrays.asList("# Line 6, column 4: Unsupported base 'N'", ">unknown base", "GGANAGCC",
+                "((.(.)))"), Files.readAllLines(invalid));
+        try (ArchiveReader reader = new ArchiveReader(archive)) {
+            assertEquals(2, reader.size());
+            assertEquals("valid too", reader.get(1).name);
+        }
+        /* The escaped records are read again once they are fixed, and a run without invalid records removes them. */
+        try (RecordReader reader = new RecordReader(invalid.toString())) {
+            assertEquals("unknown base", reader.next().name);
+        }
+        Files.write(input, Arrays.asList("ACGU", "(..)"));
+        assertEquals(1, BatchProcessor.compress(new RnaCodec(), validator, input.toString(), archive, 2).records);
+        assertFalse(Files.exists(invalid));
+    }
+
+    @Test
+    public void testCanonicalPairs() {
+        final List<String> canonical = Arrays.asList("AU", "UA", "CG", "GC", "GU", "UG");
+        for (final char opening : "ACGUTN".toCharArray()) {
+            for (final char closing : "ACGUTN".toCharArray()) {
+                final String pair = "" + opening + closing;
+                assertEquals(canonical.contains(pair), RnaValidator.isCanonicalPair(opening, closing));
+                assertEquals(canonical.contains(pair), RnaValidator.isCanonicalPair(
+                        Character.toLowerCase(opening), Character.toLowerCase(closing)));
+                if (!canonical.contains(pair) && opening != 'N' && closing != 'N') {
+                    /* The tree builder rejects non-canonical pairs even without validation. */
+                    assertThrows(IllegalArgumentException.class, () -> new RnaCodec().compress(pair, "()"));
+                    assertThrows(IllegalArgumentException.class, () -> new RnaCodec().compress(pair.toLowerCase(),
+                            "()"));
+                    assertThrows(IllegalArgumentException.class, () -> new StreamingCompressor(new RnaCodec())
+                            .compress(new StringReader(pair), new StringReader("()"), new ByteArrayOutputStream()));
+                }
+            }
+        }
+        assertTrue(RnaValidator.isCanonicalPair('g', 'U'));
+    }
+
+    private static void assertError(final long line, final int column, final String message, final String sequence,
+                                    final String structure) {
+        final RnaValidator.InvalidRnaException exception = assertThrows(RnaValidator.InvalidRnaException.class,
+                () -> RnaValidator.DEFAULT.validate(sequence, structure));
+        assertEquals("Line " + line + ", column " + column + ": " + message, exception.getMessage());
+        assertEquals(line, exception.getLine());
+        assertEquals(column, exception.getColumn());
+    }
+}
@@ -0,0 +1,87 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestStreamingCompressor {
+
+    private static final RnaCodec CODEC = new RnaCodec(CodecOptions.DEFAULT.withAlternative(true));
+    private static final StreamingCompressor COMPRESSOR = new StreamingCompressor(CODEC);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testSameBitsAsCodec() throws IOException {
+        assertSameBits("", "");
+        assertSameBits("ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).).");
+        assertSameBits("GGGAUCCCCGUA", "(((())))()()");
+        final Random random = new Random(11);
+        for (int n = 0; n < 300; n++) {
+            final String[] rna = TestRNAContract.randomStructure(random, 300);
+            assertSameBits(rna[0], rna[1]);
+        }
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sequence.insert(0, "gA").append("Uc");
+            structure.insert(0, "(.").append(").");
+        }
+        assertSameBits(sequence.toString(), structure.toString());
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        final Path input = directory.resolve("input.txt");
+        final String sequence = "ACCGUGAGCCAUGUUAGGGA";
+        final String structure = "..((((...)))..(.).).";
+        Files.write(input, (sequence + "\r\n" + structure + " (-3.10)\r\n").getBytes());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        COMPRESSOR.compressFile(input.toString(), output);
+        assertArrayEquals(CODEC.compress(sequence, structure).bits.toByteArray(), output.toByteArray());
+
+        final Path archive = directory.resolve("input.rnac2");
+        RNAContract.compressFile(CODEC, input.toString(), archive.toString(), false);
+        final Path decompressed = directory.resolve("output.txt");
+        RNAContract.decompressFile(CODEC, archive.toString(), decompressed.toString(), -1, false);
+        assertEquals(Arrays.asList(sequence, structure), Files.readAllLines(decompressed));
+    }
+
+    @Test
+    public void testInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> compress("AC", "(("));
+        assertThrows(IllegalArgumentException.class, () -> compress("AC", "))"));
+        assertThrows(IllegalArgumentException.class, () -> compress("ACG", ".."));
+        assertThrows(IllegalArgumentException.class, () -> compress("NA", "()"));
+        assertThrows(IllegalArgumentException.class, () -> compress("AN", ".."));
+        assertThrows(IllegalArgumentException.class, () -> compress("ACGU", "(x.)"));
+    }
+
+    private static void assertSameBits(final String sequence, final String structure) throws IOException {
+        final RnaCodec.Compressed expected = CODEC.compress(sequence, structure);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final StreamingCompressor.Result result = COMPRESSOR.compress(new StringReader(sequence),
+                new StringReader(structure + "\n"), output);
+        assertEquals(expected.bits.size(), result.bits);
+        assertArrayEquals(expected.bits.toByteArray(), output.toByteArray());
+        assertEquals(expected.statistics.nodes, result.statistics.nodes);
+        assertEquals(expected.statistics.unaryNodes, result.statistics.unaryNodes);
+        assertEquals(expected.statistics.binaryNodes, result.statistics.binaryNodes);
+    }
+
+    private static void compress(final String sequence, final String structure) throws IOException {
+        COMPRESSOR.compress(new StringReader(sequence), new StringReader(structure), new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,60 @@
+package de.techfak.jfriemel.rnacontract;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestStreamingDecompressor {
+
+    private static final RnaCodec CODEC = new RnaCodec(CodecOptions.DEFAULT.withAlternative(true));
+    private static final StreamingDecompressor DECOMPRESSOR = new StreamingDecompressor(CODEC);
+
+    @Test
+    public void testSameRnaAsCodec() throws IOException {
+        assertSameRna("", "");
+        assertSameRna("ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).).");
+        assertSameRna("GGGAUCCCCGUA", "(((())))()()");
+        final Random random = new Random(12);
+        for (int n = 0; n < 300; n++) {
+            final String[] rna = TestRNAContract.randomStructure(random, 300);
+            assertSameRna(rna[0], rna[1]);
+        }
+        final StringBuilder sequence = new StringBuilder();
+        final StringBuilder structure = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sequence.insert(0, "gA").append("Uc");
+            structure.insert(0, "(.").append(").");
+        }
+        assertSameRna(sequence.toString(), structure.toString());
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        final BitWriter bits = CODEC.compress("ACCGUGAGCCAUGUUAGGGA", "..((((...)))..(.).).").bits;
+        final StringWriter output = new StringWriter();
+        DECOMPRESSOR.decompressLines(reader(bits), reader(bits), output);
+        assertEquals("ACCGUGAGCCAUGUUAGGGA\n..((((...)))..(.).).", output.toString());
+    }
+
+    private static void assertSameRna(final String sequence, final String structure) throws IOException {
+        final BitWriter bits = CODEC.compress(sequence, structure).bits;
+        final RnaCodec.Decompressed expected = CODEC.decompress(reader(bits));
+        final StringWriter sequenceOutput = new StringWriter();
+        final StringWriter structureOutput = new StringWriter();
+        final CodecStatistics statistics = DECOMPRESSOR.decompress(reader(bits), sequenceOutput, structureOutput);
+        assertEquals(expected.sequence, sequenceOutput.toString());
+        assertEquals(expected.structure, structureOutput.toString());
+        assertEquals(expected.statistics.nodes, statistics.nodes);
+        assertEquals(expected.statistics.unaryNodes, statistics.unaryNodes);
+        assertEquals(expected.statistics.binaryNodes, statistics.binaryNodes);
+    }
+
+    private static BitReader reader(final BitWriter bits) {
+        return new BitReader(ByteBuffer.wrap(bits.toByteArray()), bits.size());
+    }
+}